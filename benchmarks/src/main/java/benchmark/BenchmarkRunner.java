@@ -0,0 +1,27 @@
+package benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler always attached, so every result
+ * comes with its allocation rate and GC counts. Any of the usual JMH command
+ * line options can be passed, e.g. {@code -p size=100000 ObjectSort}.
+ */
+public class BenchmarkRunner {
+
+	public static void main(String[] args)
+	throws CommandLineOptionException, RunnerException
+	{
+		final Options options = new OptionsBuilder()
+		                        .parent(new CommandLineOptions(args))
+		                        .addProfiler(GCProfiler.class)
+		                        .build();
+		new Runner(options).run();
+	}
+}
@@ -0,0 +1,78 @@
+package benchmark;
+
+import java.util.Random;
+
+/**
+ * The input shapes the benchmarks sort. Every distribution is generated from
+ * a fixed seed so runs on different machines sort the same data.
+ */
+public enum Distribution {
+	/** Uniform random values in [0, size), as Main.generateRandomArray. */
+	RANDOM {
+		@Override
+		int value(int index, int size, Random random) {
+			return random.nextInt(size);
+		}
+	},
+	SORTED {
+		@Override
+		int value(int index, int size, Random random) {
+			return index;
+		}
+	},
+	REVERSE {
+		@Override
+		int value(int index, int size, Random random) {
+			return size - index;
+		}
+	},
+	/** Ascending runs of 1000 elements, each starting over from zero. */
+	SAWTOOTH {
+		@Override
+		int value(int index, int size, Random random) {
+			return index % 1000;
+		}
+	},
+	/** Random values drawn from only 16 distinct keys. */
+	FEW_UNIQUE {
+		@Override
+		int value(int index, int size, Random random) {
+			return random.nextInt(16);
+		}
+	},
+	ALL_EQUAL {
+		@Override
+		int value(int index, int size, Random random) {
+			return 42;
+		}
+	},
+	/** A sorted prefix followed by a random tail of a tenth of the array. */
+	SORTED_RANDOM_TAIL {
+		@Override
+		int value(int index, int size, Random random) {
+			return index < size - size / 10 ? index : random.nextInt(size);
+		}
+	};
+
+	private static final long SEED = 0x5EEDL;
+
+	abstract int value(int index, int size, Random random);
+
+	public int[] ints(int size) {
+		final Random random = new Random(SEED);
+		final int[] values = new int[size];
+		for (int i = 0; i < size; i++) {
+			values[i] = value(i, size, random);
+		}
+		return values;
+	}
+
+	public Integer[] integers(int size) {
+		final int[] values = ints(size);
+		final Integer[] boxed = new Integer[size];
+		for (int i = 0; i < size; i++) {
+			boxed[i] = values[i];
+		}
+		return boxed;
+	}
+}
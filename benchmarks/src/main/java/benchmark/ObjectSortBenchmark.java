@@ -0,0 +1,98 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import sort.ComplexTimSort;
+import sort.OtherSorts;
+import sort.SimpleTimSort;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sorts boxed Integer arrays with every object engine, using Arrays.sort as
+ * the baseline. Each invocation copies the pristine input into a work array
+ * first; the copy costs the same for every engine.
+ * <p>
+ * The 10^8 size needs a heap of roughly 8 GB, for example
+ * {@code -jvmArgsAppend -Xmx8g}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class ObjectSortBenchmark {
+
+	@Param({"10", "1000", "100000", "10000000", "100000000"})
+	public int size;
+
+	@Param
+	public Distribution distribution;
+
+	private Integer[] input;
+	private Integer[] work;
+
+	@Setup
+	public void setUp() {
+		input = distribution.integers(size);
+		work = new Integer[size];
+	}
+
+	private Integer[] fresh() {
+		System.arraycopy(input, 0, work, 0, size);
+		return work;
+	}
+
+	@Benchmark
+	public Integer[] arraysSort() {
+		final Integer[] arr = fresh();
+		Arrays.sort(arr);
+		return arr;
+	}
+
+	@Benchmark
+	public Integer[] complexTimSort() {
+		final Integer[] arr = fresh();
+		ComplexTimSort.sort(arr);
+		return arr;
+	}
+
+	@Benchmark
+	public Integer[] complexTimSortParallel() {
+		final Integer[] arr = fresh();
+		ComplexTimSort.parallelSort(arr);
+		return arr;
+	}
+
+	@Benchmark
+	public Integer[] simpleTimSort() {
+		final Integer[] arr = fresh();
+		SimpleTimSort.sort(arr);
+		return arr;
+	}
+
+	@Benchmark
+	public Integer[] simpleTimSortParallel() {
+		final Integer[] arr = fresh();
+		SimpleTimSort.parallelSort(arr);
+		return arr;
+	}
+
+	@Benchmark
+	public Integer[] mergeSort() {
+		final Integer[] arr = fresh();
+		OtherSorts.mergeSort(arr);
+		return arr;
+	}
+}
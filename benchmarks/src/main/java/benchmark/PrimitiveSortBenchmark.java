@@ -0,0 +1,72 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import sort.ComplexTimSort;
+import sort.RadixSort;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sorts int arrays with the primitive ComplexTimSort overload and the LSD
+ * RadixSort against the dual-pivot quicksort of Arrays.sort.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class PrimitiveSortBenchmark {
+
+	@Param({"10", "1000", "100000", "10000000", "100000000"})
+	public int size;
+
+	@Param
+	public Distribution distribution;
+
+	private int[] input;
+	private int[] work;
+
+	@Setup
+	public void setUp() {
+		input = distribution.ints(size);
+		work = new int[size];
+	}
+
+	private int[] fresh() {
+		System.arraycopy(input, 0, work, 0, size);
+		return work;
+	}
+
+	@Benchmark
+	public int[] arraysSort() {
+		final int[] arr = fresh();
+		Arrays.sort(arr);
+		return arr;
+	}
+
+	@Benchmark
+	public int[] complexTimSort() {
+		final int[] arr = fresh();
+		ComplexTimSort.sort(arr);
+		return arr;
+	}
+
+	@Benchmark
+	public int[] radixSort() {
+		final int[] arr = fresh();
+		RadixSort.sort(arr);
+		return arr;
+	}
+}
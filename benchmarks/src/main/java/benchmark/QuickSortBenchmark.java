@@ -0,0 +1,65 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import sort.OtherSorts;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * OtherSorts.quickSort, a pattern-defeating quicksort, next to the same
+ * Arrays.sort baseline on every distribution, including the sorted, reverse
+ * and low-cardinality ones that made the old last-element pivot quadratic.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class QuickSortBenchmark {
+
+	@Param({"10", "1000", "100000", "10000000"})
+	public int size;
+
+	@Param
+	public Distribution distribution;
+
+	private Integer[] input;
+	private Integer[] work;
+
+	@Setup
+	public void setUp() {
+		input = distribution.integers(size);
+		work = new Integer[size];
+	}
+
+	private Integer[] fresh() {
+		System.arraycopy(input, 0, work, 0, size);
+		return work;
+	}
+
+	@Benchmark
+	public Integer[] arraysSort() {
+		final Integer[] arr = fresh();
+		Arrays.sort(arr);
+		return arr;
+	}
+
+	@Benchmark
+	public Integer[] quickSort() {
+		final Integer[] arr = fresh();
+		OtherSorts.quickSort(arr);
+		return arr;
+	}
+}
@@ -6,9 +6,17 @@
 
 import sort.ComplexTimSort;
 import sort.SimpleTimSort;
+import sort.SortService;
 import sort.OtherSorts;
+import sort.StringSort;
+import sort.TimSortContext;
 
+import java.lang.management.ManagementFactory;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.function.Consumer;
 import java.util.function.Function;
@@ -48,6 +56,96 @@ public class Main {
 		}
 	}
 
+	/**
+	 * Sorts shuffled keys that each extend the one before, "a", "aa", "aaa",
+	 * which nest one level deeper per key in a radix sort.
+	 */
+	public static void testNestedKeys(int size) {
+		var keys = new String[size];
+		for (int i = 0; i < size; i++) {
+			keys[i] = "a".repeat(i + 1);
+		}
+		Collections.shuffle(Arrays.asList(keys), RANDOM);
+		var copy = Arrays.copyOf(keys, size);
+		StringSort.sort(keys);
+		StringSort.stableSort(copy, Function.identity());
+		for (int i = 0; i < size; i++) {
+			assert keys[i].length() == i + 1: FAILURE;
+			assert copy[i].length() == i + 1: FAILURE;
+		}
+	}
+
+	/**
+	 * Sorts the same input over and over through one context and checks that,
+	 * once its buffers have grown, a sort allocates nothing when no recording
+	 * is running.
+	 */
+	public static void testSteadyStateAllocation(int size) {
+		var threads = (com.sun.management.ThreadMXBean)
+		              ManagementFactory.getThreadMXBean();
+		var input = generateRandomArray(size);
+		var array = new Integer[size];
+		var ctx = new TimSortContext();
+		Comparator<Integer> comp = Integer::compare;
+		for (int i = 0; i < 2000; i++) {
+			System.arraycopy(input, 0, array, 0, size);
+			ComplexTimSort.sort(array, comp, ctx);
+		}
+		var thread = Thread.currentThread().getId();
+		var before = threads.getThreadAllocatedBytes(thread);
+		for (int i = 0; i < 100; i++) {
+			System.arraycopy(input, 0, array, 0, size);
+			ComplexTimSort.sort(array, comp, ctx);
+		}
+		var allocated = threads.getThreadAllocatedBytes(thread) - before;
+		assert allocated == 0: "Sorting allocated " + allocated + " bytes";
+	}
+
+	/**
+	 * Closes a service while threads keep submitting to it, and checks that
+	 * every future a submit returned is complete once close has returned and
+	 * the submitters have stopped.
+	 */
+	public static void testCloseWhileSubmitting(int trials)
+	throws InterruptedException
+	{
+		for (int trial = 0; trial < trials; trial++) {
+			var service = new SortService(2, 2);
+			var futures = new ConcurrentLinkedQueue<CompletableFuture<int[]>>();
+			var start = new CountDownLatch(1);
+			var submitters = new Thread[6];
+			for (int i = 0; i < submitters.length; i++) {
+				submitters[i] = new Thread(() -> {
+					try {
+						start.await();
+						while (true) {
+							try {
+								futures.add(service.submit(new int[] {2, 1}));
+							} catch (RejectedExecutionException e) {
+								if ("sort service is closed"
+								    .equals(e.getMessage()))
+								{
+									return;
+								}
+							}
+						}
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				});
+				submitters[i].start();
+			}
+			start.countDown();
+			service.close();
+			for (Thread submitter : submitters) {
+				submitter.join();
+			}
+			for (var future : futures) {
+				assert future.isDone(): "A future was never completed";
+			}
+		}
+	}
+
 	public static String testSort(Consumer<Integer[]> sortAlgorithm) {
 		if (!testing) {
 			testing = true;
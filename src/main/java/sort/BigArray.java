@@ -0,0 +1,229 @@
+package sort;
+
+import java.util.Comparator;
+import java.util.Objects;
+
+import static sort.ComplexTimSort.MIN_GALLOP;
+
+/**
+ * An array of objects indexed by long, for datasets of more elements than a
+ * Java array can hold. The elements live in segments of
+ * {@link #SEGMENT_LENGTH} elements each, the last one holding the remainder.
+ * <p>
+ * {@link #sort} sorts every segment on its own with the object TimSort, then
+ * merges the sorted segments in one pass through a tree of losers that
+ * gallops like the merges of {@link ComplexTimSort}. The merge writes into
+ * new segments, so on top of the merge buffer for one segment, sorting takes
+ * as much memory again as the array itself.
+ * @param <T> the type of the elements
+ */
+public final class BigArray<T> {
+	static final int SEGMENT_BITS = 27;
+	/** The length of every segment but the last. */
+	public static final int SEGMENT_LENGTH = 1 << SEGMENT_BITS;
+
+	private final long length;
+	private final int segmentBits;
+	private Object[][] segments;
+
+	/**
+	 * Creates an array of nulls.
+	 * @param length the number of elements
+	 * @throws IllegalArgumentException if length is negative
+	 */
+	public BigArray(long length) {
+		this(length, SEGMENT_BITS);
+	}
+
+	BigArray(long length, int segmentBits) {
+		if (length < 0) {
+			throw new IllegalArgumentException(
+			"length(" + length + ") must not be negative");
+		}
+		this.length = length;
+		this.segmentBits = segmentBits;
+		this.segments = allocate(length, segmentBits);
+	}
+
+	private static Object[][] allocate(long length, int segmentBits) {
+		final long segmentLength = 1L << segmentBits;
+		final int count = (int) ((length + segmentLength - 1) >>> segmentBits);
+		final Object[][] segments = new Object[count][];
+		for (int i = 0; i < count; i++) {
+			segments[i] = new Object[lengthOf(length, segmentBits, i)];
+		}
+		return segments;
+	}
+
+	private static int lengthOf(long length, int segmentBits, int index) {
+		return (int) Math.min(1L << segmentBits,
+		                      length - ((long) index << segmentBits));
+	}
+
+	/** @return the number of elements */
+	public long length() {
+		return length;
+	}
+
+	/**
+	 * @param index the index of an element
+	 * @return the element at the index
+	 * @throws IndexOutOfBoundsException if the index is out of bounds
+	 */
+	@SuppressWarnings("unchecked")
+	public T get(long index) {
+		Objects.checkIndex(index, length);
+		return (T) segments[(int) (index >>> segmentBits)]
+		       [(int) index & ((1 << segmentBits) - 1)];
+	}
+
+	/**
+	 * @param index the index of an element
+	 * @param element the element to store at the index
+	 * @throws IndexOutOfBoundsException if the index is out of bounds
+	 */
+	public void set(long index, T element) {
+		Objects.checkIndex(index, length);
+		segments[(int) (index >>> segmentBits)]
+		[(int) index & ((1 << segmentBits) - 1)] = element;
+	}
+
+	/**
+	 * Sorts the array using a given comparator. The sort is stable.
+	 * @param comp the comparator used to sort the array
+	 */
+	@SuppressWarnings("unchecked")
+	public void sort(Comparator<T> comp) {
+		final TimSortContext ctx = new TimSortContext();
+		ctx.enter();
+		try {
+			for (Object[] segment : segments) {
+				ctx.reset();
+				ObjectTimSort.sort((T[]) segment, 0, segment.length, comp, ctx);
+			}
+		} finally {
+			ctx.exit();
+		}
+		if (segments.length > 1) {
+			segments = new SegmentMerge<>(segments, comp).merge(length,
+			                                                    segmentBits);
+		}
+	}
+
+	/**
+	 * Merges sorted segments into new ones, copying the stretches a segment
+	 * wins while galloping in bulk.
+	 */
+	private static final class SegmentMerge<T> extends LoserTree {
+		private final Object[][] sources;
+		private final int[] limits;
+		private final int[] positions;
+		private final Comparator<T> comp;
+
+		SegmentMerge(Object[][] sources, Comparator<T> comp) {
+			super(sources.length);
+			this.sources = sources;
+			this.limits = new int[size];
+			this.positions = new int[size];
+			this.comp = comp;
+			for (int i = 0; i < size; i++) {
+				limits[i] = sources[i].length;
+			}
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		boolean beats(int a, int b) {
+			if (positions[a] == limits[a]) {
+				return false;
+			}
+			if (positions[b] == limits[b]) {
+				return true;
+			}
+			final int compare = comp.compare((T) sources[a][positions[a]],
+			                                 (T) sources[b][positions[b]]);
+			return compare < 0 || compare == 0 && a < b;
+		}
+
+		Object[][] merge(long length, int segmentBits) {
+			final int segmentLength = 1 << segmentBits;
+			final Object[][] output = new Object[sources.length][];
+			int segment = 0;
+			int offset = segmentLength;
+
+			build();
+			int streak = 0;
+			for (long o = 0; o < length; ) {
+				final int source = winner();
+				final int count = streak >= MIN_GALLOP
+				                  ? gallop(source, runnerUp())
+				                  : 1;
+				// the stretch may run over the end of an output segment
+				for (int copied = 0; copied < count; ) {
+					if (offset == segmentLength) {
+						output[segment] =
+						new Object[lengthOf(length, segmentBits, segment)];
+						segment++;
+						offset = 0;
+					}
+					final int chunk =
+					Math.min(count - copied, segmentLength - offset);
+					System.arraycopy(sources[source], positions[source],
+					                 output[segment - 1], offset, chunk);
+					positions[source] += chunk;
+					copied += chunk;
+					offset += chunk;
+				}
+				o += count;
+				replay(source);
+				streak = winner() == source ? streak + 1 : 0;
+			}
+			return output;
+		}
+
+		/**
+		 * Counts how many elements of the winning segment, from its head on,
+		 * come before the head of the runner-up, by galloping and then
+		 * binary searching.
+		 */
+		@SuppressWarnings("unchecked")
+		private int gallop(int source, int runnerUp) {
+			final Object[] arr = sources[source];
+			final int base = positions[source];
+			final int length = limits[source] - base;
+			if (runnerUp < 0 || positions[runnerUp] == limits[runnerUp]) {
+				return length;
+			}
+			final T target = (T) sources[runnerUp][positions[runnerUp]];
+			final boolean inclusive = source < runnerUp;
+
+			int lastOffset = 0;
+			int offset = 1;
+			while (offset < length
+			       && before((T) arr[base + offset], target, inclusive))
+			{
+				lastOffset = offset;
+				offset = (offset << 1) + 1; // offset * 2 + 1
+			}
+			if (offset > length) {
+				offset = length;
+			}
+
+			lastOffset++;
+			while (lastOffset < offset) {
+				final int mid = (lastOffset + offset) >>> 1;
+				if (before((T) arr[base + mid], target, inclusive)) {
+					lastOffset = mid + 1;
+				} else {
+					offset = mid;
+				}
+			}
+			return offset;
+		}
+
+		private boolean before(T element, T target, boolean inclusive) {
+			final int compare = comp.compare(element, target);
+			return compare < 0 || inclusive && compare == 0;
+		}
+	}
+}
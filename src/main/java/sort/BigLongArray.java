@@ -0,0 +1,214 @@
+package sort;
+
+import java.util.Objects;
+
+import static sort.ComplexTimSort.MIN_GALLOP;
+
+/**
+ * An array of longs indexed by long, the primitive counterpart of
+ * {@link BigArray}. The elements live in segments of
+ * {@link #SEGMENT_LENGTH} elements each, the last one holding the remainder.
+ * <p>
+ * {@link #sort} sorts every segment on its own with {@link RadixSort}, which
+ * hands segments with long runs to TimSort, then merges the sorted segments
+ * in one pass through a galloping tree of losers. The merge writes into new
+ * segments, so on top of the radix buffer for one segment, sorting takes as
+ * much memory again as the array itself.
+ */
+public final class BigLongArray {
+	static final int SEGMENT_BITS = BigArray.SEGMENT_BITS;
+	/** The length of every segment but the last. */
+	public static final int SEGMENT_LENGTH = 1 << SEGMENT_BITS;
+
+	private final long length;
+	private final int segmentBits;
+	private long[][] segments;
+
+	/**
+	 * Creates an array of zeros.
+	 * @param length the number of elements
+	 * @throws IllegalArgumentException if length is negative
+	 */
+	public BigLongArray(long length) {
+		this(length, SEGMENT_BITS);
+	}
+
+	BigLongArray(long length, int segmentBits) {
+		if (length < 0) {
+			throw new IllegalArgumentException(
+			"length(" + length + ") must not be negative");
+		}
+		this.length = length;
+		this.segmentBits = segmentBits;
+		this.segments = allocate(length, segmentBits);
+	}
+
+	private static long[][] allocate(long length, int segmentBits) {
+		final long segmentLength = 1L << segmentBits;
+		final int count = (int) ((length + segmentLength - 1) >>> segmentBits);
+		final long[][] segments = new long[count][];
+		for (int i = 0; i < count; i++) {
+			segments[i] = new long[lengthOf(length, segmentBits, i)];
+		}
+		return segments;
+	}
+
+	private static int lengthOf(long length, int segmentBits, int index) {
+		return (int) Math.min(1L << segmentBits,
+		                      length - ((long) index << segmentBits));
+	}
+
+	/** @return the number of elements */
+	public long length() {
+		return length;
+	}
+
+	/**
+	 * @param index the index of an element
+	 * @return the element at the index
+	 * @throws IndexOutOfBoundsException if the index is out of bounds
+	 */
+	public long get(long index) {
+		Objects.checkIndex(index, length);
+		return segments[(int) (index >>> segmentBits)]
+		       [(int) index & ((1 << segmentBits) - 1)];
+	}
+
+	/**
+	 * @param index the index of an element
+	 * @param element the element to store at the index
+	 * @throws IndexOutOfBoundsException if the index is out of bounds
+	 */
+	public void set(long index, long element) {
+		Objects.checkIndex(index, length);
+		segments[(int) (index >>> segmentBits)]
+		[(int) index & ((1 << segmentBits) - 1)] = element;
+	}
+
+	/**
+	 * Sorts the array into ascending numerical order.
+	 */
+	public void sort() {
+		for (long[] segment : segments) {
+			RadixSort.sort(segment);
+		}
+		if (segments.length > 1) {
+			segments = new SegmentMerge(segments).merge(length, segmentBits);
+		}
+	}
+
+	/**
+	 * Merges sorted segments into new ones, copying the stretches a segment
+	 * wins while galloping in bulk.
+	 */
+	private static final class SegmentMerge extends LoserTree {
+		private final long[][] sources;
+		private final int[] limits;
+		private final int[] positions;
+
+		SegmentMerge(long[][] sources) {
+			super(sources.length);
+			this.sources = sources;
+			this.limits = new int[size];
+			this.positions = new int[size];
+			for (int i = 0; i < size; i++) {
+				limits[i] = sources[i].length;
+			}
+		}
+
+		@Override
+		boolean beats(int a, int b) {
+			if (positions[a] == limits[a]) {
+				return false;
+			}
+			if (positions[b] == limits[b]) {
+				return true;
+			}
+			final int compare =
+			Long.compare(sources[a][positions[a]], sources[b][positions[b]]);
+			return compare < 0 || compare == 0 && a < b;
+		}
+
+		long[][] merge(long length, int segmentBits) {
+			final int segmentLength = 1 << segmentBits;
+			final long[][] output = new long[sources.length][];
+			int segment = 0;
+			int offset = segmentLength;
+
+			build();
+			int streak = 0;
+			for (long o = 0; o < length; ) {
+				final int source = winner();
+				final int count = streak >= MIN_GALLOP
+				                  ? gallop(source, runnerUp())
+				                  : 1;
+				// the stretch may run over the end of an output segment
+				for (int copied = 0; copied < count; ) {
+					if (offset == segmentLength) {
+						output[segment] =
+						new long[lengthOf(length, segmentBits, segment)];
+						segment++;
+						offset = 0;
+					}
+					final int chunk =
+					Math.min(count - copied, segmentLength - offset);
+					System.arraycopy(sources[source], positions[source],
+					                 output[segment - 1], offset, chunk);
+					positions[source] += chunk;
+					copied += chunk;
+					offset += chunk;
+				}
+				o += count;
+				replay(source);
+				streak = winner() == source ? streak + 1 : 0;
+			}
+			return output;
+		}
+
+		/**
+		 * Counts how many elements of the winning segment, from its head on,
+		 * come before the head of the runner-up, by galloping and then
+		 * binary searching.
+		 */
+		private int gallop(int source, int runnerUp) {
+			final long[] arr = sources[source];
+			final int base = positions[source];
+			final int length = limits[source] - base;
+			if (runnerUp < 0 || positions[runnerUp] == limits[runnerUp]) {
+				return length;
+			}
+			final long target = sources[runnerUp][positions[runnerUp]];
+			final boolean inclusive = source < runnerUp;
+
+			int lastOffset = 0;
+			int offset = 1;
+			while (offset < length
+			       && before(arr[base + offset], target, inclusive))
+			{
+				lastOffset = offset;
+				offset = (offset << 1) + 1; // offset * 2 + 1
+			}
+			if (offset > length) {
+				offset = length;
+			}
+
+			lastOffset++;
+			while (lastOffset < offset) {
+				final int mid = (lastOffset + offset) >>> 1;
+				if (before(arr[base + mid], target, inclusive)) {
+					lastOffset = mid + 1;
+				} else {
+					offset = mid;
+				}
+			}
+			return offset;
+		}
+
+		private static boolean before(long element, long target,
+		                              boolean inclusive)
+		{
+			final int compare = Long.compare(element, target);
+			return compare < 0 || inclusive && compare == 0;
+		}
+	}
+}
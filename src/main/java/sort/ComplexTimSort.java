@@ -1,11 +1,13 @@
 package sort;
 
-import java.util.ArrayList;
+import java.lang.reflect.Array;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
 
-import static java.lang.Math.abs;
-import static java.lang.Math.min;
 public interface ComplexTimSort {
 	int THRESHOLD = 32;
 	int MIN_GALLOP = 7;
@@ -26,511 +28,633 @@ public interface ComplexTimSort {
 	 * @param comp the comparator used to sort the array
 	 */
 	static <T> void sort(T[] arr, Comparator<T> comp) {
-		int minGallop = MIN_GALLOP;
-		int lo = 0;
-		final int hi = arr.length;
-		int remaining = hi;
-		final int minRun = runLength(arr);
-		final ArrayList<int[]> stack = new ArrayList<>(hi / minRun + 1);
-
-		if (remaining < THRESHOLD) {
-			final int startingRunLength = ascendThenCount(arr, comp, lo, hi);
-			binarySort(arr, comp, lo, hi, lo + startingRunLength);
-			return;
-		}
-
-		while (remaining > 0) {
-			int runLength = ascendThenCount(arr, comp, lo, hi);
-			if (runLength < minRun) {
-				final int force = min(remaining, minRun);
-				binarySort(arr, comp, lo, lo + force, lo + runLength);
-				runLength = force;
-			}
-			stack.add(new int[]{lo, runLength});
-			minGallop = mergeCollapse(arr, stack, comp, minGallop);
-			lo += runLength;
-			remaining -= runLength;
-		}
-
-		mergeForceCollapse(arr, stack, comp, minGallop);
+		sort(arr, 0, arr.length, comp);
 	}
 
 	/**
-	 * Calculates a run length for the array that is effectively equivalent to
-	 * ceil(length / (2 ^ (ceil(log2(length + 0.001)) - 2)))
+	 * Sorts the range [fromIndex, toIndex) of an array of comparable objects,
+	 * leaving the rest of the array untouched.
 	 * @param <T> the type of the array
-	 * @param arr the array whose run length is to be calculated
-	 * @return the calculated run length
-	 */
-	private static <T> int runLength(T[] arr) {
-		int runLength = arr.length;
-		int remainder = 0;
-		while (runLength >= THRESHOLD) {
-			remainder |= runLength & 1;
-			runLength >>>= 1;
-		}
-		return runLength + remainder;
+	 * @param arr the array to be sorted
+	 * @param fromIndex the index of the first element to sort, inclusive
+	 * @param toIndex the index of the last element to sort, exclusive
+	 * @throws IllegalArgumentException if fromIndex &gt; toIndex
+	 * @throws ArrayIndexOutOfBoundsException if fromIndex &lt; 0 or
+	 * toIndex &gt; arr.length
+	 */
+	static <T extends Comparable<T>> void sort(T[] arr, int fromIndex,
+	                                           int toIndex)
+	{
+		sort(arr, fromIndex, toIndex,
+		     Comparator.nullsFirst(Comparator.naturalOrder()));
 	}
 
 	/**
-	 * Counts the length of the ascending or descending run starting at the
-	 * left index and returns the count. If the elements are in descending
-	 * order, this reverses the run to make it ascending after counting.
+	 * Sorts the range [fromIndex, toIndex) of an array using a given
+	 * comparator, leaving the rest of the array untouched. The minimum run
+	 * length is worked out from the length of the range, so sorting a slice
+	 * in place costs the same as sorting a copy of it.
 	 * @param <T> the type of the array
-	 * @param arr the array being worked with
+	 * @param arr the array to be sorted
+	 * @param fromIndex the index of the first element to sort, inclusive
+	 * @param toIndex the index of the last element to sort, exclusive
 	 * @param comp the comparator used to sort the array
-	 * @param left the starting index of the run, inclusive
-	 * @param right the maximum index of the run, exclusive
-	 * @return the length of the run
+	 * @throws IllegalArgumentException if fromIndex &gt; toIndex
+	 * @throws ArrayIndexOutOfBoundsException if fromIndex &lt; 0 or
+	 * toIndex &gt; arr.length
 	 */
-	private static <T> int ascendThenCount(T[] arr, Comparator<T> comp,
-	                                       int left, int right)
+	static <T> void sort(T[] arr, int fromIndex, int toIndex,
+	                     Comparator<T> comp)
 	{
-		int runRight = left + 1;
-		if (runRight == right) {
-			return 1;
-		}
-		if (comp.compare(arr[left],arr[runRight]) > 0) {
-			while (runRight < right
-			       && comp.compare(arr[runRight], arr[runRight - 1]) < 0)
-			{
-				runRight++;
-			}
-			reverse(arr, left, runRight);
-		} else {
-			while (runRight < right
-			       && comp.compare(arr[runRight], arr[runRight - 1]) >= 0)
-			{
-				runRight++;
-			}
+		rangeCheck(arr.length, fromIndex, toIndex);
+		final TimSortContext ctx = TimSortContext.acquire();
+		try {
+			ObjectTimSort.sort(arr, fromIndex, toIndex, comp, ctx);
+		} finally {
+			ctx.exit();
 		}
-		return runRight - left;
 	}
 
 	/**
-	 * Reverses the order of a descending run
+	 * Sorts an array using a given comparator, taking the run stack and merge
+	 * buffer from the given context instead of the current thread's. A context
+	 * that is reused across calls makes sorting allocation free once its
+	 * buffer has grown to fit.
 	 * @param <T> the type of the array
-	 * @param arr the array being worked with
-	 * @param left the starting index of the descending run, inclusive
-	 * @param right the ending index of the descending run, exclusive
-	 */
-	private static <T> void reverse(T[] arr, int left, int right) {
-		right--;
-		while (left < right) {
-			T temp = arr[left];
-			arr[left] = arr[right];
-			arr[right] = temp;
-			left++;
-			right--;
+	 * @param arr the array to be sorted
+	 * @param comp the comparator used to sort the array
+	 * @param ctx the context to sort with
+	 * @throws IllegalStateException if the context is already in use
+	 */
+	static <T> void sort(T[] arr, Comparator<T> comp, TimSortContext ctx) {
+		ctx.enter();
+		try {
+			ObjectTimSort.sort(arr, 0, arr.length, comp, ctx);
+		} finally {
+			ctx.exit();
 		}
 	}
 
-	private static <T> void binarySort(T[] arr, Comparator<T> comp, int lo,
-	                                   int hi, int start)
-	{
-		if (start == lo) {
-			start++;
-		}
-		while (start < hi) {
-			final T pivot = arr[start];
-			final int index =
-			abs(binarySearch(arr, comp, lo, start, pivot) + 1);
-			System.arraycopy(arr, index, arr, index + 1, start - index);
-			arr[index] = pivot;
-			start++;
+	/**
+	 * Sorts an array using a given comparator and records what the sort did,
+	 * such as comparisons, runs, merges and galloping, in the given sink.
+	 * @param <T> the type of the array
+	 * @param arr the array to be sorted
+	 * @param comp the comparator used to sort the array
+	 * @param stats the sink to fill in
+	 */
+	static <T> void sort(T[] arr, Comparator<T> comp, SortStats stats) {
+		final TimSortContext ctx = TimSortContext.acquire();
+		final SortStats previous = ctx.stats;
+		ctx.stats = stats;
+		try {
+			ObjectTimSort.sort(arr, 0, arr.length, comp, ctx);
+		} finally {
+			ctx.stats = previous;
+			ctx.exit();
 		}
 	}
 
-	private static <T> int binarySearch(T[] arr, Comparator<T> comp, int base,
-	                                    int end, T target)
+	/**
+	 * Sorts an array using a given comparator with at most a given number of
+	 * elements of scratch space for merging. Merges too large for it are done
+	 * by rotating elements in place, which is slower but just as stable.
+	 * @param <T> the type of the array
+	 * @param arr the array to be sorted
+	 * @param comp the comparator used to sort the array
+	 * @param maxBufferLength the most elements the merge buffer may hold
+	 * @throws IllegalArgumentException if maxBufferLength is negative
+	 * @see TimSortContext#setMaxBufferLength(int)
+	 */
+	static <T> void boundedSort(T[] arr, Comparator<T> comp,
+	                            int maxBufferLength)
 	{
-		int left = base;
-		int right = end - 1;
-		while (left <= right) {
-			final int mid = (left + right) >>> 1;
-			final T middle = arr[mid];
-			final int compare = comp.compare(middle, target);
-			if (compare < 0) {
-				left = mid + 1;
-			} else if (compare > 0) {
-				right = mid - 1;
-			} else {
-				return mid;
-			}
+		final TimSortContext ctx = new TimSortContext();
+		ctx.setMaxBufferLength(maxBufferLength);
+		ctx.enter();
+		try {
+			ObjectTimSort.sort(arr, 0, arr.length, comp, ctx);
+		} finally {
+			ctx.exit();
 		}
-		return -(left + 1);
 	}
 
-	private static <T> int searchLeft(T[] arr, Comparator<T> comp, int base,
-	                                  int length, T target)
-	{
-		int left = base;
-		int right = base + length;
-		while (left < right) {
-			final int mid = (left + right) >>> 1;
-			if (comp.compare(target, arr[mid]) > 0) {
-				left = mid + 1;
-			} else {
-				right = mid;
-			}
-		}
-		return left - base;
+	/**
+	 * Prepares a sort of an array of comparable objects, nulls first, that
+	 * only does work when {@link ResumableSort#step} is called, a bounded
+	 * amount at a time.
+	 * @param <T> the type of the array
+	 * @param arr the array to be sorted
+	 * @return the sort, not yet started
+	 */
+	static <T extends Comparable<T>> ResumableSort<T> resumableSort(T[] arr) {
+		return resumableSort(arr, 0, arr.length,
+		                     Comparator.nullsFirst(Comparator.naturalOrder()));
 	}
 
-	private static <T> int searchRight(T[] arr, Comparator<T> comp, int base,
-	                                   int length, T target)
-	{
-		int left = base;
-		int right = length;
-		while (left < right) {
-			final int mid = (left + right) >>> 1;
-			if (comp.compare(target, arr[mid]) < 0) {
-				right = mid;
-			} else {
-				left = mid + 1;
-			}
-		}
-		return left - base;
+	/**
+	 * Prepares a sort of an array using a given comparator that only does
+	 * work when {@link ResumableSort#step} is called, a bounded amount at a
+	 * time.
+	 * @param <T> the type of the array
+	 * @param arr the array to be sorted
+	 * @param comp the comparator used to sort the array
+	 * @return the sort, not yet started
+	 */
+	static <T> ResumableSort<T> resumableSort(T[] arr, Comparator<T> comp) {
+		return resumableSort(arr, 0, arr.length, comp);
 	}
 
-	private static <T> int gallopLeft(T[] arr, Comparator<T> comp, int base,
-	                                  int length, int hint, T target)
+	/**
+	 * Prepares a sort of the range [fromIndex, toIndex) of an array using a
+	 * given comparator that only does work when {@link ResumableSort#step} is
+	 * called, a bounded amount at a time.
+	 * @param <T> the type of the array
+	 * @param arr the array to be sorted
+	 * @param fromIndex the index of the first element to sort, inclusive
+	 * @param toIndex the index of the last element to sort, exclusive
+	 * @param comp the comparator used to sort the array
+	 * @return the sort, not yet started
+	 * @throws IllegalArgumentException if fromIndex &gt; toIndex
+	 * @throws ArrayIndexOutOfBoundsException if fromIndex &lt; 0 or
+	 * toIndex &gt; arr.length
+	 */
+	static <T> ResumableSort<T> resumableSort(T[] arr, int fromIndex,
+	                                          int toIndex, Comparator<T> comp)
 	{
-		int lastOffset = 0;
-		int offset = 1;
-		if (comp.compare(target, arr[base + hint]) > 0) {
-			final int maxOffset = length - hint;
-			while (offset < maxOffset
-			       && comp.compare(target, arr[base + hint + offset]) > 0)
-			{
-				lastOffset = offset;
-				offset = (offset << 1) + 1; // offset * 2 + 1
-			}
+		rangeCheck(arr.length, fromIndex, toIndex);
+		return new ResumableSort<>(arr, fromIndex, toIndex, comp);
+	}
 
-			if (offset > maxOffset) {
-				offset = maxOffset;
-			}
+	/**
+	 * Sorts an array of comparable objects in parallel on the common
+	 * fork-join pool.
+	 * @param <T> the type of the array
+	 * @param arr the array to be sorted
+	 */
+	static <T extends Comparable<T>> void parallelSort(T[] arr) {
+		parallelSort(arr, Comparator.nullsFirst(Comparator.naturalOrder()));
+	}
 
-			lastOffset += hint;
-			offset += hint;
-		} else {
-			final int maxOffset = hint + 1;
-			while (offset < maxOffset
-			       && comp.compare(target, arr[base + hint - offset]) <= 0)
-			{
-				lastOffset = offset;
-				offset = (offset << 1) + 1; // offset * 2 + 1
-			}
+	/**
+	 * Sorts an array in parallel on the common fork-join pool using a given
+	 * comparator. Arrays too small to be worth splitting are sorted
+	 * sequentially.
+	 * @param <T> the type of the array
+	 * @param arr the array to be sorted
+	 * @param comp the comparator used to sort the array
+	 */
+	static <T> void parallelSort(T[] arr, Comparator<T> comp) {
+		parallelSort(arr, comp, ForkJoinPool.commonPool());
+	}
 
-			if (offset > maxOffset) {
-				offset = maxOffset;
-			}
+	/**
+	 * Sorts an array in parallel on the given fork-join pool using a given
+	 * comparator.
+	 * @param <T> the type of the array
+	 * @param arr the array to be sorted
+	 * @param comp the comparator used to sort the array
+	 * @param pool the pool to run the sort on
+	 */
+	static <T> void parallelSort(T[] arr, Comparator<T> comp,
+	                             ForkJoinPool pool)
+	{
+		ParallelTimSort.sort(arr, 0, arr.length, comp, pool);
+	}
 
-			final int temp = lastOffset;
-			lastOffset = hint - offset;
-			offset = hint - temp;
+	/**
+	 * Sorts an array by an int key. The key of each element is extracted once
+	 * into an int array, and the keys are sorted with the elements moving
+	 * alongside them, so the key function is called n times rather than on
+	 * every comparison. Elements with equal keys keep their order.
+	 * @param <T> the type of the array
+	 * @param arr the array to be sorted
+	 * @param key the function extracting the key of an element
+	 */
+	static <T> void sortByIntKey(T[] arr, ToIntFunction<T> key) {
+		final int[] keys = new int[arr.length];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = key.applyAsInt(arr[i]);
 		}
+		final TimSortContext ctx = TimSortContext.acquire();
+		try {
+			KeyedTimSort.sort(keys, arr, 0, arr.length, ctx);
+		} finally {
+			ctx.exit();
+		}
+	}
 
-		lastOffset++;
-		while (lastOffset < offset) {
-			final int mid = (lastOffset + offset) >>> 1;
-			if (comp.compare(target, arr[base + mid]) > 0) {
-				lastOffset = mid + 1;
-			} else {
-				offset = mid;
-			}
+	/**
+	 * Sorts an array by a long key, extracting each key once. Elements with
+	 * equal keys keep their order.
+	 * @param <T> the type of the array
+	 * @param arr the array to be sorted
+	 * @param key the function extracting the key of an element
+	 * @see #sortByIntKey(Object[], ToIntFunction)
+	 */
+	static <T> void sortByLongKey(T[] arr, ToLongFunction<T> key) {
+		final long[] keys = new long[arr.length];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = key.applyAsLong(arr[i]);
+		}
+		final TimSortContext ctx = TimSortContext.acquire();
+		try {
+			KeyedTimSort.sort(keys, arr, 0, arr.length, ctx);
+		} finally {
+			ctx.exit();
 		}
-		return offset;
 	}
 
-	private static <T> int gallopRight(T[] arr, Comparator<T> comp, int base,
-	                                   int length, int hint, T target)
-	{
-		int lastOffset = 0;
-		int offset = 1;
-		if (comp.compare(target, arr[base + hint]) < 0) {
-			final int maxOffset = hint + 1;
-			while (offset < maxOffset
-			       && comp.compare(target, arr[base + hint - offset]) < 0)
-			{
-				lastOffset = offset;
-				offset = (offset << 1) + 1; // offset * 2 + 1
-			}
+	/**
+	 * Sorts an array by a double key, extracting each key once. Keys are
+	 * ordered as by {@link Double#compare}: -0.0 comes before 0.0 and elements
+	 * with NaN keys are placed at the end. Elements with equal keys keep their
+	 * order.
+	 * @param <T> the type of the array
+	 * @param arr the array to be sorted
+	 * @param key the function extracting the key of an element
+	 * @see #sortByIntKey(Object[], ToIntFunction)
+	 */
+	static <T> void sortByDoubleKey(T[] arr, ToDoubleFunction<T> key) {
+		final long[] keys = new long[arr.length];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = KeyedTimSort.sortableBits(key.applyAsDouble(arr[i]));
+		}
+		final TimSortContext ctx = TimSortContext.acquire();
+		try {
+			KeyedTimSort.sort(keys, arr, 0, arr.length, ctx);
+		} finally {
+			ctx.exit();
+		}
+	}
 
-			if (offset > maxOffset) {
-				offset = maxOffset;
-			}
+	/**
+	 * Returns the permutation that sorts an array, leaving the array as it is:
+	 * keys[perm[0]], keys[perm[1]], ... is in sorted order. Indices of keys
+	 * that compare equal come out in ascending order. Only the indices move,
+	 * so the permutation can be used to reorder any number of related arrays.
+	 * @param <T> the type of the keys
+	 * @param keys the keys to sort by
+	 * @param comp the comparator used to order the keys
+	 * @return the sorting permutation
+	 */
+	static <T> int[] argsort(T[] keys, Comparator<T> comp) {
+		return argsort(keys.length,
+		               (a, b) -> comp.compare(keys[a], keys[b]));
+	}
 
-			final int temp = lastOffset;
-			lastOffset = hint - offset;
-			offset = hint - temp;
-		} else {
-			final int maxOffset = length - hint;
-			while (offset < maxOffset
-			       && comp.compare(target, arr[base + hint + offset]) >= 0)
-			{
-				lastOffset = offset;
-				offset = (offset << 1) + 1; // offset * 2 + 1
-			}
+	/**
+	 * Returns the permutation that sorts an array of ints into ascending
+	 * order, leaving the array as it is. Indices of equal keys come out in
+	 * ascending order. Each key is packed with its index into a long, and the
+	 * longs are sorted directly, so no comparison goes through an index.
+	 * @param keys the keys to sort by
+	 * @return the sorting permutation
+	 * @see #argsort(Object[], Comparator)
+	 */
+	static int[] argsort(int[] keys) {
+		final int n = keys.length;
+		final long[] packed = new long[n];
+		for (int i = 0; i < n; i++) {
+			packed[i] = (long) keys[i] << 32 | i;
+		}
+		final TimSortContext ctx = TimSortContext.acquire();
+		try {
+			PrimitiveTimSort.sort(packed, 0, n, ctx);
+		} finally {
+			ctx.exit();
+		}
+		final int[] perm = new int[n];
+		for (int i = 0; i < n; i++) {
+			perm[i] = (int) packed[i];
+		}
+		return perm;
+	}
 
-			if (offset > maxOffset) {
-				offset = maxOffset;
-			}
+	/**
+	 * Returns the permutation that sorts an array of longs into ascending
+	 * order, leaving the array as it is. Indices of equal keys come out in
+	 * ascending order.
+	 * @param keys the keys to sort by
+	 * @return the sorting permutation
+	 * @see #argsort(Object[], Comparator)
+	 */
+	static int[] argsort(long[] keys) {
+		return argsort(keys.length, (a, b) -> Long.compare(keys[a], keys[b]));
+	}
 
-			lastOffset += hint;
-			offset += hint;
-		}
-		lastOffset++;
-		while (lastOffset < offset) {
-			final int mid = (lastOffset + offset) >>> 1;
-			if (comp.compare(target, arr[base + mid]) < 0) {
-				offset = mid;
-			} else {
-				lastOffset = mid + 1;
-			}
+	/**
+	 * Returns the permutation that sorts an array of doubles into the order of
+	 * {@link Double#compare}, leaving the array as it is. Indices of equal
+	 * keys come out in ascending order.
+	 * @param keys the keys to sort by
+	 * @return the sorting permutation
+	 * @see #argsort(Object[], Comparator)
+	 */
+	static int[] argsort(double[] keys) {
+		final long[] bits = new long[keys.length];
+		for (int i = 0; i < bits.length; i++) {
+			bits[i] = KeyedTimSort.sortableBits(keys[i]);
 		}
-		return offset;
+		return argsort(bits);
 	}
 
-	private static <T> int mergeLo(T[] arr, Comparator<T> comp, int l, int m,
-	                                int r, int minGallop)
+	/**
+	 * Sorts an array of keys and reorders any number of columns, arrays of the
+	 * same length holding one entry per key, the same way. The sorting
+	 * permutation is worked out once from the keys, then applied to the keys
+	 * and to every column, so rows are never gathered into objects. Rows with
+	 * equal keys keep their order.
+	 * @param <T> the type of the keys
+	 * @param keys the keys to sort by
+	 * @param comp the comparator used to order the keys
+	 * @param columns arrays of any element type, primitive or not
+	 * @throws IllegalArgumentException if a column is not an array or its
+	 * length differs from that of the keys
+	 */
+	static <T> void sortTogether(T[] keys, Comparator<T> comp,
+	                             Object... columns)
 	{
-		final T[] temp = Arrays.copyOfRange(arr, l, m);
-		int i = l, j = m, k = 0;
-		boolean done = false;
-
-		while (!done) {
-			int count1 = 0;
-			int count2 = 0;
-			while ((count1 | count2) < minGallop) {
-				if (comp.compare(arr[j], temp[k]) > 0) {
-					arr[i++] = temp[k++];
-					count1++;
-					count2 = 0;
-				} else {
-					arr[i++] = arr[j++];
-					count1 = 0;
-					count2++;
-				}
-
-				if (k == m - l || j == r) {
-					done = true;
-					break;
-				}
-			}
+		checkColumns(keys.length, columns);
+		final int[] perm = argsort(keys, comp);
+		permute(perm, keys);
+		for (Object column : columns) {
+			permute(perm, column);
+		}
+	}
 
-			if (done) {
-				break;
-			}
+	/**
+	 * Sorts an array of int keys into ascending order and reorders any number
+	 * of columns the same way. Rows with equal keys keep their order.
+	 * @param keys the keys to sort by
+	 * @param columns arrays of any element type, primitive or not
+	 * @throws IllegalArgumentException if a column is not an array or its
+	 * length differs from that of the keys
+	 * @see #sortTogether(Object[], Comparator, Object...)
+	 */
+	static void sortTogether(int[] keys, Object... columns) {
+		checkColumns(keys.length, columns);
+		final int[] perm = argsort(keys);
+		permute(perm, keys);
+		for (Object column : columns) {
+			permute(perm, column);
+		}
+	}
 
-			while (count1 >= MIN_GALLOP || count2 >= MIN_GALLOP) {
-				count1 = gallopRight(temp, comp, k, m - l - k, 0, arr[j]);
-				if (count1 != 0) {
-					System.arraycopy(temp, k, arr, i, count1);
-					i += count1;
-					k += count1;
-					if (k == m - l) {
-						done = true;
-						break;
-					}
-				}
-
-				arr[i] = arr[j];
-				i++;
-				j++;
-				if (j == r) {
-					done = true;
-					break;
-				}
-
-				count2 = gallopLeft(arr, comp, j, r - j, 0, temp[k]);
-				if (count2 != 0) {
-					System.arraycopy(arr, j, arr, i, count2);
-					i += count2;
-					j += count2;
-					if (j == r) {
-						done = true;
-						break;
-					}
-				}
-
-				arr[i] = temp[k];
-				i++;
-				k++;
-				if (k == m - l) {
-					done = true;
-					break;
-				}
-
-				minGallop--;
-			}
-			if (minGallop < 0) {
-				minGallop = 0;
-			}
-			minGallop += 2;
+	/**
+	 * Sorts an array of long keys into ascending order and reorders any number
+	 * of columns the same way. Rows with equal keys keep their order.
+	 * @param keys the keys to sort by
+	 * @param columns arrays of any element type, primitive or not
+	 * @throws IllegalArgumentException if a column is not an array or its
+	 * length differs from that of the keys
+	 * @see #sortTogether(Object[], Comparator, Object...)
+	 */
+	static void sortTogether(long[] keys, Object... columns) {
+		checkColumns(keys.length, columns);
+		final int[] perm = argsort(keys);
+		permute(perm, keys);
+		for (Object column : columns) {
+			permute(perm, column);
 		}
+	}
 
-		if (k < m - l) {
-			System.arraycopy(temp, k, arr, i, m - l - k);
+	/**
+	 * Sorts an array of double keys into the order of {@link Double#compare}
+	 * and reorders any number of columns the same way. Rows with equal keys
+	 * keep their order.
+	 * @param keys the keys to sort by
+	 * @param columns arrays of any element type, primitive or not
+	 * @throws IllegalArgumentException if a column is not an array or its
+	 * length differs from that of the keys
+	 * @see #sortTogether(Object[], Comparator, Object...)
+	 */
+	static void sortTogether(double[] keys, Object... columns) {
+		checkColumns(keys.length, columns);
+		final int[] perm = argsort(keys);
+		permute(perm, keys);
+		for (Object column : columns) {
+			permute(perm, column);
 		}
-		return minGallop;
 	}
 
-	private static <T> int mergeHi(T[] arr, Comparator<T> comp, int l, int m,
-	                                int r, int minGallop)
-	{
-		final T[] temp = Arrays.copyOfRange(arr, m, r);
-		int i = r - 1, j = m - 1, k = r - m - 1;
-		boolean done = false;
-
-		while (!done) {
-			int count1 = 0;
-			int count2 = 0;
-			while ((count1 | count2) < minGallop) {
-				if (comp.compare(arr[j], temp[k]) < 0) {
-					arr[i] = temp[k];
-					count1++;
-					count2 = 0;
-					k--;
-				} else {
-					arr[i] = arr[j];
-					count1 = 0;
-					count2++;
-					j--;
-				}
-				i--;
-
-				if (k == -1 || j == l - 1) {
-					done = true;
-					break;
-				}
-			}
+	/**
+	 * Sorts the identity permutation of length n with a comparator of the
+	 * keys at two indices.
+	 */
+	private static int[] argsort(int n, IndexTimSort.IndexComparator comp) {
+		final int[] perm = new int[n];
+		for (int i = 0; i < n; i++) {
+			perm[i] = i;
+		}
+		final TimSortContext ctx = TimSortContext.acquire();
+		try {
+			IndexTimSort.sort(perm, comp, 0, n, ctx);
+		} finally {
+			ctx.exit();
+		}
+		return perm;
+	}
 
-			if (done) {
-				break;
+	private static void checkColumns(int length, Object[] columns) {
+		for (Object column : columns) {
+			if (column == null || !column.getClass().isArray()) {
+				throw new IllegalArgumentException("not an array: " + column);
+			}
+			if (Array.getLength(column) != length) {
+				throw new IllegalArgumentException(
+				"column of length " + Array.getLength(column)
+				+ " does not match " + length + " keys");
 			}
+		}
+	}
 
-			while (count1 >= MIN_GALLOP || count2 >= MIN_GALLOP) {
-				count1 = j - l + 1 - gallopRight(arr, comp,  l, j - l + 1,
-				                                 j - l, temp[k]);
-				if (count1 != 0) {
-					final int gap = count1 - 1;
-					System.arraycopy(arr, j - gap, arr, i - gap, 1 + gap);
-					i -= count1;
-					j -= count1;
-					if (j == l - 1) {
-						done = true;
-						break;
-					}
-				}
-
-				arr[i] = temp[k];
-				i--;
-				k--;
-
-				if (k == -1) {
-					done = true;
-					break;
-				}
-
-				count2 = k + 1 - gallopLeft(temp, comp, 0, k + 1, k, arr[j]);
-				if (count2 != 0) {
-					final int gap = count2 - 1;
-					System.arraycopy(temp, k - gap, arr, i - gap, 1 + gap);
-					i -= count2;
-					k -= count2;
-					if (k == -1) {
-						done = true;
-						break;
-					}
-				}
-
-				arr[i] = arr[j];
-				i--;
-				j--;
-				if (j == l - 1) {
-					done = true;
-					break;
-				}
-
-				minGallop--;
+	/**
+	 * Reorders an array so that its element i is the one that was at perm[i].
+	 */
+	private static void permute(int[] perm, Object column) {
+		final int n = perm.length;
+		if (column instanceof Object[] arr) {
+			final Object[] copy = arr.clone();
+			for (int i = 0; i < n; i++) {
+				arr[i] = copy[perm[i]];
+			}
+		} else if (column instanceof int[] arr) {
+			final int[] copy = arr.clone();
+			for (int i = 0; i < n; i++) {
+				arr[i] = copy[perm[i]];
 			}
-			if (minGallop < 0) {
-				minGallop = 0;
+		} else if (column instanceof long[] arr) {
+			final long[] copy = arr.clone();
+			for (int i = 0; i < n; i++) {
+				arr[i] = copy[perm[i]];
+			}
+		} else if (column instanceof double[] arr) {
+			final double[] copy = arr.clone();
+			for (int i = 0; i < n; i++) {
+				arr[i] = copy[perm[i]];
+			}
+		} else if (column instanceof float[] arr) {
+			final float[] copy = arr.clone();
+			for (int i = 0; i < n; i++) {
+				arr[i] = copy[perm[i]];
+			}
+		} else if (column instanceof short[] arr) {
+			final short[] copy = arr.clone();
+			for (int i = 0; i < n; i++) {
+				arr[i] = copy[perm[i]];
+			}
+		} else if (column instanceof char[] arr) {
+			final char[] copy = arr.clone();
+			for (int i = 0; i < n; i++) {
+				arr[i] = copy[perm[i]];
+			}
+		} else if (column instanceof byte[] arr) {
+			final byte[] copy = arr.clone();
+			for (int i = 0; i < n; i++) {
+				arr[i] = copy[perm[i]];
+			}
+		} else {
+			final boolean[] arr = (boolean[]) column;
+			final boolean[] copy = arr.clone();
+			for (int i = 0; i < n; i++) {
+				arr[i] = copy[perm[i]];
 			}
-			minGallop += 2;
 		}
+	}
 
-		if (k >= 0) {
-			System.arraycopy(temp, 0, arr, l, k + 1);
-		}
-		return minGallop;
+	/**
+	 * Sorts an array of ints into ascending numerical order without boxing.
+	 * @param arr the array to be sorted
+	 */
+	static void sort(int[] arr) {
+		sort(arr, 0, arr.length);
 	}
 
-	private static <T> int mergeCollapse(T[] arr, ArrayList<int[]> stack,
-	                                      Comparator<T> comp, int minGallop)
-	{
-		while (stack.size() > 1) {
-			int n = stack.size() - 2;
-			if ((n > 0 && stack.get(n - 1)[1]
-			    <= stack.get(n)[1] + stack.get(n + 1)[1])
-			    ||
-			    (n > 1 && stack.get(n - 2)[1]
-			     <= stack.get(n - 1)[1] + stack.get(n)[1]))
-			{
-				if (stack.get(n - 1)[1] < stack.get(n + 1)[1]) {
-					n--;
-				}
-			} else if (stack.get(n)[1] > stack.get(n + 1)[1]) {
-				break;
-			}
-			minGallop = mergeAt(arr, stack, comp, n, minGallop);
+	/**
+	 * Sorts the range [fromIndex, toIndex) of an array of ints into
+	 * ascending order, leaving the rest of the array untouched.
+	 * @param arr the array to be sorted
+	 * @param fromIndex the index of the first element to sort, inclusive
+	 * @param toIndex the index of the last element to sort, exclusive
+	 * @throws IllegalArgumentException if fromIndex &gt; toIndex
+	 * @throws ArrayIndexOutOfBoundsException if fromIndex &lt; 0 or
+	 * toIndex &gt; arr.length
+	 */
+	static void sort(int[] arr, int fromIndex, int toIndex) {
+		rangeCheck(arr.length, fromIndex, toIndex);
+		final TimSortContext ctx = TimSortContext.acquire();
+		try {
+			PrimitiveTimSort.sort(arr, fromIndex, toIndex, ctx);
+		} finally {
+			ctx.exit();
 		}
-		return minGallop;
 	}
 
-	private static <T> int mergeAt(T[] arr, ArrayList<int[]> stack,
-	                                Comparator<T> comp, int index,
-	                                int minGallop)
-	{
-		final int[] one = stack.get(index);
-		final int[] two = stack.get(index + 1);
-		int base1 = one[0], len1 = one[1], base2 = two[0], len2 = two[1];
-		final int length = stack.size();
-
-		stack.set(index, new int[]{base1, len1 + len2});
-		if (index == length - 3) {
-			stack.set(index + 1, stack.get(index + 2));
-		}
-		stack.remove(length - 1);
+	/**
+	 * Sorts an array of longs into ascending numerical order without boxing.
+	 * @param arr the array to be sorted
+	 */
+	static void sort(long[] arr) {
+		sort(arr, 0, arr.length);
+	}
 
-		final int offset = searchRight(arr, comp, base1, len1, arr[base2]);
-		base1 += offset;
-		len1 -= offset;
-		if (len1 == 0) {
-			return minGallop;
+	/**
+	 * Sorts the range [fromIndex, toIndex) of an array of longs into
+	 * ascending order, leaving the rest of the array untouched.
+	 * @param arr the array to be sorted
+	 * @param fromIndex the index of the first element to sort, inclusive
+	 * @param toIndex the index of the last element to sort, exclusive
+	 * @throws IllegalArgumentException if fromIndex &gt; toIndex
+	 * @throws ArrayIndexOutOfBoundsException if fromIndex &lt; 0 or
+	 * toIndex &gt; arr.length
+	 */
+	static void sort(long[] arr, int fromIndex, int toIndex) {
+		rangeCheck(arr.length, fromIndex, toIndex);
+		final TimSortContext ctx = TimSortContext.acquire();
+		try {
+			PrimitiveTimSort.sort(arr, fromIndex, toIndex, ctx);
+		} finally {
+			ctx.exit();
 		}
+	}
 
-		len2 = searchLeft(arr, comp, base2, len2, arr[base1 + len1 - 1]);
-		if (len2 == 0) {
-			return minGallop;
+	/**
+	 * Sorts an array of floats into ascending numerical order without boxing.
+	 * The order matches {@link Float#compare}: -0.0f comes before 0.0f and NaN
+	 * values are placed at the end.
+	 * @param arr the array to be sorted
+	 */
+	static void sort(float[] arr) {
+		sort(arr, 0, arr.length);
+	}
+
+	/**
+	 * Sorts the range [fromIndex, toIndex) of an array of floats into
+	 * ascending order, leaving the rest of the array untouched.
+	 * @param arr the array to be sorted
+	 * @param fromIndex the index of the first element to sort, inclusive
+	 * @param toIndex the index of the last element to sort, exclusive
+	 * @throws IllegalArgumentException if fromIndex &gt; toIndex
+	 * @throws ArrayIndexOutOfBoundsException if fromIndex &lt; 0 or
+	 * toIndex &gt; arr.length
+	 */
+	static void sort(float[] arr, int fromIndex, int toIndex) {
+		rangeCheck(arr.length, fromIndex, toIndex);
+		final TimSortContext ctx = TimSortContext.acquire();
+		try {
+			PrimitiveTimSort.sort(arr, fromIndex, toIndex, ctx);
+		} finally {
+			ctx.exit();
 		}
-		return len1 > len2
-		    ? mergeLo(arr, comp, base1, base2, base2 + len2, minGallop)
-		    : mergeHi(arr, comp, base1, base2, base2 + len2, minGallop);
 	}
 
-	private static <T> void mergeForceCollapse(T[] arr, ArrayList<int[]> stack,
-	                                           Comparator<T> comp,
-	                                           int minGallop)
-	{
-		while (stack.size() > 1) {
-			int n = stack.size() - 2;
-			if (n > 0 && stack.get(n - 1)[1] < stack.get(n + 1)[1]) {
-				n--;
-			}
+	/**
+	 * Sorts an array of doubles into ascending numerical order without boxing.
+	 * The order matches {@link Double#compare}: -0.0 comes before 0.0 and NaN
+	 * values are placed at the end.
+	 * @param arr the array to be sorted
+	 */
+	static void sort(double[] arr) {
+		sort(arr, 0, arr.length);
+	}
 
-			minGallop = mergeAt(arr, stack, comp, n, minGallop);
+	/**
+	 * Sorts the range [fromIndex, toIndex) of an array of doubles into
+	 * ascending order, leaving the rest of the array untouched.
+	 * @param arr the array to be sorted
+	 * @param fromIndex the index of the first element to sort, inclusive
+	 * @param toIndex the index of the last element to sort, exclusive
+	 * @throws IllegalArgumentException if fromIndex &gt; toIndex
+	 * @throws ArrayIndexOutOfBoundsException if fromIndex &lt; 0 or
+	 * toIndex &gt; arr.length
+	 */
+	static void sort(double[] arr, int fromIndex, int toIndex) {
+		rangeCheck(arr.length, fromIndex, toIndex);
+		final TimSortContext ctx = TimSortContext.acquire();
+		try {
+			PrimitiveTimSort.sort(arr, fromIndex, toIndex, ctx);
+		} finally {
+			ctx.exit();
+		}
+	}
+
+	/**
+	 * Checks that [fromIndex, toIndex) is a valid range of an array.
+	 * @param length the length of the array
+	 * @param fromIndex the index of the first element, inclusive
+	 * @param toIndex the index of the last element, exclusive
+	 */
+	private static void rangeCheck(int length, int fromIndex, int toIndex) {
+		if (fromIndex > toIndex) {
+			throw new IllegalArgumentException(
+			"fromIndex(" + fromIndex + ") > toIndex(" + toIndex + ")");
+		}
+		if (fromIndex < 0) {
+			throw new ArrayIndexOutOfBoundsException(fromIndex);
+		}
+		if (toIndex > length) {
+			throw new ArrayIndexOutOfBoundsException(toIndex);
 		}
 	}
 
@@ -545,4 +669,40 @@ public interface ComplexTimSort {
 		sort(output, comp);
 		return output;
 	}
+
+	static <T extends Comparable<T>> T[] parallelSorted(T[] arr) {
+		T[] output = Arrays.copyOf(arr, arr.length);
+		parallelSort(output);
+		return output;
+	}
+
+	static <T> T[] parallelSorted(T[] arr, Comparator<T> comp) {
+		T[] output = Arrays.copyOf(arr, arr.length);
+		parallelSort(output, comp);
+		return output;
+	}
+
+	static int[] sorted(int[] arr) {
+		int[] output = Arrays.copyOf(arr, arr.length);
+		sort(output);
+		return output;
+	}
+
+	static long[] sorted(long[] arr) {
+		long[] output = Arrays.copyOf(arr, arr.length);
+		sort(output);
+		return output;
+	}
+
+	static float[] sorted(float[] arr) {
+		float[] output = Arrays.copyOf(arr, arr.length);
+		sort(output);
+		return output;
+	}
+
+	static double[] sorted(double[] arr) {
+		double[] output = Arrays.copyOf(arr, arr.length);
+		sort(output);
+		return output;
+	}
 }
\ No newline at end of file
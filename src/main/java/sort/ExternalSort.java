@@ -0,0 +1,365 @@
+package sort;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static java.lang.Math.min;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Sorts files too large to fit in the heap. The input is read through a
+ * sliding memory mapped window, decoded into chunks of at most the memory
+ * budget, and each chunk is sorted with {@link ComplexTimSort} and spilled to
+ * a temporary run file. The runs are then merged, at most fanIn at a time,
+ * until a single merge can write the output.
+ * <p>
+ * The memory budget is measured in bytes of encoded input per chunk. Decoded
+ * records usually take more heap than their bytes, so the budget should be
+ * set well below the heap that is actually free.
+ * @param <T> the type of the records
+ */
+public final class ExternalSort<T> {
+	public static final long DEFAULT_MEMORY_BUDGET = 64L << 20;
+	public static final int DEFAULT_FAN_IN = 64;
+
+	private static final int WINDOW_SIZE = 1 << 26;
+	private static final int WRITE_BUFFER_SIZE = 1 << 20;
+
+	private final RecordCodec<T> codec;
+	private final Comparator<T> comp;
+	private long memoryBudget = DEFAULT_MEMORY_BUDGET;
+	private int fanIn = DEFAULT_FAN_IN;
+	private Path tempDirectory;
+
+	/**
+	 * Creates an external sort for files of the given codec.
+	 * @param codec the codec the records are stored with
+	 * @param comp the comparator used to sort the records
+	 */
+	public ExternalSort(RecordCodec<T> codec, Comparator<T> comp) {
+		this.codec = codec;
+		this.comp = comp;
+	}
+
+	/**
+	 * Sets the number of input bytes sorted in memory at once.
+	 * @param bytes the memory budget in bytes
+	 * @return this external sort
+	 */
+	public ExternalSort<T> memoryBudget(long bytes) {
+		if (bytes <= 0) {
+			throw new IllegalArgumentException(
+			"memory budget must be positive: " + bytes);
+		}
+		memoryBudget = bytes;
+		return this;
+	}
+
+	/**
+	 * Sets the largest number of runs merged at once.
+	 * @param runs the fan-in, at least 2
+	 * @return this external sort
+	 */
+	public ExternalSort<T> fanIn(int runs) {
+		if (runs < 2) {
+			throw new IllegalArgumentException("fan-in must be at least 2: "
+			                                   + runs);
+		}
+		fanIn = runs;
+		return this;
+	}
+
+	/**
+	 * Sets the directory the run files are spilled to, by default the
+	 * system's temporary directory.
+	 * @param directory the directory for run files
+	 * @return this external sort
+	 */
+	public ExternalSort<T> tempDirectory(Path directory) {
+		tempDirectory = directory;
+		return this;
+	}
+
+	/**
+	 * Sorts the records of the input file into the output file. The two may
+	 * not be the same file.
+	 * @param input the file to sort
+	 * @param output the file to write the sorted records to
+	 * @throws IOException if reading, writing or spilling fails
+	 */
+	public void sort(Path input, Path output) throws IOException {
+		final List<Path> temporary = new ArrayList<>();
+		try {
+			List<Path> runs = new ArrayList<>();
+			if (spillRuns(input, output, runs, temporary)) {
+				return;
+			}
+			while (runs.size() > fanIn) {
+				final List<Path> merged = new ArrayList<>();
+				for (int i = 0; i < runs.size(); i += fanIn) {
+					final List<Path> group =
+					runs.subList(i, min(runs.size(), i + fanIn));
+					final Path run = createRun(temporary);
+					merged.add(run);
+					merge(group, run);
+					for (Path path : group) {
+						Files.delete(path);
+					}
+				}
+				runs = merged;
+			}
+			merge(runs, output);
+		} finally {
+			for (Path run : temporary) {
+				Files.deleteIfExists(run);
+			}
+		}
+	}
+
+	/**
+	 * Reads the input a chunk at a time, sorting each chunk and spilling it to
+	 * a new run file. An input that fits in a single chunk is written straight
+	 * to the output instead.
+	 * @return whether the output has already been written
+	 */
+	private boolean spillRuns(Path input, Path output, List<Path> runs,
+	                          List<Path> temporary)
+	throws IOException
+	{
+		@SuppressWarnings("unchecked")
+		T[] chunk = (T[]) new Object[1024];
+		try (RecordReader<T> reader = new RecordReader<>(input, codec)) {
+			boolean more = true;
+			while (more) {
+				int count = 0;
+				final long start = reader.offset();
+				T record;
+				while ((record = reader.next()) != null) {
+					if (count == chunk.length) {
+						chunk = Arrays.copyOf(chunk, grow(count));
+					}
+					chunk[count++] = record;
+					if (reader.offset() - start >= memoryBudget
+					    || count == Integer.MAX_VALUE - 8)
+					{
+						break;
+					}
+				}
+				more = record != null;
+				if (count == 0 && !runs.isEmpty()) {
+					break;
+				}
+				ComplexTimSort.sort(chunk, 0, count, comp);
+
+				if (!more && runs.isEmpty()) {
+					write(chunk, count, output);
+					return true;
+				}
+				final Path run = createRun(temporary);
+				runs.add(run);
+				write(chunk, count, run);
+				Arrays.fill(chunk, 0, count, null);
+			}
+		}
+		return false;
+	}
+
+	private static int grow(int length) {
+		return (int) min(Integer.MAX_VALUE - 8, (long) length << 1);
+	}
+
+	private Path createRun(List<Path> temporary) throws IOException {
+		final Path run = tempDirectory == null
+		                 ? Files.createTempFile("timsort-run", ".tmp")
+		                 : Files.createTempFile(tempDirectory, "timsort-run",
+		                                        ".tmp");
+		temporary.add(run);
+		return run;
+	}
+
+	private void write(T[] chunk, int count, Path path) throws IOException {
+		try (RecordWriter<T> writer = new RecordWriter<>(path, codec)) {
+			for (int i = 0; i < count; i++) {
+				writer.write(chunk[i]);
+			}
+		}
+	}
+
+	/**
+	 * Merges sorted run files into a single sorted file with a
+	 * {@link SortedMerge}. Records that compare equal are written in the order
+	 * of the runs they came from.
+	 */
+	private void merge(List<Path> runs, Path output) throws IOException {
+		final List<RecordReader<T>> readers = new ArrayList<>(runs.size());
+		try (RecordWriter<T> writer = new RecordWriter<>(output, codec)) {
+			final List<Iterator<T>> sources = new ArrayList<>(runs.size());
+			for (Path run : runs) {
+				final RecordReader<T> reader = new RecordReader<>(run, codec);
+				readers.add(reader);
+				sources.add(reader.iterator());
+			}
+			final Iterator<T> merged = SortedMerge.merge(sources, comp);
+			while (merged.hasNext()) {
+				writer.write(merged.next());
+			}
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		} finally {
+			for (RecordReader<T> reader : readers) {
+				reader.close();
+			}
+		}
+	}
+
+	/**
+	 * Decodes records from a file through a read-only mapping of a window of
+	 * the file, remapping from the start of the next record whenever the
+	 * window runs out.
+	 */
+	private static final class RecordReader<T> implements Closeable {
+		private final FileChannel channel;
+		private final RecordCodec<T> codec;
+		private final long size;
+		private long windowStart;
+		private int windowSize = WINDOW_SIZE;
+		private MappedByteBuffer window;
+
+		RecordReader(Path path, RecordCodec<T> codec) throws IOException {
+			this.channel = FileChannel.open(path, READ);
+			this.codec = codec;
+			this.size = channel.size();
+		}
+
+		/** @return the file offset just past the last record read */
+		long offset() {
+			return window == null ? windowStart
+			                      : windowStart + window.position();
+		}
+
+		/** @return the next record, or null at the end of the file */
+		T next() throws IOException {
+			while (true) {
+				if (window != null) {
+					final boolean endOfInput =
+					windowStart + window.limit() == size;
+					final T record = codec.decode(window, endOfInput);
+					if (record != null) {
+						return record;
+					}
+					if (endOfInput) {
+						return null;
+					}
+					if (window.position() == 0) {
+						// a single record is larger than the window
+						windowSize = (int) min(Integer.MAX_VALUE,
+						                       (long) windowSize << 1);
+					}
+				}
+				final long start = offset();
+				if (start >= size) {
+					return null;
+				}
+				window = channel.map(FileChannel.MapMode.READ_ONLY, start,
+				                     min(windowSize, size - start));
+				windowStart = start;
+			}
+		}
+
+		/**
+		 * @return the remaining records as an iterator, which rethrows read
+		 * errors as unchecked
+		 */
+		Iterator<T> iterator() throws IOException {
+			final T first = next();
+			return new Iterator<>() {
+				private T record = first;
+
+				@Override
+				public boolean hasNext() {
+					return record != null;
+				}
+
+				@Override
+				public T next() {
+					if (record == null) {
+						throw new NoSuchElementException();
+					}
+					final T current = record;
+					try {
+						record = RecordReader.this.next();
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+					return current;
+				}
+			};
+		}
+
+		@Override
+		public void close() throws IOException {
+			window = null;
+			channel.close();
+		}
+	}
+
+	/**
+	 * Encodes records into a direct buffer that is written to a file channel
+	 * whenever it fills up.
+	 */
+	private static final class RecordWriter<T> implements Closeable {
+		private final FileChannel channel;
+		private final RecordCodec<T> codec;
+		private ByteBuffer buffer;
+
+		RecordWriter(Path path, RecordCodec<T> codec) throws IOException {
+			this.channel = FileChannel.open(path, WRITE, CREATE,
+			                                TRUNCATE_EXISTING);
+			this.codec = codec;
+			this.buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+		}
+
+		void write(T record) throws IOException {
+			while (!codec.encode(record, buffer)) {
+				if (buffer.position() == 0) {
+					// a single record is larger than the buffer
+					buffer = ByteBuffer.allocateDirect(buffer.capacity() << 1);
+				} else {
+					flush();
+				}
+			}
+		}
+
+		private void flush() throws IOException {
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			buffer.clear();
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				flush();
+			} finally {
+				channel.close();
+			}
+		}
+	}
+}
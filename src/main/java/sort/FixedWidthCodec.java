@@ -0,0 +1,46 @@
+package sort;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reads and writes binary records of a fixed number of bytes.
+ */
+final class FixedWidthCodec implements RecordCodec<byte[]> {
+	private final int width;
+
+	FixedWidthCodec(int width) {
+		if (width <= 0) {
+			throw new IllegalArgumentException("width must be positive: "
+			                                   + width);
+		}
+		this.width = width;
+	}
+
+	@Override
+	public byte[] decode(ByteBuffer buf, boolean endOfInput) {
+		if (buf.remaining() < width) {
+			if (endOfInput && buf.hasRemaining()) {
+				throw new IllegalStateException(
+				"Input ends with a partial record of " + buf.remaining()
+				+ " bytes");
+			}
+			return null;
+		}
+		final byte[] record = new byte[width];
+		buf.get(record);
+		return record;
+	}
+
+	@Override
+	public boolean encode(byte[] record, ByteBuffer buf) {
+		if (record.length != width) {
+			throw new IllegalArgumentException(
+			"Record is " + record.length + " bytes, expected " + width);
+		}
+		if (buf.remaining() < width) {
+			return false;
+		}
+		buf.put(record);
+		return true;
+	}
+}
@@ -0,0 +1,439 @@
+package sort;
+
+import static java.lang.Math.min;
+import static sort.ComplexTimSort.MIN_GALLOP;
+import static sort.ComplexTimSort.THRESHOLD;
+
+/**
+ * The engine behind the argsorts of {@link ComplexTimSort}. It sorts an array
+ * of indices with the runs and galloping of {@link PrimitiveTimSort}, but
+ * orders two indices by comparing the keys they point at, so the keys
+ * themselves never move. Merges take equal elements from the left run first,
+ * and the indices start out in ascending order, so indices of equal keys stay
+ * in ascending order.
+ */
+final class IndexTimSort {
+
+	/**
+	 * Compares the keys at two indices.
+	 */
+	@FunctionalInterface
+	interface IndexComparator {
+		int compare(int a, int b);
+	}
+
+	private IndexTimSort() {}
+
+	/**
+	 * Sorts the given range of an array of indices into the order of the keys
+	 * they point at.
+	 * @param arr the indices to be sorted
+	 * @param comp the comparator of the keys at two indices
+	 * @param lo the index of the first element, inclusive
+	 * @param hi the index of the last element, exclusive
+	 * @param ctx the context holding the run stack and merge buffer
+	 */
+	static void sort(int[] arr, IndexComparator comp, int lo, int hi,
+	                 TimSortContext ctx)
+	{
+		int remaining = hi - lo;
+		if (remaining < 2) {
+			return;
+		}
+
+		if (remaining < THRESHOLD) {
+			final int startingRunLength = ascendThenCount(arr, comp, lo, hi);
+			binarySort(arr, comp, lo, hi, lo + startingRunLength);
+			return;
+		}
+
+		final int minRun = ObjectTimSort.runLength(remaining);
+		ctx.startRange(lo, hi);
+		while (remaining > 0) {
+			int runLength = ascendThenCount(arr, comp, lo, hi);
+			if (runLength < minRun) {
+				final int force = min(remaining, minRun);
+				binarySort(arr, comp, lo, lo + force, lo + runLength);
+				runLength = force;
+			}
+			ctx.pushRun(lo, runLength);
+			mergeCollapse(arr, comp, ctx);
+			lo += runLength;
+			remaining -= runLength;
+		}
+
+		mergeForceCollapse(arr, comp, ctx);
+	}
+
+	private static int ascendThenCount(int[] arr, IndexComparator comp,
+	                                   int left, int right)
+	{
+		int runRight = left + 1;
+		if (runRight == right) {
+			return 1;
+		}
+		if (comp.compare(arr[runRight], arr[left]) < 0) {
+			while (runRight < right
+			       && comp.compare(arr[runRight], arr[runRight - 1]) < 0)
+			{
+				runRight++;
+			}
+			reverse(arr, left, runRight);
+		} else {
+			while (runRight < right
+			       && comp.compare(arr[runRight], arr[runRight - 1]) >= 0)
+			{
+				runRight++;
+			}
+		}
+		return runRight - left;
+	}
+
+	private static void reverse(int[] arr, int left, int right) {
+		right--;
+		while (left < right) {
+			final int temp = arr[left];
+			arr[left] = arr[right];
+			arr[right] = temp;
+			left++;
+			right--;
+		}
+	}
+
+	private static void binarySort(int[] arr, IndexComparator comp, int lo,
+	                               int hi, int start)
+	{
+		if (start == lo) {
+			start++;
+		}
+		while (start < hi) {
+			final int pivot = arr[start];
+			int left = lo;
+			int right = start;
+			while (left < right) {
+				final int mid = (left + right) >>> 1;
+				if (comp.compare(pivot, arr[mid]) < 0) {
+					right = mid;
+				} else {
+					left = mid + 1;
+				}
+			}
+			System.arraycopy(arr, left, arr, left + 1, start - left);
+			arr[left] = pivot;
+			start++;
+		}
+	}
+
+	private static int gallopLeft(int[] arr, IndexComparator comp, int base,
+	                              int length, int hint, int target)
+	{
+		int lastOffset = 0;
+		int offset = 1;
+		if (comp.compare(target, arr[base + hint]) > 0) {
+			final int maxOffset = length - hint;
+			while (offset < maxOffset
+			       && comp.compare(target, arr[base + hint + offset]) > 0)
+			{
+				lastOffset = offset;
+				offset = (offset << 1) + 1; // offset * 2 + 1
+			}
+
+			if (offset > maxOffset) {
+				offset = maxOffset;
+			}
+
+			lastOffset += hint;
+			offset += hint;
+		} else {
+			final int maxOffset = hint + 1;
+			while (offset < maxOffset
+			       && comp.compare(target, arr[base + hint - offset]) <= 0)
+			{
+				lastOffset = offset;
+				offset = (offset << 1) + 1; // offset * 2 + 1
+			}
+
+			if (offset > maxOffset) {
+				offset = maxOffset;
+			}
+
+			final int temp = lastOffset;
+			lastOffset = hint - offset;
+			offset = hint - temp;
+		}
+
+		lastOffset++;
+		while (lastOffset < offset) {
+			final int mid = (lastOffset + offset) >>> 1;
+			if (comp.compare(target, arr[base + mid]) > 0) {
+				lastOffset = mid + 1;
+			} else {
+				offset = mid;
+			}
+		}
+		return offset;
+	}
+
+	private static int gallopRight(int[] arr, IndexComparator comp, int base,
+	                               int length, int hint, int target)
+	{
+		int lastOffset = 0;
+		int offset = 1;
+		if (comp.compare(target, arr[base + hint]) < 0) {
+			final int maxOffset = hint + 1;
+			while (offset < maxOffset
+			       && comp.compare(target, arr[base + hint - offset]) < 0)
+			{
+				lastOffset = offset;
+				offset = (offset << 1) + 1; // offset * 2 + 1
+			}
+
+			if (offset > maxOffset) {
+				offset = maxOffset;
+			}
+
+			final int temp = lastOffset;
+			lastOffset = hint - offset;
+			offset = hint - temp;
+		} else {
+			final int maxOffset = length - hint;
+			while (offset < maxOffset
+			       && comp.compare(target, arr[base + hint + offset]) >= 0)
+			{
+				lastOffset = offset;
+				offset = (offset << 1) + 1; // offset * 2 + 1
+			}
+
+			if (offset > maxOffset) {
+				offset = maxOffset;
+			}
+
+			lastOffset += hint;
+			offset += hint;
+		}
+
+		lastOffset++;
+		while (lastOffset < offset) {
+			final int mid = (lastOffset + offset) >>> 1;
+			if (comp.compare(target, arr[base + mid]) < 0) {
+				offset = mid;
+			} else {
+				lastOffset = mid + 1;
+			}
+		}
+		return offset;
+	}
+
+	private static void mergeLo(int[] arr, IndexComparator comp,
+	                            TimSortContext ctx, int l, int m, int r)
+	{
+		final int length = m - l;
+		final int[] temp = ctx.intBuffer(length);
+		System.arraycopy(arr, l, temp, 0, length);
+		int minGallop = ctx.minGallop;
+		int i = l, j = m, k = 0;
+		boolean done = false;
+
+		while (!done) {
+			int count1 = 0;
+			int count2 = 0;
+			while ((count1 | count2) < minGallop) {
+				if (comp.compare(arr[j], temp[k]) < 0) {
+					arr[i++] = arr[j++];
+					count1 = 0;
+					count2++;
+				} else {
+					arr[i++] = temp[k++];
+					count1++;
+					count2 = 0;
+				}
+
+				if (k == length || j == r) {
+					done = true;
+					break;
+				}
+			}
+
+			if (done) {
+				break;
+			}
+
+			while (count1 >= MIN_GALLOP || count2 >= MIN_GALLOP) {
+				count1 = gallopRight(temp, comp, k, length - k, 0, arr[j]);
+				if (count1 != 0) {
+					System.arraycopy(temp, k, arr, i, count1);
+					i += count1;
+					k += count1;
+					if (k == length) {
+						done = true;
+						break;
+					}
+				}
+
+				arr[i++] = arr[j++];
+				if (j == r) {
+					done = true;
+					break;
+				}
+
+				count2 = gallopLeft(arr, comp, j, r - j, 0, temp[k]);
+				if (count2 != 0) {
+					System.arraycopy(arr, j, arr, i, count2);
+					i += count2;
+					j += count2;
+					if (j == r) {
+						done = true;
+						break;
+					}
+				}
+
+				arr[i++] = temp[k++];
+				if (k == length) {
+					done = true;
+					break;
+				}
+
+				minGallop--;
+			}
+			if (minGallop < 0) {
+				minGallop = 0;
+			}
+			minGallop += 2;
+		}
+
+		if (k < length) {
+			System.arraycopy(temp, k, arr, i, length - k);
+		}
+		ctx.minGallop = minGallop;
+	}
+
+	private static void mergeHi(int[] arr, IndexComparator comp,
+	                            TimSortContext ctx, int l, int m, int r)
+	{
+		final int[] temp = ctx.intBuffer(r - m);
+		System.arraycopy(arr, m, temp, 0, r - m);
+		int minGallop = ctx.minGallop;
+		int i = r - 1, j = m - 1, k = r - m - 1;
+		boolean done = false;
+
+		while (!done) {
+			int count1 = 0;
+			int count2 = 0;
+			while ((count1 | count2) < minGallop) {
+				if (comp.compare(temp[k], arr[j]) < 0) {
+					arr[i--] = arr[j--];
+					count1++;
+					count2 = 0;
+				} else {
+					arr[i--] = temp[k--];
+					count1 = 0;
+					count2++;
+				}
+
+				if (k == -1 || j == l - 1) {
+					done = true;
+					break;
+				}
+			}
+
+			if (done) {
+				break;
+			}
+
+			while (count1 >= MIN_GALLOP || count2 >= MIN_GALLOP) {
+				count1 = j - l + 1 - gallopRight(arr, comp, l, j - l + 1, j - l,
+				                                 temp[k]);
+				if (count1 != 0) {
+					final int gap = count1 - 1;
+					System.arraycopy(arr, j - gap, arr, i - gap, 1 + gap);
+					i -= count1;
+					j -= count1;
+					if (j == l - 1) {
+						done = true;
+						break;
+					}
+				}
+
+				arr[i--] = temp[k--];
+				if (k == -1) {
+					done = true;
+					break;
+				}
+
+				count2 = k + 1 - gallopLeft(temp, comp, 0, k + 1, k, arr[j]);
+				if (count2 != 0) {
+					final int gap = count2 - 1;
+					System.arraycopy(temp, k - gap, arr, i - gap, 1 + gap);
+					i -= count2;
+					k -= count2;
+					if (k == -1) {
+						done = true;
+						break;
+					}
+				}
+
+				arr[i--] = arr[j--];
+				if (j == l - 1) {
+					done = true;
+					break;
+				}
+
+				minGallop--;
+			}
+			if (minGallop < 0) {
+				minGallop = 0;
+			}
+			minGallop += 2;
+		}
+
+		if (k >= 0) {
+			System.arraycopy(temp, 0, arr, l, k + 1);
+		}
+		ctx.minGallop = minGallop;
+	}
+
+	private static void mergeCollapse(int[] arr, IndexComparator comp,
+	                                  TimSortContext ctx)
+	{
+		int n;
+		while ((n = ctx.collapseIndex()) >= 0) {
+			mergeAt(arr, comp, ctx, n);
+		}
+	}
+
+	private static void mergeAt(int[] arr, IndexComparator comp,
+	                            TimSortContext ctx, int index)
+	{
+		int base1 = ctx.runBase[index], len1 = ctx.runLength[index];
+		final int base2 = ctx.runBase[index + 1];
+		int len2 = ctx.runLength[index + 1];
+		ctx.mergedAt(index);
+
+		final int offset = gallopRight(arr, comp, base1, len1, 0, arr[base2]);
+		base1 += offset;
+		len1 -= offset;
+		if (len1 == 0) {
+			return;
+		}
+
+		len2 = gallopLeft(arr, comp, base2, len2, len2 - 1,
+		                  arr[base1 + len1 - 1]);
+		if (len2 == 0) {
+			return;
+		}
+		if (len1 <= len2) {
+			mergeLo(arr, comp, ctx, base1, base2, base2 + len2);
+		} else {
+			mergeHi(arr, comp, ctx, base1, base2, base2 + len2);
+		}
+	}
+
+	private static void mergeForceCollapse(int[] arr, IndexComparator comp,
+	                                       TimSortContext ctx)
+	{
+		int n;
+		while ((n = ctx.forceCollapseIndex()) >= 0) {
+			mergeAt(arr, comp, ctx, n);
+		}
+	}
+}
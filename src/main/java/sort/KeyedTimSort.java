@@ -0,0 +1,886 @@
+package sort;
+
+import static java.lang.Math.min;
+import static sort.ComplexTimSort.MIN_GALLOP;
+import static sort.ComplexTimSort.THRESHOLD;
+
+/**
+ * The engine behind the key extraction sorts of {@link ComplexTimSort}. The
+ * keys are taken out of the objects once, into a primitive array, and sorted
+ * with the same runs and galloping as {@link PrimitiveTimSort}, while every
+ * move made to a key is made to its object as well. Merges take equal keys
+ * from the left run first, so the sort is stable.
+ */
+final class KeyedTimSort {
+
+	private KeyedTimSort() {}
+
+	/**
+	 * Maps a double to a long that orders the same way under {@code <} as the
+	 * double does under {@link Double#compare}: negative values have their
+	 * magnitude bits flipped, -0.0 lands just below 0.0 and every NaN is
+	 * collapsed to the canonical NaN, which lands above positive infinity.
+	 * @param value the double key
+	 * @return a long key with the same order
+	 */
+	static long sortableBits(double value) {
+		final long bits = Double.doubleToLongBits(value);
+		return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+	}
+
+	/**
+	 * Sorts the given range of the keys into ascending order, moving each
+	 * value along with its key. Values with equal keys keep their order.
+	 * @param keys the keys to sort by
+	 * @param values the values, one per key
+	 * @param lo the index of the first element, inclusive
+	 * @param hi the index of the last element, exclusive
+	 * @param ctx the context holding the run stack and merge buffers
+	 */
+	static void sort(int[] keys, Object[] values, int lo, int hi,
+	                 TimSortContext ctx)
+	{
+		int remaining = hi - lo;
+		if (remaining < 2) {
+			return;
+		}
+
+		if (remaining < THRESHOLD) {
+			final int startingRunLength =
+			ascendThenCount(keys, values, lo, hi);
+			binarySort(keys, values, lo, hi, lo + startingRunLength);
+			return;
+		}
+
+		final int minRun = ObjectTimSort.runLength(remaining);
+		ctx.startRange(lo, hi);
+		while (remaining > 0) {
+			int runLength = ascendThenCount(keys, values, lo, hi);
+			if (runLength < minRun) {
+				final int force = min(remaining, minRun);
+				binarySort(keys, values, lo, lo + force, lo + runLength);
+				runLength = force;
+			}
+			ctx.pushRun(lo, runLength);
+			mergeCollapse(keys, values, ctx);
+			lo += runLength;
+			remaining -= runLength;
+		}
+
+		mergeForceCollapse(keys, values, ctx);
+	}
+
+	private static int ascendThenCount(int[] keys, Object[] values, int left,
+	                                   int right)
+	{
+		int runRight = left + 1;
+		if (runRight == right) {
+			return 1;
+		}
+		if (keys[runRight] < keys[left]) {
+			while (runRight < right && keys[runRight] < keys[runRight - 1]) {
+				runRight++;
+			}
+			reverse(keys, values, left, runRight);
+		} else {
+			while (runRight < right && keys[runRight] >= keys[runRight - 1]) {
+				runRight++;
+			}
+		}
+		return runRight - left;
+	}
+
+	private static void reverse(int[] keys, Object[] values, int left,
+	                            int right)
+	{
+		right--;
+		while (left < right) {
+			final int key = keys[left];
+			keys[left] = keys[right];
+			keys[right] = key;
+			final Object value = values[left];
+			values[left] = values[right];
+			values[right] = value;
+			left++;
+			right--;
+		}
+	}
+
+	private static void binarySort(int[] keys, Object[] values, int lo,
+	                               int hi, int start)
+	{
+		if (start == lo) {
+			start++;
+		}
+		while (start < hi) {
+			final int pivot = keys[start];
+			final Object value = values[start];
+			int left = lo;
+			int right = start;
+			while (left < right) {
+				final int mid = (left + right) >>> 1;
+				if (pivot < keys[mid]) {
+					right = mid;
+				} else {
+					left = mid + 1;
+				}
+			}
+			System.arraycopy(keys, left, keys, left + 1, start - left);
+			System.arraycopy(values, left, values, left + 1, start - left);
+			keys[left] = pivot;
+			values[left] = value;
+			start++;
+		}
+	}
+
+	private static int gallopLeft(int[] arr, int base, int length, int hint,
+	                              int target)
+	{
+		int lastOffset = 0;
+		int offset = 1;
+		if (target > arr[base + hint]) {
+			final int maxOffset = length - hint;
+			while (offset < maxOffset && target > arr[base + hint + offset]) {
+				lastOffset = offset;
+				offset = (offset << 1) + 1; // offset * 2 + 1
+			}
+
+			if (offset > maxOffset) {
+				offset = maxOffset;
+			}
+
+			lastOffset += hint;
+			offset += hint;
+		} else {
+			final int maxOffset = hint + 1;
+			while (offset < maxOffset && target <= arr[base + hint - offset]) {
+				lastOffset = offset;
+				offset = (offset << 1) + 1; // offset * 2 + 1
+			}
+
+			if (offset > maxOffset) {
+				offset = maxOffset;
+			}
+
+			final int temp = lastOffset;
+			lastOffset = hint - offset;
+			offset = hint - temp;
+		}
+
+		lastOffset++;
+		while (lastOffset < offset) {
+			final int mid = (lastOffset + offset) >>> 1;
+			if (target > arr[base + mid]) {
+				lastOffset = mid + 1;
+			} else {
+				offset = mid;
+			}
+		}
+		return offset;
+	}
+
+	private static int gallopRight(int[] arr, int base, int length, int hint,
+	                               int target)
+	{
+		int lastOffset = 0;
+		int offset = 1;
+		if (target < arr[base + hint]) {
+			final int maxOffset = hint + 1;
+			while (offset < maxOffset && target < arr[base + hint - offset]) {
+				lastOffset = offset;
+				offset = (offset << 1) + 1; // offset * 2 + 1
+			}
+
+			if (offset > maxOffset) {
+				offset = maxOffset;
+			}
+
+			final int temp = lastOffset;
+			lastOffset = hint - offset;
+			offset = hint - temp;
+		} else {
+			final int maxOffset = length - hint;
+			while (offset < maxOffset && target >= arr[base + hint + offset]) {
+				lastOffset = offset;
+				offset = (offset << 1) + 1; // offset * 2 + 1
+			}
+
+			if (offset > maxOffset) {
+				offset = maxOffset;
+			}
+
+			lastOffset += hint;
+			offset += hint;
+		}
+
+		lastOffset++;
+		while (lastOffset < offset) {
+			final int mid = (lastOffset + offset) >>> 1;
+			if (target < arr[base + mid]) {
+				offset = mid;
+			} else {
+				lastOffset = mid + 1;
+			}
+		}
+		return offset;
+	}
+
+	private static void mergeLo(int[] keys, Object[] values,
+	                            TimSortContext ctx, int l, int m, int r)
+	{
+		final int length = m - l;
+		final int[] temp = ctx.intBuffer(length);
+		final Object[] tempValues = ctx.buffer(length);
+		System.arraycopy(keys, l, temp, 0, length);
+		System.arraycopy(values, l, tempValues, 0, length);
+		int minGallop = ctx.minGallop;
+		int i = l, j = m, k = 0;
+		boolean done = false;
+
+		while (!done) {
+			int count1 = 0;
+			int count2 = 0;
+			while ((count1 | count2) < minGallop) {
+				if (keys[j] < temp[k]) {
+					values[i] = values[j];
+					keys[i++] = keys[j++];
+					count1 = 0;
+					count2++;
+				} else {
+					values[i] = tempValues[k];
+					keys[i++] = temp[k++];
+					count1++;
+					count2 = 0;
+				}
+
+				if (k == length || j == r) {
+					done = true;
+					break;
+				}
+			}
+
+			if (done) {
+				break;
+			}
+
+			while (count1 >= MIN_GALLOP || count2 >= MIN_GALLOP) {
+				count1 = gallopRight(temp, k, length - k, 0, keys[j]);
+				if (count1 != 0) {
+					System.arraycopy(temp, k, keys, i, count1);
+					System.arraycopy(tempValues, k, values, i, count1);
+					i += count1;
+					k += count1;
+					if (k == length) {
+						done = true;
+						break;
+					}
+				}
+
+				values[i] = values[j];
+				keys[i++] = keys[j++];
+				if (j == r) {
+					done = true;
+					break;
+				}
+
+				count2 = gallopLeft(keys, j, r - j, 0, temp[k]);
+				if (count2 != 0) {
+					System.arraycopy(keys, j, keys, i, count2);
+					System.arraycopy(values, j, values, i, count2);
+					i += count2;
+					j += count2;
+					if (j == r) {
+						done = true;
+						break;
+					}
+				}
+
+				values[i] = tempValues[k];
+				keys[i++] = temp[k++];
+				if (k == length) {
+					done = true;
+					break;
+				}
+
+				minGallop--;
+			}
+			if (minGallop < 0) {
+				minGallop = 0;
+			}
+			minGallop += 2;
+		}
+
+		if (k < length) {
+			System.arraycopy(temp, k, keys, i, length - k);
+			System.arraycopy(tempValues, k, values, i, length - k);
+		}
+		ctx.minGallop = minGallop;
+	}
+
+	private static void mergeHi(int[] keys, Object[] values,
+	                            TimSortContext ctx, int l, int m, int r)
+	{
+		final int[] temp = ctx.intBuffer(r - m);
+		final Object[] tempValues = ctx.buffer(r - m);
+		System.arraycopy(keys, m, temp, 0, r - m);
+		System.arraycopy(values, m, tempValues, 0, r - m);
+		int minGallop = ctx.minGallop;
+		int i = r - 1, j = m - 1, k = r - m - 1;
+		boolean done = false;
+
+		while (!done) {
+			int count1 = 0;
+			int count2 = 0;
+			while ((count1 | count2) < minGallop) {
+				if (temp[k] < keys[j]) {
+					values[i] = values[j];
+					keys[i--] = keys[j--];
+					count1++;
+					count2 = 0;
+				} else {
+					values[i] = tempValues[k];
+					keys[i--] = temp[k--];
+					count1 = 0;
+					count2++;
+				}
+
+				if (k == -1 || j == l - 1) {
+					done = true;
+					break;
+				}
+			}
+
+			if (done) {
+				break;
+			}
+
+			while (count1 >= MIN_GALLOP || count2 >= MIN_GALLOP) {
+				count1 = j - l + 1 - gallopRight(keys, l, j - l + 1, j - l,
+				                                 temp[k]);
+				if (count1 != 0) {
+					final int gap = count1 - 1;
+					System.arraycopy(keys, j - gap, keys, i - gap, 1 + gap);
+					System.arraycopy(values, j - gap, values, i - gap, 1 + gap);
+					i -= count1;
+					j -= count1;
+					if (j == l - 1) {
+						done = true;
+						break;
+					}
+				}
+
+				values[i] = tempValues[k];
+				keys[i--] = temp[k--];
+				if (k == -1) {
+					done = true;
+					break;
+				}
+
+				count2 = k + 1 - gallopLeft(temp, 0, k + 1, k, keys[j]);
+				if (count2 != 0) {
+					final int gap = count2 - 1;
+					System.arraycopy(temp, k - gap, keys, i - gap, 1 + gap);
+					System.arraycopy(tempValues, k - gap, values, i - gap,
+					                 1 + gap);
+					i -= count2;
+					k -= count2;
+					if (k == -1) {
+						done = true;
+						break;
+					}
+				}
+
+				values[i] = values[j];
+				keys[i--] = keys[j--];
+				if (j == l - 1) {
+					done = true;
+					break;
+				}
+
+				minGallop--;
+			}
+			if (minGallop < 0) {
+				minGallop = 0;
+			}
+			minGallop += 2;
+		}
+
+		if (k >= 0) {
+			System.arraycopy(temp, 0, keys, l, k + 1);
+			System.arraycopy(tempValues, 0, values, l, k + 1);
+		}
+		ctx.minGallop = minGallop;
+	}
+
+	private static void mergeCollapse(int[] keys, Object[] values,
+	                                  TimSortContext ctx)
+	{
+		int n;
+		while ((n = ctx.collapseIndex()) >= 0) {
+			mergeAt(keys, values, ctx, n);
+		}
+	}
+
+	private static void mergeAt(int[] keys, Object[] values,
+	                            TimSortContext ctx, int index)
+	{
+		int base1 = ctx.runBase[index], len1 = ctx.runLength[index];
+		final int base2 = ctx.runBase[index + 1];
+		int len2 = ctx.runLength[index + 1];
+		ctx.mergedAt(index);
+
+		final int offset = gallopRight(keys, base1, len1, 0, keys[base2]);
+		base1 += offset;
+		len1 -= offset;
+		if (len1 == 0) {
+			return;
+		}
+
+		len2 = gallopLeft(keys, base2, len2, len2 - 1, keys[base1 + len1 - 1]);
+		if (len2 == 0) {
+			return;
+		}
+		if (len1 <= len2) {
+			mergeLo(keys, values, ctx, base1, base2, base2 + len2);
+		} else {
+			mergeHi(keys, values, ctx, base1, base2, base2 + len2);
+		}
+	}
+
+	private static void mergeForceCollapse(int[] keys, Object[] values,
+	                                       TimSortContext ctx)
+	{
+		int n;
+		while ((n = ctx.forceCollapseIndex()) >= 0) {
+			mergeAt(keys, values, ctx, n);
+		}
+	}
+
+	/**
+	 * Sorts the given range of the keys into ascending order, moving each
+	 * value along with its key. Values with equal keys keep their order.
+	 * @param keys the keys to sort by
+	 * @param values the values, one per key
+	 * @param lo the index of the first element, inclusive
+	 * @param hi the index of the last element, exclusive
+	 * @param ctx the context holding the run stack and merge buffers
+	 */
+	static void sort(long[] keys, Object[] values, int lo, int hi,
+	                 TimSortContext ctx)
+	{
+		int remaining = hi - lo;
+		if (remaining < 2) {
+			return;
+		}
+
+		if (remaining < THRESHOLD) {
+			final int startingRunLength =
+			ascendThenCount(keys, values, lo, hi);
+			binarySort(keys, values, lo, hi, lo + startingRunLength);
+			return;
+		}
+
+		final int minRun = ObjectTimSort.runLength(remaining);
+		ctx.startRange(lo, hi);
+		while (remaining > 0) {
+			int runLength = ascendThenCount(keys, values, lo, hi);
+			if (runLength < minRun) {
+				final int force = min(remaining, minRun);
+				binarySort(keys, values, lo, lo + force, lo + runLength);
+				runLength = force;
+			}
+			ctx.pushRun(lo, runLength);
+			mergeCollapse(keys, values, ctx);
+			lo += runLength;
+			remaining -= runLength;
+		}
+
+		mergeForceCollapse(keys, values, ctx);
+	}
+
+	private static int ascendThenCount(long[] keys, Object[] values, int left,
+	                                   int right)
+	{
+		int runRight = left + 1;
+		if (runRight == right) {
+			return 1;
+		}
+		if (keys[runRight] < keys[left]) {
+			while (runRight < right && keys[runRight] < keys[runRight - 1]) {
+				runRight++;
+			}
+			reverse(keys, values, left, runRight);
+		} else {
+			while (runRight < right && keys[runRight] >= keys[runRight - 1]) {
+				runRight++;
+			}
+		}
+		return runRight - left;
+	}
+
+	private static void reverse(long[] keys, Object[] values, int left,
+	                            int right)
+	{
+		right--;
+		while (left < right) {
+			final long key = keys[left];
+			keys[left] = keys[right];
+			keys[right] = key;
+			final Object value = values[left];
+			values[left] = values[right];
+			values[right] = value;
+			left++;
+			right--;
+		}
+	}
+
+	private static void binarySort(long[] keys, Object[] values, int lo,
+	                               int hi, int start)
+	{
+		if (start == lo) {
+			start++;
+		}
+		while (start < hi) {
+			final long pivot = keys[start];
+			final Object value = values[start];
+			int left = lo;
+			int right = start;
+			while (left < right) {
+				final int mid = (left + right) >>> 1;
+				if (pivot < keys[mid]) {
+					right = mid;
+				} else {
+					left = mid + 1;
+				}
+			}
+			System.arraycopy(keys, left, keys, left + 1, start - left);
+			System.arraycopy(values, left, values, left + 1, start - left);
+			keys[left] = pivot;
+			values[left] = value;
+			start++;
+		}
+	}
+
+	private static int gallopLeft(long[] arr, int base, int length, int hint,
+	                              long target)
+	{
+		int lastOffset = 0;
+		int offset = 1;
+		if (target > arr[base + hint]) {
+			final int maxOffset = length - hint;
+			while (offset < maxOffset && target > arr[base + hint + offset]) {
+				lastOffset = offset;
+				offset = (offset << 1) + 1; // offset * 2 + 1
+			}
+
+			if (offset > maxOffset) {
+				offset = maxOffset;
+			}
+
+			lastOffset += hint;
+			offset += hint;
+		} else {
+			final int maxOffset = hint + 1;
+			while (offset < maxOffset && target <= arr[base + hint - offset]) {
+				lastOffset = offset;
+				offset = (offset << 1) + 1; // offset * 2 + 1
+			}
+
+			if (offset > maxOffset) {
+				offset = maxOffset;
+			}
+
+			final int temp = lastOffset;
+			lastOffset = hint - offset;
+			offset = hint - temp;
+		}
+
+		lastOffset++;
+		while (lastOffset < offset) {
+			final int mid = (lastOffset + offset) >>> 1;
+			if (target > arr[base + mid]) {
+				lastOffset = mid + 1;
+			} else {
+				offset = mid;
+			}
+		}
+		return offset;
+	}
+
+	private static int gallopRight(long[] arr, int base, int length, int hint,
+	                               long target)
+	{
+		int lastOffset = 0;
+		int offset = 1;
+		if (target < arr[base + hint]) {
+			final int maxOffset = hint + 1;
+			while (offset < maxOffset && target < arr[base + hint - offset]) {
+				lastOffset = offset;
+				offset = (offset << 1) + 1; // offset * 2 + 1
+			}
+
+			if (offset > maxOffset) {
+				offset = maxOffset;
+			}
+
+			final int temp = lastOffset;
+			lastOffset = hint - offset;
+			offset = hint - temp;
+		} else {
+			final int maxOffset = length - hint;
+			while (offset < maxOffset && target >= arr[base + hint + offset]) {
+				lastOffset = offset;
+				offset = (offset << 1) + 1; // offset * 2 + 1
+			}
+
+			if (offset > maxOffset) {
+				offset = maxOffset;
+			}
+
+			lastOffset += hint;
+			offset += hint;
+		}
+
+		lastOffset++;
+		while (lastOffset < offset) {
+			final int mid = (lastOffset + offset) >>> 1;
+			if (target < arr[base + mid]) {
+				offset = mid;
+			} else {
+				lastOffset = mid + 1;
+			}
+		}
+		return offset;
+	}
+
+	private static void mergeLo(long[] keys, Object[] values,
+	                            TimSortContext ctx, int l, int m, int r)
+	{
+		final int length = m - l;
+		final long[] temp = ctx.longBuffer(length);
+		final Object[] tempValues = ctx.buffer(length);
+		System.arraycopy(keys, l, temp, 0, length);
+		System.arraycopy(values, l, tempValues, 0, length);
+		int minGallop = ctx.minGallop;
+		int i = l, j = m, k = 0;
+		boolean done = false;
+
+		while (!done) {
+			int count1 = 0;
+			int count2 = 0;
+			while ((count1 | count2) < minGallop) {
+				if (keys[j] < temp[k]) {
+					values[i] = values[j];
+					keys[i++] = keys[j++];
+					count1 = 0;
+					count2++;
+				} else {
+					values[i] = tempValues[k];
+					keys[i++] = temp[k++];
+					count1++;
+					count2 = 0;
+				}
+
+				if (k == length || j == r) {
+					done = true;
+					break;
+				}
+			}
+
+			if (done) {
+				break;
+			}
+
+			while (count1 >= MIN_GALLOP || count2 >= MIN_GALLOP) {
+				count1 = gallopRight(temp, k, length - k, 0, keys[j]);
+				if (count1 != 0) {
+					System.arraycopy(temp, k, keys, i, count1);
+					System.arraycopy(tempValues, k, values, i, count1);
+					i += count1;
+					k += count1;
+					if (k == length) {
+						done = true;
+						break;
+					}
+				}
+
+				values[i] = values[j];
+				keys[i++] = keys[j++];
+				if (j == r) {
+					done = true;
+					break;
+				}
+
+				count2 = gallopLeft(keys, j, r - j, 0, temp[k]);
+				if (count2 != 0) {
+					System.arraycopy(keys, j, keys, i, count2);
+					System.arraycopy(values, j, values, i, count2);
+					i += count2;
+					j += count2;
+					if (j == r) {
+						done = true;
+						break;
+					}
+				}
+
+				values[i] = tempValues[k];
+				keys[i++] = temp[k++];
+				if (k == length) {
+					done = true;
+					break;
+				}
+
+				minGallop--;
+			}
+			if (minGallop < 0) {
+				minGallop = 0;
+			}
+			minGallop += 2;
+		}
+
+		if (k < length) {
+			System.arraycopy(temp, k, keys, i, length - k);
+			System.arraycopy(tempValues, k, values, i, length - k);
+		}
+		ctx.minGallop = minGallop;
+	}
+
+	private static void mergeHi(long[] keys, Object[] values,
+	                            TimSortContext ctx, int l, int m, int r)
+	{
+		final long[] temp = ctx.longBuffer(r - m);
+		final Object[] tempValues = ctx.buffer(r - m);
+		System.arraycopy(keys, m, temp, 0, r - m);
+		System.arraycopy(values, m, tempValues, 0, r - m);
+		int minGallop = ctx.minGallop;
+		int i = r - 1, j = m - 1, k = r - m - 1;
+		boolean done = false;
+
+		while (!done) {
+			int count1 = 0;
+			int count2 = 0;
+			while ((count1 | count2) < minGallop) {
+				if (temp[k] < keys[j]) {
+					values[i] = values[j];
+					keys[i--] = keys[j--];
+					count1++;
+					count2 = 0;
+				} else {
+					values[i] = tempValues[k];
+					keys[i--] = temp[k--];
+					count1 = 0;
+					count2++;
+				}
+
+				if (k == -1 || j == l - 1) {
+					done = true;
+					break;
+				}
+			}
+
+			if (done) {
+				break;
+			}
+
+			while (count1 >= MIN_GALLOP || count2 >= MIN_GALLOP) {
+				count1 = j - l + 1 - gallopRight(keys, l, j - l + 1, j - l,
+				                                 temp[k]);
+				if (count1 != 0) {
+					final int gap = count1 - 1;
+					System.arraycopy(keys, j - gap, keys, i - gap, 1 + gap);
+					System.arraycopy(values, j - gap, values, i - gap, 1 + gap);
+					i -= count1;
+					j -= count1;
+					if (j == l - 1) {
+						done = true;
+						break;
+					}
+				}
+
+				values[i] = tempValues[k];
+				keys[i--] = temp[k--];
+				if (k == -1) {
+					done = true;
+					break;
+				}
+
+				count2 = k + 1 - gallopLeft(temp, 0, k + 1, k, keys[j]);
+				if (count2 != 0) {
+					final int gap = count2 - 1;
+					System.arraycopy(temp, k - gap, keys, i - gap, 1 + gap);
+					System.arraycopy(tempValues, k - gap, values, i - gap,
+					                 1 + gap);
+					i -= count2;
+					k -= count2;
+					if (k == -1) {
+						done = true;
+						break;
+					}
+				}
+
+				values[i] = values[j];
+				keys[i--] = keys[j--];
+				if (j == l - 1) {
+					done = true;
+					break;
+				}
+
+				minGallop--;
+			}
+			if (minGallop < 0) {
+				minGallop = 0;
+			}
+			minGallop += 2;
+		}
+
+		if (k >= 0) {
+			System.arraycopy(temp, 0, keys, l, k + 1);
+			System.arraycopy(tempValues, 0, values, l, k + 1);
+		}
+		ctx.minGallop = minGallop;
+	}
+
+	private static void mergeCollapse(long[] keys, Object[] values,
+	                                  TimSortContext ctx)
+	{
+		int n;
+		while ((n = ctx.collapseIndex()) >= 0) {
+			mergeAt(keys, values, ctx, n);
+		}
+	}
+
+	private static void mergeAt(long[] keys, Object[] values,
+	                            TimSortContext ctx, int index)
+	{
+		int base1 = ctx.runBase[index], len1 = ctx.runLength[index];
+		final int base2 = ctx.runBase[index + 1];
+		int len2 = ctx.runLength[index + 1];
+		ctx.mergedAt(index);
+
+		final int offset = gallopRight(keys, base1, len1, 0, keys[base2]);
+		base1 += offset;
+		len1 -= offset;
+		if (len1 == 0) {
+			return;
+		}
+
+		len2 = gallopLeft(keys, base2, len2, len2 - 1, keys[base1 + len1 - 1]);
+		if (len2 == 0) {
+			return;
+		}
+		if (len1 <= len2) {
+			mergeLo(keys, values, ctx, base1, base2, base2 + len2);
+		} else {
+			mergeHi(keys, values, ctx, base1, base2, base2 + len2);
+		}
+	}
+
+	private static void mergeForceCollapse(long[] keys, Object[] values,
+	                                       TimSortContext ctx)
+	{
+		int n;
+		while ((n = ctx.forceCollapseIndex()) >= 0) {
+			mergeAt(keys, values, ctx, n);
+		}
+	}
+}
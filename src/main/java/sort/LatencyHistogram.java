@@ -0,0 +1,89 @@
+package sort;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of durations in nanoseconds that any number of threads can
+ * record into without locking. Each power of two is split into eight
+ * buckets, so a percentile read back from it is at most 12.5% above the true
+ * value, and recording costs one atomic increment.
+ */
+final class LatencyHistogram {
+	private static final int SUB_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+	private static final int BUCKETS = (Long.SIZE - SUB_BITS) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+	/**
+	 * Records one duration.
+	 * @param nanos the duration, negative durations counting as 0
+	 */
+	void record(long nanos) {
+		counts.incrementAndGet(index(nanos));
+	}
+
+	/**
+	 * @return a copy of the bucket counts, which later recording does not
+	 * change
+	 */
+	long[] snapshot() {
+		final long[] copy = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			copy[i] = counts.get(i);
+		}
+		return copy;
+	}
+
+	/**
+	 * Returns the duration below which a given share of the recorded
+	 * durations fall, rounded up to the top of its bucket.
+	 * @param counts bucket counts taken by {@link #snapshot()}
+	 * @param percentile the share, from 0 to 100
+	 * @return the duration in nanoseconds, or 0 if nothing was recorded
+	 */
+	static long percentile(long[] counts, double percentile) {
+		long total = 0;
+		for (long count : counts) {
+			total += count;
+		}
+		if (total == 0) {
+			return 0;
+		}
+		final long rank =
+		Math.max(1, (long) Math.ceil(percentile / 100 * total));
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				return upperBound(i);
+			}
+		}
+		return upperBound(counts.length - 1);
+	}
+
+	/**
+	 * Durations below {@link #SUB_BUCKETS} get a bucket each. Above that, the
+	 * bucket is picked by the position of the highest set bit and the
+	 * {@link #SUB_BITS} bits below it.
+	 */
+	private static int index(long nanos) {
+		if (nanos < SUB_BUCKETS) {
+			return (int) Math.max(nanos, 0);
+		}
+		final int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+		final int sub =
+		(int) (nanos >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	/** @return the largest duration that falls into a bucket */
+	private static long upperBound(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		final int shift = index / SUB_BUCKETS - 1;
+		final int sub = index % SUB_BUCKETS;
+		return ((long) (SUB_BUCKETS + sub + 1) << shift) - 1;
+	}
+}
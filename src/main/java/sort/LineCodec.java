@@ -0,0 +1,47 @@
+package sort;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Reads and writes newline delimited text, one record per line.
+ */
+final class LineCodec implements RecordCodec<String> {
+	private static final byte NEWLINE = '\n';
+
+	private final Charset charset;
+
+	LineCodec(Charset charset) {
+		this.charset = charset;
+	}
+
+	@Override
+	public String decode(ByteBuffer buf, boolean endOfInput) {
+		final int start = buf.position();
+		final int limit = buf.limit();
+		int end = start;
+		while (end < limit && buf.get(end) != NEWLINE) {
+			end++;
+		}
+		if (end == limit && !(endOfInput && end > start)) {
+			return null;
+		}
+		final byte[] bytes = new byte[end - start];
+		buf.get(bytes);
+		if (end < limit) {
+			buf.get(); // the newline
+		}
+		return new String(bytes, charset);
+	}
+
+	@Override
+	public boolean encode(String record, ByteBuffer buf) {
+		final byte[] bytes = record.getBytes(charset);
+		if (buf.remaining() < bytes.length + 1) {
+			return false;
+		}
+		buf.put(bytes);
+		buf.put(NEWLINE);
+		return true;
+	}
+}
@@ -0,0 +1,279 @@
+package sort;
+
+import java.lang.reflect.Array;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static sort.ComplexTimSort.MIN_GALLOP;
+
+/**
+ * A tournament tree of losers over k sources, the engine behind
+ * {@link SortedMerge}. Each internal node holds the source that lost the
+ * match played there and the root holds the overall winner, so replacing the
+ * winner's head only replays the matches on its path: log k comparisons per
+ * element. Ties go to the source with the lower index, which keeps the merge
+ * stable.
+ * <p>
+ * Like the merges of {@link ComplexTimSort}, the merges here gallop. Once the
+ * same source has won {@link ComplexTimSort#MIN_GALLOP} times in a row, the
+ * runner-up is found among the losers on the winner's path, and the winner
+ * is only compared against that one source until it loses.
+ */
+abstract class LoserTree {
+	final int size;
+	private final int[] tree;
+
+	LoserTree(int size) {
+		this.size = size;
+		this.tree = new int[Math.max(size, 1)];
+	}
+
+	/**
+	 * @return whether the head of source a comes before the head of source b,
+	 * an exhausted source coming after every other
+	 */
+	abstract boolean beats(int a, int b);
+
+	/**
+	 * Plays every match once the heads of all the sources have been loaded.
+	 */
+	final void build() {
+		if (size > 0) {
+			tree[0] = build(1);
+		}
+	}
+
+	private int build(int node) {
+		if (node >= size) {
+			return node - size;
+		}
+		final int a = build(node << 1);
+		final int b = build((node << 1) + 1);
+		if (beats(a, b)) {
+			tree[node] = b;
+			return a;
+		}
+		tree[node] = a;
+		return b;
+	}
+
+	/** @return the source whose head comes first */
+	final int winner() {
+		return tree[0];
+	}
+
+	/**
+	 * Replays the matches on the path of a source whose head has changed.
+	 * @param source the source that was the winner
+	 */
+	final void replay(int source) {
+		int winner = source;
+		for (int node = (source + size) >>> 1; node > 0; node >>>= 1) {
+			final int loser = tree[node];
+			if (beats(loser, winner)) {
+				tree[node] = winner;
+				winner = loser;
+			}
+		}
+		tree[0] = winner;
+	}
+
+	/** @return the source that would win if the winner were removed */
+	final int runnerUp() {
+		int best = -1;
+		for (int node = (tree[0] + size) >>> 1; node > 0; node >>>= 1) {
+			final int loser = tree[node];
+			if (best < 0 || beats(loser, best)) {
+				best = loser;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Merges iterators lazily, holding only the current head of each.
+	 */
+	static final class IteratorMerge<T> extends LoserTree
+	implements Iterator<T>
+	{
+		private final Iterator<T>[] sources;
+		private final Comparator<T> comp;
+		private final Object[] heads;
+		private final boolean[] live;
+		private int streak;
+		private int runnerUp = -1;
+
+		@SuppressWarnings("unchecked")
+		IteratorMerge(List<Iterator<T>> sources, Comparator<T> comp) {
+			super(sources.size());
+			this.sources = (Iterator<T>[]) sources.toArray(new Iterator<?>[0]);
+			this.comp = comp;
+			this.heads = new Object[size];
+			this.live = new boolean[size];
+			for (int i = 0; i < size; i++) {
+				advance(i);
+			}
+			build();
+		}
+
+		private void advance(int source) {
+			final Iterator<T> it = sources[source];
+			live[source] = it.hasNext();
+			heads[source] = live[source] ? it.next() : null;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		boolean beats(int a, int b) {
+			if (!live[a]) {
+				return false;
+			}
+			if (!live[b]) {
+				return true;
+			}
+			final int compare = comp.compare((T) heads[a], (T) heads[b]);
+			return compare < 0 || compare == 0 && a < b;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return size > 0 && live[winner()];
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public T next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			final int source = winner();
+			final T element = (T) heads[source];
+			advance(source);
+			if (runnerUp >= 0 && beats(source, runnerUp)) {
+				return element;
+			}
+
+			runnerUp = -1;
+			replay(source);
+			if (winner() != source) {
+				streak = 0;
+			} else if (++streak >= MIN_GALLOP) {
+				runnerUp = runnerUp();
+			}
+			return element;
+		}
+	}
+
+	/**
+	 * Merges sorted arrays into a new array, copying the stretches a source
+	 * wins while galloping in bulk.
+	 */
+	static final class ArrayMerge<T> extends LoserTree {
+		private final T[][] sources;
+		private final Comparator<T> comp;
+		private final int[] positions;
+
+		@SuppressWarnings("unchecked")
+		ArrayMerge(List<T[]> sources, Comparator<T> comp) {
+			super(sources.size());
+			this.sources = (T[][]) sources.toArray(new Object[0][]);
+			this.comp = comp;
+			this.positions = new int[size];
+		}
+
+		@Override
+		boolean beats(int a, int b) {
+			if (positions[a] == sources[a].length) {
+				return false;
+			}
+			if (positions[b] == sources[b].length) {
+				return true;
+			}
+			final int compare =
+			comp.compare(sources[a][positions[a]], sources[b][positions[b]]);
+			return compare < 0 || compare == 0 && a < b;
+		}
+
+		@SuppressWarnings("unchecked")
+		T[] merge() {
+			long total = 0;
+			for (T[] source : sources) {
+				total += source.length;
+			}
+			if (total > Integer.MAX_VALUE - 8) {
+				throw new IllegalArgumentException(
+				"merged length " + total + " is too large for an array");
+			}
+			final T[] output = (T[]) Array.newInstance(
+			sources[0].getClass().getComponentType(), (int) total);
+
+			build();
+			int streak = 0;
+			for (int o = 0; o < total; ) {
+				final int source = winner();
+				final int position = positions[source];
+				if (streak >= MIN_GALLOP) {
+					final int count = gallop(source, runnerUp());
+					System.arraycopy(sources[source], position, output, o,
+					                 count);
+					positions[source] += count;
+					o += count;
+				} else {
+					output[o++] = sources[source][position];
+					positions[source]++;
+				}
+				replay(source);
+				streak = winner() == source ? streak + 1 : 0;
+			}
+			return output;
+		}
+
+		/**
+		 * Counts how many elements of the winning source, from its head on,
+		 * come before the head of the runner-up, by galloping and then
+		 * binary searching.
+		 */
+		private int gallop(int source, int runnerUp) {
+			final T[] arr = sources[source];
+			final int base = positions[source];
+			final int length = arr.length - base;
+			if (runnerUp < 0
+			    || positions[runnerUp] == sources[runnerUp].length)
+			{
+				return length;
+			}
+			final T target = sources[runnerUp][positions[runnerUp]];
+			final boolean inclusive = source < runnerUp;
+
+			int lastOffset = 0;
+			int offset = 1;
+			while (offset < length
+			       && before(arr[base + offset], target, inclusive))
+			{
+				lastOffset = offset;
+				offset = (offset << 1) + 1; // offset * 2 + 1
+			}
+			if (offset > length) {
+				offset = length;
+			}
+
+			lastOffset++;
+			while (lastOffset < offset) {
+				final int mid = (lastOffset + offset) >>> 1;
+				if (before(arr[base + mid], target, inclusive)) {
+					lastOffset = mid + 1;
+				} else {
+					offset = mid;
+				}
+			}
+			return offset;
+		}
+
+		private boolean before(T element, T target, boolean inclusive) {
+			final int compare = comp.compare(element, target);
+			return compare < 0 || inclusive && compare == 0;
+		}
+	}
+}
@@ -0,0 +1,46 @@
+package sort;
+
+/**
+ * Decides which pending runs a TimSort merges and when. After each run is
+ * pushed the engines ask {@link #collapseIndex} for pairs to merge until it
+ * returns -1, and once the input is exhausted they ask
+ * {@link #forceCollapseIndex} until a single run remains. A policy may only
+ * merge the top two runs or the two just below the top run, and it reads the
+ * stack through the accessors of {@link TimSortContext}.
+ * <p>
+ * A policy is chosen per context with
+ * {@link TimSortContext#setMergePolicy(MergePolicy)}. The choice never
+ * changes the result of a sort, only how much merging it takes to get there,
+ * which {@link SortStats#mergedElements()} measures.
+ */
+public interface MergePolicy {
+
+	/**
+	 * The classic TimSort rule, which merges until the run lengths grow at
+	 * least as fast as the Fibonacci numbers from the top of the stack down.
+	 */
+	MergePolicy TIMSORT = new TimSortPolicy();
+
+	/**
+	 * Powersort, which gives every boundary between two runs a node power from
+	 * the position of the runs in the array and merges whenever the boundary
+	 * below the top run has a higher power than the newest one. Its merge cost
+	 * is within a few percent of optimal on any run profile.
+	 */
+	MergePolicy POWERSORT = new PowersortPolicy();
+
+	/**
+	 * Chooses the next merge after a run has been pushed.
+	 * @param runs the context holding the run stack
+	 * @return the index of the lower of the two runs to merge, or -1 to stop
+	 * merging until the next run is pushed
+	 */
+	int collapseIndex(TimSortContext runs);
+
+	/**
+	 * Chooses the next merge once every run has been pushed.
+	 * @param runs the context holding the run stack, with at least two runs
+	 * @return the index of the lower of the two runs to merge
+	 */
+	int forceCollapseIndex(TimSortContext runs);
+}
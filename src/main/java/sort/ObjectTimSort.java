@@ -0,0 +1,689 @@
+package sort;
+
+import java.util.Comparator;
+
+import static java.lang.Math.min;
+import static sort.ComplexTimSort.MIN_GALLOP;
+import static sort.ComplexTimSort.THRESHOLD;
+
+/**
+ * The engine behind the object sorts of {@link ComplexTimSort}. It keeps its
+ * run stack, minGallop and merge buffer in a {@link TimSortContext}, so that
+ * the other sorts in this package can drive the same machinery.
+ */
+final class ObjectTimSort {
+
+	private ObjectTimSort() {}
+
+	/**
+	 * Sorts the given range of an array using a given comparator. The context
+	 * must already have been entered.
+	 * @param <T> the type of the array
+	 * @param arr the array to be sorted
+	 * @param lo the index of the first element, inclusive
+	 * @param hi the index of the last element, exclusive
+	 * @param comp the comparator used to sort the array
+	 * @param ctx the context holding the run stack and merge buffer
+	 */
+	static <T> void sort(T[] arr, int lo, int hi, Comparator<T> comp,
+	                     TimSortContext ctx)
+	{
+		final SortEvents.SortCompleted event =
+		SortEvents.sortStarted(hi - lo, comp, ctx);
+		final SortStats stats = ctx.stats;
+		if (stats == null) {
+			timSort(arr, lo, hi, comp, ctx);
+		} else {
+			stats.sortStarted(hi - lo);
+			timSort(arr, lo, hi, stats.counting(comp), ctx);
+			stats.sortFinished(ctx.minGallop);
+		}
+		SortEvents.sortCompleted(event, comp, ctx);
+	}
+
+	private static <T> void timSort(T[] arr, int lo, int hi,
+	                                Comparator<T> comp, TimSortContext ctx)
+	{
+		final int remaining = hi - lo;
+		if (remaining < 2) {
+			return;
+		}
+
+		if (remaining < THRESHOLD) {
+			final int startingRunLength = ascendThenCount(arr, comp, lo, hi);
+			if (ctx.stats != null) {
+				ctx.stats.runFound(startingRunLength);
+				ctx.stats.runExtended(remaining - startingRunLength);
+			}
+			SortEvents.runDetected(lo, startingRunLength, remaining);
+			binarySort(arr, comp, lo, hi, lo + startingRunLength);
+			return;
+		}
+
+		ctx.startRange(lo, hi);
+		pushRuns(arr, lo, hi, runLength(remaining), comp, ctx);
+		mergeForceCollapse(arr, comp, ctx);
+	}
+
+	/**
+	 * Splits the given range into runs of at least minRun elements, pushing
+	 * each onto the context's stack and merging whenever the merge policy asks
+	 * for it. Runs already on the stack must end where the range starts. The
+	 * runs are left on the stack for {@link #collapse} or later calls to merge.
+	 * @param <T> the type of the array
+	 * @param arr the array being worked with
+	 * @param lo the index of the first element, inclusive
+	 * @param hi the index of the last element, exclusive
+	 * @param minRun the length short runs are extended to
+	 * @param comp the comparator used to sort the array
+	 * @param ctx the context holding the run stack and merge buffer
+	 */
+	static <T> void pushRuns(T[] arr, int lo, int hi, int minRun,
+	                         Comparator<T> comp, TimSortContext ctx)
+	{
+		int remaining = hi - lo;
+		while (remaining > 0) {
+			int runLength = ascendThenCount(arr, comp, lo, hi);
+			final int naturalLength = runLength;
+			if (ctx.stats != null) {
+				ctx.stats.runFound(runLength);
+			}
+			if (runLength < minRun) {
+				final int force = min(remaining, minRun);
+				if (ctx.stats != null) {
+					ctx.stats.runExtended(force - runLength);
+				}
+				binarySort(arr, comp, lo, lo + force, lo + runLength);
+				runLength = force;
+			}
+			SortEvents.runDetected(lo, naturalLength, runLength);
+			ctx.pushRun(lo, runLength);
+			mergeCollapse(arr, comp, ctx);
+			lo += runLength;
+			remaining -= runLength;
+		}
+	}
+
+	/**
+	 * Merges every run on the context's stack into one.
+	 * @param <T> the type of the array
+	 * @param arr the array being worked with
+	 * @param comp the comparator used to sort the array
+	 * @param ctx the context holding the run stack and merge buffer
+	 */
+	static <T> void collapse(T[] arr, Comparator<T> comp, TimSortContext ctx) {
+		mergeForceCollapse(arr, comp, ctx);
+	}
+
+	/**
+	 * Calculates a run length for a range that is effectively equivalent to
+	 * ceil(length / (2 ^ (ceil(log2(length + 0.001)) - 2)))
+	 * @param length the length of the range being sorted
+	 * @return the calculated run length
+	 */
+	static int runLength(int length) {
+		int runLength = length;
+		int remainder = 0;
+		while (runLength >= THRESHOLD) {
+			remainder |= runLength & 1;
+			runLength >>>= 1;
+		}
+		return runLength + remainder;
+	}
+
+	/**
+	 * Counts the length of the ascending or descending run starting at the
+	 * left index and returns the count. If the elements are in descending
+	 * order, this reverses the run to make it ascending after counting.
+	 * @param <T> the type of the array
+	 * @param arr the array being worked with
+	 * @param comp the comparator used to sort the array
+	 * @param left the starting index of the run, inclusive
+	 * @param right the maximum index of the run, exclusive
+	 * @return the length of the run
+	 */
+	private static <T> int ascendThenCount(T[] arr, Comparator<T> comp,
+	                                       int left, int right)
+	{
+		int runRight = left + 1;
+		if (runRight == right) {
+			return 1;
+		}
+		if (comp.compare(arr[left],arr[runRight]) > 0) {
+			while (runRight < right
+			       && comp.compare(arr[runRight], arr[runRight - 1]) < 0)
+			{
+				runRight++;
+			}
+			reverse(arr, left, runRight);
+		} else {
+			while (runRight < right
+			       && comp.compare(arr[runRight], arr[runRight - 1]) >= 0)
+			{
+				runRight++;
+			}
+		}
+		return runRight - left;
+	}
+
+	/**
+	 * Reverses the order of a descending run
+	 * @param <T> the type of the array
+	 * @param arr the array being worked with
+	 * @param left the starting index of the descending run, inclusive
+	 * @param right the ending index of the descending run, exclusive
+	 */
+	private static <T> void reverse(T[] arr, int left, int right) {
+		right--;
+		while (left < right) {
+			T temp = arr[left];
+			arr[left] = arr[right];
+			arr[right] = temp;
+			left++;
+			right--;
+		}
+	}
+
+	private static <T> void binarySort(T[] arr, Comparator<T> comp, int lo,
+	                                   int hi, int start)
+	{
+		if (start == lo) {
+			start++;
+		}
+		while (start < hi) {
+			final T pivot = arr[start];
+			final int index =
+			lo + searchRight(arr, comp, lo, start - lo, pivot);
+			System.arraycopy(arr, index, arr, index + 1, start - index);
+			arr[index] = pivot;
+			start++;
+		}
+	}
+
+	static <T> int searchLeft(T[] arr, Comparator<T> comp, int base,
+	                          int length, T target)
+	{
+		int left = base;
+		int right = base + length;
+		while (left < right) {
+			final int mid = (left + right) >>> 1;
+			if (comp.compare(target, arr[mid]) > 0) {
+				left = mid + 1;
+			} else {
+				right = mid;
+			}
+		}
+		return left - base;
+	}
+
+	static <T> int searchRight(T[] arr, Comparator<T> comp, int base,
+	                           int length, T target)
+	{
+		int left = base;
+		int right = base + length;
+		while (left < right) {
+			final int mid = (left + right) >>> 1;
+			if (comp.compare(target, arr[mid]) < 0) {
+				right = mid;
+			} else {
+				left = mid + 1;
+			}
+		}
+		return left - base;
+	}
+
+	static <T> int gallopLeft(T[] arr, Comparator<T> comp, int base,
+	                          int length, int hint, T target)
+	{
+		int lastOffset = 0;
+		int offset = 1;
+		if (comp.compare(target, arr[base + hint]) > 0) {
+			final int maxOffset = length - hint;
+			while (offset < maxOffset
+			       && comp.compare(target, arr[base + hint + offset]) > 0)
+			{
+				lastOffset = offset;
+				offset = (offset << 1) + 1; // offset * 2 + 1
+			}
+
+			if (offset > maxOffset) {
+				offset = maxOffset;
+			}
+
+			lastOffset += hint;
+			offset += hint;
+		} else {
+			final int maxOffset = hint + 1;
+			while (offset < maxOffset
+			       && comp.compare(target, arr[base + hint - offset]) <= 0)
+			{
+				lastOffset = offset;
+				offset = (offset << 1) + 1; // offset * 2 + 1
+			}
+
+			if (offset > maxOffset) {
+				offset = maxOffset;
+			}
+
+			final int temp = lastOffset;
+			lastOffset = hint - offset;
+			offset = hint - temp;
+		}
+
+		lastOffset++;
+		while (lastOffset < offset) {
+			final int mid = (lastOffset + offset) >>> 1;
+			if (comp.compare(target, arr[base + mid]) > 0) {
+				lastOffset = mid + 1;
+			} else {
+				offset = mid;
+			}
+		}
+		return offset;
+	}
+
+	static <T> int gallopRight(T[] arr, Comparator<T> comp, int base,
+	                           int length, int hint, T target)
+	{
+		int lastOffset = 0;
+		int offset = 1;
+		if (comp.compare(target, arr[base + hint]) < 0) {
+			final int maxOffset = hint + 1;
+			while (offset < maxOffset
+			       && comp.compare(target, arr[base + hint - offset]) < 0)
+			{
+				lastOffset = offset;
+				offset = (offset << 1) + 1; // offset * 2 + 1
+			}
+
+			if (offset > maxOffset) {
+				offset = maxOffset;
+			}
+
+			final int temp = lastOffset;
+			lastOffset = hint - offset;
+			offset = hint - temp;
+		} else {
+			final int maxOffset = length - hint;
+			while (offset < maxOffset
+			       && comp.compare(target, arr[base + hint + offset]) >= 0)
+			{
+				lastOffset = offset;
+				offset = (offset << 1) + 1; // offset * 2 + 1
+			}
+
+			if (offset > maxOffset) {
+				offset = maxOffset;
+			}
+
+			lastOffset += hint;
+			offset += hint;
+		}
+		lastOffset++;
+		while (lastOffset < offset) {
+			final int mid = (lastOffset + offset) >>> 1;
+			if (comp.compare(target, arr[base + mid]) < 0) {
+				offset = mid;
+			} else {
+				lastOffset = mid + 1;
+			}
+		}
+		return offset;
+	}
+
+	private static <T> void mergeLo(T[] arr, Comparator<T> comp,
+	                                TimSortContext ctx, int l, int m, int r,
+	                                SortEvents.MergeExecuted event)
+	{
+		final T[] temp = buffer(ctx, m - l);
+		System.arraycopy(arr, l, temp, 0, m - l);
+		int minGallop = ctx.minGallop;
+		int galloped = 0;
+		int gallopEntries = 0;
+		int i = l, j = m, k = 0;
+		boolean done = false;
+
+		while (!done) {
+			int count1 = 0;
+			int count2 = 0;
+			while ((count1 | count2) < minGallop) {
+				if (comp.compare(arr[j], temp[k]) < 0) {
+					arr[i++] = arr[j++];
+					count1 = 0;
+					count2++;
+				} else {
+					arr[i++] = temp[k++];
+					count1++;
+					count2 = 0;
+				}
+
+				if (k == m - l || j == r) {
+					done = true;
+					break;
+				}
+			}
+
+			if (done) {
+				break;
+			}
+
+			final int gallopStart = i;
+			while (count1 >= MIN_GALLOP || count2 >= MIN_GALLOP) {
+				count1 = gallopRight(temp, comp, k, m - l - k, 0, arr[j]);
+				if (count1 != 0) {
+					System.arraycopy(temp, k, arr, i, count1);
+					i += count1;
+					k += count1;
+					if (k == m - l) {
+						done = true;
+						break;
+					}
+				}
+
+				arr[i] = arr[j];
+				i++;
+				j++;
+				if (j == r) {
+					done = true;
+					break;
+				}
+
+				count2 = gallopLeft(arr, comp, j, r - j, 0, temp[k]);
+				if (count2 != 0) {
+					System.arraycopy(arr, j, arr, i, count2);
+					i += count2;
+					j += count2;
+					if (j == r) {
+						done = true;
+						break;
+					}
+				}
+
+				arr[i] = temp[k];
+				i++;
+				k++;
+				if (k == m - l) {
+					done = true;
+					break;
+				}
+
+				minGallop--;
+			}
+			if (i != gallopStart) {
+				gallopEntries++;
+				galloped += i - gallopStart;
+			}
+			if (minGallop < 0) {
+				minGallop = 0;
+			}
+			minGallop += 2;
+		}
+
+		if (k < m - l) {
+			System.arraycopy(temp, k, arr, i, m - l - k);
+		}
+		ctx.minGallop = minGallop;
+		if (ctx.stats != null) {
+			ctx.stats.mergeFinished(r - l, galloped, gallopEntries);
+		}
+		if (event != null) {
+			event.gallopedElements += galloped;
+			event.gallopEntries += gallopEntries;
+		}
+	}
+
+	private static <T> void mergeHi(T[] arr, Comparator<T> comp,
+	                                TimSortContext ctx, int l, int m, int r,
+	                                SortEvents.MergeExecuted event)
+	{
+		final T[] temp = buffer(ctx, r - m);
+		System.arraycopy(arr, m, temp, 0, r - m);
+		int minGallop = ctx.minGallop;
+		int galloped = 0;
+		int gallopEntries = 0;
+		int i = r - 1, j = m - 1, k = r - m - 1;
+		boolean done = false;
+
+		while (!done) {
+			int count1 = 0;
+			int count2 = 0;
+			while ((count1 | count2) < minGallop) {
+				if (comp.compare(temp[k], arr[j]) < 0) {
+					arr[i] = arr[j];
+					count1 = 0;
+					count2++;
+					j--;
+				} else {
+					arr[i] = temp[k];
+					count1++;
+					count2 = 0;
+					k--;
+				}
+				i--;
+
+				if (k == -1 || j == l - 1) {
+					done = true;
+					break;
+				}
+			}
+
+			if (done) {
+				break;
+			}
+
+			final int gallopStart = i;
+			while (count1 >= MIN_GALLOP || count2 >= MIN_GALLOP) {
+				count1 = j - l + 1 - gallopRight(arr, comp,  l, j - l + 1,
+				                                 j - l, temp[k]);
+				if (count1 != 0) {
+					final int gap = count1 - 1;
+					System.arraycopy(arr, j - gap, arr, i - gap, 1 + gap);
+					i -= count1;
+					j -= count1;
+					if (j == l - 1) {
+						done = true;
+						break;
+					}
+				}
+
+				arr[i] = temp[k];
+				i--;
+				k--;
+
+				if (k == -1) {
+					done = true;
+					break;
+				}
+
+				count2 = k + 1 - gallopLeft(temp, comp, 0, k + 1, k, arr[j]);
+				if (count2 != 0) {
+					final int gap = count2 - 1;
+					System.arraycopy(temp, k - gap, arr, i - gap, 1 + gap);
+					i -= count2;
+					k -= count2;
+					if (k == -1) {
+						done = true;
+						break;
+					}
+				}
+
+				arr[i] = arr[j];
+				i--;
+				j--;
+				if (j == l - 1) {
+					done = true;
+					break;
+				}
+
+				minGallop--;
+			}
+			if (i != gallopStart) {
+				gallopEntries++;
+				galloped += gallopStart - i;
+			}
+			if (minGallop < 0) {
+				minGallop = 0;
+			}
+			minGallop += 2;
+		}
+
+		if (k >= 0) {
+			System.arraycopy(temp, 0, arr, l, k + 1);
+		}
+		ctx.minGallop = minGallop;
+		if (ctx.stats != null) {
+			ctx.stats.mergeFinished(r - l, galloped, gallopEntries);
+		}
+		if (event != null) {
+			event.gallopedElements += galloped;
+			event.gallopEntries += gallopEntries;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T[] buffer(TimSortContext ctx, int length) {
+		return (T[]) ctx.buffer(length);
+	}
+
+	private static <T> void mergeCollapse(T[] arr, Comparator<T> comp,
+	                                      TimSortContext ctx)
+	{
+		int n;
+		while ((n = ctx.collapseIndex()) >= 0) {
+			mergeAt(arr, comp, ctx, n);
+		}
+	}
+
+	private static <T> void mergeAt(T[] arr, Comparator<T> comp,
+	                                TimSortContext ctx, int index)
+	{
+		int base1 = ctx.runBase[index], len1 = ctx.runLength[index];
+		final int base2 = ctx.runBase[index + 1];
+		int len2 = ctx.runLength[index + 1];
+		ctx.mergedAt(index);
+		if (ctx.stats != null) {
+			ctx.stats.mergeStarted(len1 + len2);
+		}
+		final SortEvents.MergeExecuted event =
+		SortEvents.mergeStarted(base1, len1, len2);
+
+		final int offset = searchRight(arr, comp, base1, len1, arr[base2]);
+		base1 += offset;
+		len1 -= offset;
+		if (len1 == 0) {
+			SortEvents.mergeExecuted(event, 0, null);
+			return;
+		}
+
+		len2 = searchLeft(arr, comp, base2, len2, arr[base1 + len1 - 1]);
+		if (len2 == 0) {
+			SortEvents.mergeExecuted(event, 0, null);
+			return;
+		}
+		if (min(len1, len2) > ctx.maxBufferLength) {
+			mergeInPlace(arr, comp, ctx, base1, base2, base2 + len2, event);
+			SortEvents.mergeExecuted(event, len1 + len2, "rotation");
+		} else if (len1 <= len2) {
+			mergeLo(arr, comp, ctx, base1, base2, base2 + len2, event);
+			SortEvents.mergeExecuted(event, len1 + len2, "lo");
+		} else {
+			mergeHi(arr, comp, ctx, base1, base2, base2 + len2, event);
+			SortEvents.mergeExecuted(event, len1 + len2, "hi");
+		}
+	}
+
+	/**
+	 * Merges the adjacent sorted ranges [l, m) and [m, r) when the shorter of
+	 * them does not fit in the buffer the context allows. The longer range is
+	 * cut in half and the shorter one where the element at that cut belongs,
+	 * and rotating the two middle pieces past each other puts that element in
+	 * place with a smaller merge on either side of it. Equal elements never
+	 * cross a cut, so the merge is stable. Once the shorter range of a merge
+	 * fits in the buffer, it is merged by galloping as usual, so the fallback
+	 * only costs a few levels of splitting unless the cap is tiny.
+	 */
+	private static <T> void mergeInPlace(T[] arr, Comparator<T> comp,
+	                                     TimSortContext ctx, int l, int m,
+	                                     int r, SortEvents.MergeExecuted event)
+	{
+		while (l < m && m < r) {
+			final int len1 = m - l;
+			final int len2 = r - m;
+			if (len1 <= ctx.maxBufferLength && len1 <= len2) {
+				mergeLo(arr, comp, ctx, l, m, r, event);
+				return;
+			}
+			if (len2 <= ctx.maxBufferLength) {
+				mergeHi(arr, comp, ctx, l, m, r, event);
+				return;
+			}
+
+			// the element at the cut of the longer range ends up at mid, in
+			// its final place, between the two merges left to do
+			final int cut1;
+			final int cut2;
+			final int mid;
+			if (len1 > len2) {
+				cut1 = l + (len1 >>> 1);
+				cut2 = m + searchLeft(arr, comp, m, len2, arr[cut1]);
+				rotate(arr, ctx, cut1, m, cut2);
+				mid = cut1 + (cut2 - m);
+			} else {
+				final int pivot = m + (len2 >>> 1);
+				cut1 = l + searchRight(arr, comp, l, len1, arr[pivot]);
+				cut2 = pivot + 1;
+				rotate(arr, ctx, cut1, m, cut2);
+				mid = cut1 + (pivot - m);
+			}
+
+			// recurse into the shorter half, so the stack stays O(log n)
+			if (mid - l <= r - mid) {
+				mergeInPlace(arr, comp, ctx, l, cut1, mid, event);
+				l = mid + 1;
+				m = cut2;
+			} else {
+				mergeInPlace(arr, comp, ctx, mid + 1, cut2, r, event);
+				r = mid;
+				m = cut1;
+			}
+		}
+	}
+
+	/**
+	 * Swaps the adjacent ranges [l, m) and [m, r), through the buffer if the
+	 * shorter one fits in it and by three reversals otherwise.
+	 */
+	private static <T> void rotate(T[] arr, TimSortContext ctx, int l, int m,
+	                               int r)
+	{
+		final int len1 = m - l;
+		final int len2 = r - m;
+		if (len1 == 0 || len2 == 0) {
+			return;
+		}
+		if (len1 <= len2 && len1 <= ctx.maxBufferLength) {
+			final T[] temp = buffer(ctx, len1);
+			System.arraycopy(arr, l, temp, 0, len1);
+			System.arraycopy(arr, m, arr, l, len2);
+			System.arraycopy(temp, 0, arr, l + len2, len1);
+		} else if (len2 <= ctx.maxBufferLength) {
+			final T[] temp = buffer(ctx, len2);
+			System.arraycopy(arr, m, temp, 0, len2);
+			System.arraycopy(arr, l, arr, l + len2, len1);
+			System.arraycopy(temp, 0, arr, l, len2);
+		} else {
+			reverse(arr, l, m);
+			reverse(arr, m, r);
+			reverse(arr, l, r);
+		}
+	}
+
+	private static <T> void mergeForceCollapse(T[] arr, Comparator<T> comp,
+	                                           TimSortContext ctx)
+	{
+		int n;
+		while ((n = ctx.forceCollapseIndex()) >= 0) {
+			mergeAt(arr, comp, ctx, n);
+		}
+	}
+}
@@ -0,0 +1,109 @@
+package sort;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Sorts fixed-width binary records in place inside a buffer, typically a
+ * direct one, without turning them into objects. Each record holds a
+ * primitive key at a fixed offset, read in the buffer's byte order, and the
+ * records are ordered by that key alone. The sort is the same TimSort as
+ * {@link ComplexTimSort}: runs, galloping and stable merges, with records
+ * moved as bytes and the merge buffer kept off-heap in the
+ * {@link TimSortContext}.
+ * <p>
+ * The records are the bytes between the buffer's position and its limit.
+ * Neither the position nor the limit is changed.
+ */
+public interface OffHeapSort {
+
+	/**
+	 * The type of the key of a record.
+	 */
+	enum KeyType {
+		/** A signed 32 bit integer. */
+		INT(Integer.BYTES),
+		/** A signed 64 bit integer. */
+		LONG(Long.BYTES),
+		/** A float, ordered as by {@link Float#compare}. */
+		FLOAT(Float.BYTES),
+		/** A double, ordered as by {@link Double#compare}. */
+		DOUBLE(Double.BYTES);
+
+		final int width;
+
+		KeyType(int width) {
+			this.width = width;
+		}
+	}
+
+	/**
+	 * Sorts the records of a buffer by their keys.
+	 * @param records the buffer holding the records
+	 * @param recordWidth the width of a record in bytes
+	 * @param keyOffset the offset of the key within a record in bytes
+	 * @param keyType the type of the key
+	 * @throws IllegalArgumentException if the key does not fit in a record or
+	 * the records do not fill the buffer exactly
+	 */
+	static void sort(ByteBuffer records, int recordWidth, int keyOffset,
+	                 KeyType keyType)
+	{
+		final int count = checkLayout(records, recordWidth, keyOffset, keyType);
+		final TimSortContext ctx = TimSortContext.acquire();
+		try {
+			RecordTimSort.sort(records, records.position(), count, recordWidth,
+			                   keyOffset, keyType, ctx);
+		} finally {
+			ctx.exit();
+		}
+	}
+
+	/**
+	 * Sorts the records of a buffer by their keys, taking the run stack and
+	 * the off-heap merge buffer from the given context. A context that is
+	 * reused across calls makes sorting allocation free once its buffer has
+	 * grown to fit, which the context of the current thread does not do for
+	 * large sorts.
+	 * @param records the buffer holding the records
+	 * @param recordWidth the width of a record in bytes
+	 * @param keyOffset the offset of the key within a record in bytes
+	 * @param keyType the type of the key
+	 * @param ctx the context to sort with
+	 * @throws IllegalArgumentException if the key does not fit in a record or
+	 * the records do not fill the buffer exactly
+	 * @throws IllegalStateException if the context is already in use
+	 */
+	static void sort(ByteBuffer records, int recordWidth, int keyOffset,
+	                 KeyType keyType, TimSortContext ctx)
+	{
+		final int count = checkLayout(records, recordWidth, keyOffset, keyType);
+		ctx.enter();
+		try {
+			RecordTimSort.sort(records, records.position(), count, recordWidth,
+			                   keyOffset, keyType, ctx);
+		} finally {
+			ctx.exit();
+		}
+	}
+
+	/**
+	 * Checks that the key fits in a record and that the records fill the
+	 * remainder of the buffer.
+	 * @return the number of records
+	 */
+	private static int checkLayout(ByteBuffer records, int recordWidth,
+	                               int keyOffset, KeyType keyType)
+	{
+		if (keyOffset < 0 || recordWidth - keyType.width < keyOffset) {
+			throw new IllegalArgumentException(
+			"a " + keyType + " key at offset " + keyOffset
+			+ " does not fit in a record of " + recordWidth + " bytes");
+		}
+		if (records.remaining() % recordWidth != 0) {
+			throw new IllegalArgumentException(
+			records.remaining() + " bytes do not divide into records of "
+			+ recordWidth + " bytes");
+		}
+		return records.remaining() / recordWidth;
+	}
+}
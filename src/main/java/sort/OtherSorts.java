@@ -1,6 +1,7 @@
 package sort;
 
 import java.util.Arrays;
+import java.util.Comparator;
 
 public interface OtherSorts {
 
@@ -42,39 +43,27 @@ public interface OtherSorts {
 		}
 	}
 
+	/**
+	 * Sorts an array of comparable objects in place with a pattern-defeating
+	 * quicksort. The sort is not stable, but needs no extra memory, takes
+	 * O(n log n) time at worst, and linear time on sorted, reverse sorted and
+	 * all equal input.
+	 * @param <T> the type of the array
+	 * @param arr the array to be sorted
+	 */
 	static <T extends Comparable<T>> void quickSort(T[] arr) {
-		quickSortHelper(arr, 0, arr.length - 1);
+		quickSort(arr, Comparator.naturalOrder());
 	}
 
-	private static <T extends Comparable<T>> void quickSortHelper(T[] arr,
-	                                                              int start,
-	                                                              int end)
-	{
-		if (start < end) {
-			int index = partition(arr, start, end);
-
-			quickSortHelper(arr, start, index - 1);
-			quickSortHelper(arr, index + 1, end);
-		}
-	}
-
-	private static <T extends Comparable<T>> int partition(T[] arr, int start,
-	                                                       int end)
-	{
-		T pivot = arr[end];
-		int i = start - 1;
-
-		for (int j = start; j < end; j++) {
-			if (arr[j].compareTo(pivot) <= 0) {
-				T temp = arr[++i];
-				arr[i] = arr[j];
-				arr[j] = temp;
-			}
-		}
-
-		T temp = arr[++i];
-		arr[i] = arr[end];
-		arr[end] = temp;
-		return i;
+	/**
+	 * Sorts an array in place with a pattern-defeating quicksort using a
+	 * given comparator. The sort is not stable.
+	 * @param <T> the type of the array
+	 * @param arr the array to be sorted
+	 * @param comp the comparator used to sort the array
+	 * @see #quickSort(Comparable[])
+	 */
+	static <T> void quickSort(T[] arr, Comparator<T> comp) {
+		PdqSort.sort(arr, 0, arr.length, comp);
 	}
 }
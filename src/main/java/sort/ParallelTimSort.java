@@ -0,0 +1,233 @@
+package sort;
+
+import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The fork-join engine behind {@link ComplexTimSort#parallelSort}. The array
+ * is cut into quarters recursively until the pieces are small enough to hand
+ * to the sequential engine, which keeps its run detection and galloping on
+ * each piece. Quarters are merged pairwise into a workspace and the halves
+ * merged back, so the data only ever moves between the array and one
+ * workspace. Every merge is itself split by co-ranking: the middle element of
+ * the longer run is binary searched in the other run, and the two halves are
+ * merged in parallel, which keeps all the workers busy through the last
+ * levels.
+ */
+final class ParallelTimSort {
+	static final int MIN_GRANULARITY = 1 << 13;
+
+	private ParallelTimSort() {}
+
+	/**
+	 * Sorts an array in parallel on the given pool.
+	 * @param <T> the type of the array
+	 * @param arr the array to be sorted
+	 * @param lo the index of the first element, inclusive
+	 * @param hi the index of the last element, exclusive
+	 * @param comp the comparator used to sort the array
+	 * @param pool the pool to run the sort on
+	 */
+	static <T> void sort(T[] arr, int lo, int hi, Comparator<T> comp,
+	                     ForkJoinPool pool)
+	{
+		final int length = hi - lo;
+		final int parallelism = pool.getParallelism();
+		if (length <= MIN_GRANULARITY || parallelism == 1) {
+			final TimSortContext ctx = TimSortContext.acquire();
+			try {
+				ObjectTimSort.sort(arr, lo, hi, comp, ctx);
+			} finally {
+				ctx.exit();
+			}
+			return;
+		}
+
+		final int granularity =
+		Math.max(length / (parallelism << 2), MIN_GRANULARITY);
+		@SuppressWarnings("unchecked")
+		final T[] work = (T[]) new Object[length];
+		pool.invoke(new Sorter<>(arr, work, lo, length, 0, granularity, comp));
+	}
+
+	/**
+	 * Sorts arr[base, base + size), using work[workBase, workBase + size) as
+	 * scratch space.
+	 */
+	private static final class Sorter<T> extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final T[] arr;
+		private final T[] work;
+		private final int base;
+		private final int size;
+		private final int workBase;
+		private final int granularity;
+		private final Comparator<T> comp;
+
+		Sorter(T[] arr, T[] work, int base, int size, int workBase,
+		       int granularity, Comparator<T> comp)
+		{
+			this.arr = arr;
+			this.work = work;
+			this.base = base;
+			this.size = size;
+			this.workBase = workBase;
+			this.granularity = granularity;
+			this.comp = comp;
+		}
+
+		@Override
+		protected void compute() {
+			if (size <= granularity) {
+				final TimSortContext ctx = TimSortContext.acquire();
+				try {
+					ObjectTimSort.sort(arr, base, base + size, comp, ctx);
+				} finally {
+					ctx.exit();
+				}
+				return;
+			}
+
+			final int half = size >>> 1;
+			final int quarter = half >>> 1;
+			final int upper = half + quarter;
+			invokeAll(
+			new Sorter<>(arr, work, base, quarter, workBase,
+			             granularity, comp),
+			new Sorter<>(arr, work, base + quarter, half - quarter,
+			             workBase + quarter, granularity, comp),
+			new Sorter<>(arr, work, base + half, quarter, workBase + half,
+			             granularity, comp),
+			new Sorter<>(arr, work, base + upper, size - upper,
+			             workBase + upper, granularity, comp));
+
+			if (ordered(base + quarter) && ordered(base + half)
+			    && ordered(base + upper))
+			{
+				return;
+			}
+
+			invokeAll(
+			new Merger<>(arr, work, base, base + quarter, base + quarter,
+			             base + half, workBase, granularity, comp),
+			new Merger<>(arr, work, base + half, base + upper, base + upper,
+			             base + size, workBase + half, granularity, comp));
+			new Merger<>(work, arr, workBase, workBase + half, workBase + half,
+			             workBase + size, base, granularity, comp).invoke();
+		}
+
+		private boolean ordered(int boundary) {
+			return comp.compare(arr[boundary - 1], arr[boundary]) <= 0;
+		}
+	}
+
+	/**
+	 * Merges the sorted ranges src[lo1, hi1) and src[lo2, hi2) into dst,
+	 * starting at index dest. Equal elements from the first range are placed
+	 * before those from the second.
+	 */
+	private static final class Merger<T> extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final T[] src;
+		private final T[] dst;
+		private final int lo1;
+		private final int hi1;
+		private final int lo2;
+		private final int hi2;
+		private final int dest;
+		private final int granularity;
+		private final Comparator<T> comp;
+
+		Merger(T[] src, T[] dst, int lo1, int hi1, int lo2, int hi2, int dest,
+		       int granularity, Comparator<T> comp)
+		{
+			this.src = src;
+			this.dst = dst;
+			this.lo1 = lo1;
+			this.hi1 = hi1;
+			this.lo2 = lo2;
+			this.hi2 = hi2;
+			this.dest = dest;
+			this.granularity = granularity;
+			this.comp = comp;
+		}
+
+		@Override
+		protected void compute() {
+			final int len1 = hi1 - lo1;
+			final int len2 = hi2 - lo2;
+			if (len1 + len2 <= granularity) {
+				merge();
+				return;
+			}
+
+			int split1;
+			int split2;
+			if (len1 >= len2) {
+				split1 = (lo1 + hi1) >>> 1;
+				split2 = searchLeft(lo2, hi2, src[split1]);
+			} else {
+				split2 = (lo2 + hi2) >>> 1;
+				split1 = searchRight(lo1, hi1, src[split2]);
+			}
+			final int leftLength = split1 - lo1 + split2 - lo2;
+			invokeAll(
+			new Merger<>(src, dst, lo1, split1, lo2, split2, dest,
+			             granularity, comp),
+			new Merger<>(src, dst, split1, hi1, split2, hi2,
+			             dest + leftLength, granularity, comp));
+		}
+
+		/**
+		 * Finds the index of the first element in src[left, right) that is
+		 * not less than the target.
+		 */
+		private int searchLeft(int left, int right, T target) {
+			while (left < right) {
+				final int mid = (left + right) >>> 1;
+				if (comp.compare(src[mid], target) < 0) {
+					left = mid + 1;
+				} else {
+					right = mid;
+				}
+			}
+			return left;
+		}
+
+		/**
+		 * Finds the index of the first element in src[left, right) that is
+		 * greater than the target.
+		 */
+		private int searchRight(int left, int right, T target) {
+			while (left < right) {
+				final int mid = (left + right) >>> 1;
+				if (comp.compare(src[mid], target) <= 0) {
+					left = mid + 1;
+				} else {
+					right = mid;
+				}
+			}
+			return left;
+		}
+
+		private void merge() {
+			int i = lo1, j = lo2, k = dest;
+			if (i < hi1 && j < hi2
+			    && comp.compare(src[hi1 - 1], src[j]) > 0)
+			{
+				while (i < hi1 && j < hi2) {
+					if (comp.compare(src[j], src[i]) < 0) {
+						dst[k++] = src[j++];
+					} else {
+						dst[k++] = src[i++];
+					}
+				}
+			}
+			System.arraycopy(src, i, dst, k, hi1 - i);
+			System.arraycopy(src, j, dst, k + hi1 - i, hi2 - j);
+		}
+	}
+}
@@ -0,0 +1,170 @@
+package sort;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+import static java.lang.Math.min;
+import static sort.ComplexTimSort.THRESHOLD;
+
+/**
+ * Selects the k smallest elements of an array or a stream in sorted order,
+ * without sorting the rest. Up to {@link ComplexTimSort#THRESHOLD} elements
+ * are kept in a sorted prefix, and every element that beats the largest one
+ * kept is binary inserted into it. Elements that compare equal then keep
+ * their order. Larger selections are kept in a max-heap in O(n log k), and
+ * only the k survivors are sorted at the end. The order of equal elements is
+ * not kept in that case.
+ */
+public interface PartialSort {
+
+	/**
+	 * Rearranges an array so that its first k slots hold its k smallest
+	 * elements in sorted order. The rest of the array holds the other
+	 * elements in no particular order. When k is at least half the length of
+	 * the array, the whole array is sorted instead.
+	 * @param <T> the type of the array
+	 * @param arr the array to be partially sorted
+	 * @param k the number of elements to select
+	 * @param comp the comparator used to sort the array
+	 * @throws IllegalArgumentException if k is negative
+	 */
+	static <T> void partialSort(T[] arr, int k, Comparator<T> comp) {
+		checkK(k);
+		if (k == 0) {
+			return;
+		}
+		final int n = arr.length;
+		if (k >= n >>> 1) {
+			ComplexTimSort.sort(arr, comp);
+			return;
+		}
+
+		if (k <= THRESHOLD) {
+			ComplexTimSort.sort(arr, 0, k, comp);
+			for (int i = k; i < n; i++) {
+				final T element = arr[i];
+				if (comp.compare(element, arr[k - 1]) < 0) {
+					arr[i] = arr[k - 1];
+					insert(arr, k, element, comp);
+				}
+			}
+			return;
+		}
+
+		heapify(arr, k, comp);
+		for (int i = k; i < n; i++) {
+			final T element = arr[i];
+			if (comp.compare(element, arr[0]) < 0) {
+				arr[i] = arr[0];
+				siftDown(arr, 0, k, element, comp);
+			}
+		}
+		ComplexTimSort.sort(arr, 0, k, comp);
+	}
+
+	/**
+	 * Returns the k smallest elements of an iterator in sorted order, reading
+	 * it through once and holding no more than k elements at a time.
+	 * @param <T> the type of the elements
+	 * @param it the elements to select from
+	 * @param k the number of elements to select
+	 * @param comp the comparator used to order the elements
+	 * @return the k smallest elements, or all of them if there are fewer
+	 * @throws IllegalArgumentException if k is negative
+	 */
+	@SuppressWarnings("unchecked")
+	static <T> List<T> topK(Iterator<T> it, int k, Comparator<T> comp) {
+		checkK(k);
+		T[] kept = (T[]) new Object[min(k, THRESHOLD)];
+		int size = 0;
+		while (size < k && it.hasNext()) {
+			if (size == kept.length) {
+				kept = Arrays.copyOf(kept, (int) min(k, (long) size << 1));
+			}
+			kept[size++] = it.next();
+		}
+
+		if (k > 0 && size == k && it.hasNext()) {
+			if (k <= THRESHOLD) {
+				ComplexTimSort.sort(kept, comp);
+				while (it.hasNext()) {
+					final T element = it.next();
+					if (comp.compare(element, kept[k - 1]) < 0) {
+						insert(kept, k, element, comp);
+					}
+				}
+				return Arrays.asList(kept);
+			}
+			heapify(kept, k, comp);
+			while (it.hasNext()) {
+				final T element = it.next();
+				if (comp.compare(element, kept[0]) < 0) {
+					siftDown(kept, 0, k, element, comp);
+				}
+			}
+		}
+		ComplexTimSort.sort(kept, 0, size, comp);
+		return Arrays.asList(kept).subList(0, size);
+	}
+
+	private static void checkK(int k) {
+		if (k < 0) {
+			throw new IllegalArgumentException("k must not be negative: " + k);
+		}
+	}
+
+	/**
+	 * Inserts an element into the sorted prefix arr[0, k), after any equal
+	 * elements, dropping the last element of the prefix.
+	 */
+	private static <T> void insert(T[] arr, int k, T element,
+	                               Comparator<T> comp)
+	{
+		int left = 0;
+		int right = k - 1;
+		while (left < right) {
+			final int mid = (left + right) >>> 1;
+			if (comp.compare(element, arr[mid]) < 0) {
+				right = mid;
+			} else {
+				left = mid + 1;
+			}
+		}
+		System.arraycopy(arr, left, arr, left + 1, k - 1 - left);
+		arr[left] = element;
+	}
+
+	/**
+	 * Turns arr[0, size) into a max-heap.
+	 */
+	private static <T> void heapify(T[] arr, int size, Comparator<T> comp) {
+		for (int i = (size >>> 1) - 1; i >= 0; i--) {
+			siftDown(arr, i, size, arr[i], comp);
+		}
+	}
+
+	/**
+	 * Places an element in the hole at the given index of the max-heap
+	 * arr[0, size), moving it down past any larger children.
+	 */
+	private static <T> void siftDown(T[] arr, int hole, int size, T element,
+	                                 Comparator<T> comp)
+	{
+		int child;
+		while ((child = (hole << 1) + 1) < size) {
+			if (child + 1 < size
+			    && comp.compare(arr[child + 1], arr[child]) > 0)
+			{
+				child++;
+			}
+			if (comp.compare(arr[child], element) <= 0) {
+				break;
+			}
+			arr[hole] = arr[child];
+			hole = child;
+		}
+		arr[hole] = element;
+	}
+}
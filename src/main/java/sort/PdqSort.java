@@ -0,0 +1,289 @@
+package sort;
+
+import java.util.Comparator;
+
+/**
+ * The engine behind {@link OtherSorts#quickSort}: a pattern-defeating
+ * quicksort. It is an introsort at heart, quicksort with a median of three,
+ * or a ninther on large slices, for the pivot, insertion sort for small
+ * slices and heapsort once too many partitions have come out badly
+ * unbalanced, which bounds it at O(n log n). On top of that it
+ * <ul>
+ * <li>puts every element equal to the pivot of the enclosing partition on
+ * one side in a single pass when it sees such a pivot again, so runs of
+ * duplicates cost linear time;</li>
+ * <li>tries a bounded insertion sort on both halves of a partition that
+ * swapped nothing, which finishes sorted and nearly sorted input in linear
+ * time;</li>
+ * <li>swaps a few elements around after an unbalanced partition, which breaks
+ * up the patterns that would keep it unbalanced.</li>
+ * </ul>
+ * The smaller side of each partition is sorted by recursion and the larger
+ * one by the loop, so the stack stays O(log n) deep. The sort is in place
+ * and not stable.
+ */
+final class PdqSort<T> {
+	private static final int INSERTION_THRESHOLD = 24;
+	private static final int NINTHER_THRESHOLD = 128;
+	private static final int PARTIAL_INSERTION_LIMIT = 8;
+
+	private final T[] arr;
+	private final Comparator<T> comp;
+	private boolean alreadyPartitioned;
+
+	private PdqSort(T[] arr, Comparator<T> comp) {
+		this.arr = arr;
+		this.comp = comp;
+	}
+
+	/**
+	 * Sorts the given range of an array.
+	 * @param <T> the type of the array
+	 * @param arr the array to be sorted
+	 * @param lo the index of the first element, inclusive
+	 * @param hi the index of the last element, exclusive
+	 * @param comp the comparator used to sort the array
+	 */
+	static <T> void sort(T[] arr, int lo, int hi, Comparator<T> comp) {
+		final int length = hi - lo;
+		if (length < 2) {
+			return;
+		}
+		final int badAllowed = 31 - Integer.numberOfLeadingZeros(length);
+		new PdqSort<>(arr, comp).sort(lo, hi, badAllowed, true);
+	}
+
+	/**
+	 * Sorts arr[begin, end). Unless leftmost, arr[begin - 1] is the pivot of
+	 * an enclosing partition and no element of the range comes before it.
+	 */
+	private void sort(int begin, int end, int badAllowed, boolean leftmost) {
+		while (true) {
+			final int size = end - begin;
+			if (size < INSERTION_THRESHOLD) {
+				insertionSort(begin, end);
+				return;
+			}
+
+			final int half = size >>> 1;
+			if (size > NINTHER_THRESHOLD) {
+				sort3(begin, begin + half, end - 1);
+				sort3(begin + 1, begin + half - 1, end - 2);
+				sort3(begin + 2, begin + half + 1, end - 3);
+				sort3(begin + half - 1, begin + half, begin + half + 1);
+				swap(begin, begin + half);
+			} else {
+				sort3(begin + half, begin, end - 1);
+			}
+
+			// a pivot equal to the one bounding the range from the left is
+			// the smallest element of the range, so everything equal to it
+			// can be put in place at once
+			if (!leftmost && comp.compare(arr[begin - 1], arr[begin]) >= 0) {
+				begin = partitionLeft(begin, end) + 1;
+				continue;
+			}
+
+			final int pivot = partitionRight(begin, end);
+			final int leftSize = pivot - begin;
+			final int rightSize = end - (pivot + 1);
+			if (leftSize < size >>> 3 || rightSize < size >>> 3) {
+				if (--badAllowed == 0) {
+					heapSort(begin, end);
+					return;
+				}
+				if (leftSize >= INSERTION_THRESHOLD) {
+					final int quarter = leftSize >>> 2;
+					swap(begin, begin + quarter);
+					swap(pivot - 1, pivot - quarter);
+					if (leftSize > NINTHER_THRESHOLD) {
+						swap(begin + 1, begin + quarter + 1);
+						swap(begin + 2, begin + quarter + 2);
+						swap(pivot - 2, pivot - quarter - 1);
+						swap(pivot - 3, pivot - quarter - 2);
+					}
+				}
+				if (rightSize >= INSERTION_THRESHOLD) {
+					final int quarter = rightSize >>> 2;
+					swap(pivot + 1, pivot + 1 + quarter);
+					swap(end - 1, end - quarter);
+					if (rightSize > NINTHER_THRESHOLD) {
+						swap(pivot + 2, pivot + 2 + quarter);
+						swap(pivot + 3, pivot + 3 + quarter);
+						swap(end - 2, end - quarter - 1);
+						swap(end - 3, end - quarter - 2);
+					}
+				}
+			} else if (alreadyPartitioned
+			           && partialInsertionSort(begin, pivot)
+			           && partialInsertionSort(pivot + 1, end))
+			{
+				return;
+			}
+
+			if (leftSize <= rightSize) {
+				sort(begin, pivot, badAllowed, leftmost);
+				begin = pivot + 1;
+				leftmost = false;
+			} else {
+				sort(pivot + 1, end, badAllowed, false);
+				end = pivot;
+			}
+		}
+	}
+
+	/**
+	 * Partitions arr[begin, end) around the pivot at begin into the elements
+	 * that come before it and those that do not, and records whether nothing
+	 * had to be swapped. The caller guarantees that some element after begin
+	 * does not come before the pivot.
+	 * @return the final index of the pivot
+	 */
+	private int partitionRight(int begin, int end) {
+		final T pivot = arr[begin];
+		int first = begin;
+		int last = end;
+
+		while (comp.compare(arr[++first], pivot) < 0) {
+		}
+		if (first - 1 == begin) {
+			while (first < last && comp.compare(arr[--last], pivot) >= 0) {
+			}
+		} else {
+			// the element before first stops this scan
+			while (comp.compare(arr[--last], pivot) >= 0) {
+			}
+		}
+
+		alreadyPartitioned = first >= last;
+		while (first < last) {
+			swap(first, last);
+			while (comp.compare(arr[++first], pivot) < 0) {
+			}
+			while (comp.compare(arr[--last], pivot) >= 0) {
+			}
+		}
+
+		final int position = first - 1;
+		arr[begin] = arr[position];
+		arr[position] = pivot;
+		return position;
+	}
+
+	/**
+	 * Partitions arr[begin, end) around the pivot at begin into the elements
+	 * equal to it, which go left, and the elements that come after it.
+	 * @return the final index of the pivot
+	 */
+	private int partitionLeft(int begin, int end) {
+		final T pivot = arr[begin];
+		int first = begin;
+		int last = end;
+
+		while (comp.compare(pivot, arr[--last]) < 0) {
+		}
+		if (last + 1 == end) {
+			while (first < last && comp.compare(pivot, arr[++first]) >= 0) {
+			}
+		} else {
+			// the element after last stops this scan
+			while (comp.compare(pivot, arr[++first]) >= 0) {
+			}
+		}
+
+		while (first < last) {
+			swap(first, last);
+			while (comp.compare(pivot, arr[--last]) < 0) {
+			}
+			while (comp.compare(pivot, arr[++first]) >= 0) {
+			}
+		}
+
+		arr[begin] = arr[last];
+		arr[last] = pivot;
+		return last;
+	}
+
+	private void insertionSort(int begin, int end) {
+		for (int i = begin + 1; i < end; i++) {
+			final T element = arr[i];
+			int j = i;
+			while (j > begin && comp.compare(element, arr[j - 1]) < 0) {
+				arr[j] = arr[j - 1];
+				j--;
+			}
+			arr[j] = element;
+		}
+	}
+
+	/**
+	 * Insertion sorts arr[begin, end), giving up once more than
+	 * {@link #PARTIAL_INSERTION_LIMIT} elements have been moved.
+	 * @return whether the range is sorted
+	 */
+	private boolean partialInsertionSort(int begin, int end) {
+		int moved = 0;
+		for (int i = begin + 1; i < end; i++) {
+			if (moved > PARTIAL_INSERTION_LIMIT) {
+				return false;
+			}
+			final T element = arr[i];
+			int j = i;
+			while (j > begin && comp.compare(element, arr[j - 1]) < 0) {
+				arr[j] = arr[j - 1];
+				j--;
+			}
+			arr[j] = element;
+			moved += i - j;
+		}
+		return true;
+	}
+
+	private void heapSort(int begin, int end) {
+		final int size = end - begin;
+		for (int i = (size >>> 1) - 1; i >= 0; i--) {
+			siftDown(begin, i, size);
+		}
+		for (int last = size - 1; last > 0; last--) {
+			swap(begin, begin + last);
+			siftDown(begin, 0, last);
+		}
+	}
+
+	private void siftDown(int base, int hole, int size) {
+		final T element = arr[base + hole];
+		int child;
+		while ((child = (hole << 1) + 1) < size) {
+			if (child + 1 < size
+			    && comp.compare(arr[base + child], arr[base + child + 1]) < 0)
+			{
+				child++;
+			}
+			if (comp.compare(element, arr[base + child]) >= 0) {
+				break;
+			}
+			arr[base + hole] = arr[base + child];
+			hole = child;
+		}
+		arr[base + hole] = element;
+	}
+
+	/** Orders the elements at a, b and c, so that b holds their median. */
+	private void sort3(int a, int b, int c) {
+		sort2(a, b);
+		sort2(b, c);
+		sort2(a, b);
+	}
+
+	private void sort2(int a, int b) {
+		if (comp.compare(arr[b], arr[a]) < 0) {
+			swap(a, b);
+		}
+	}
+
+	private void swap(int i, int j) {
+		final T temp = arr[i];
+		arr[i] = arr[j];
+		arr[j] = temp;
+	}
+}
@@ -0,0 +1,29 @@
+package sort;
+
+/**
+ * The Powersort merge rule of Munro and Wild. The power of the boundary below
+ * each run is computed when the run is pushed; the runs either side of a
+ * boundary are merged as soon as a newer boundary with a lower power turns
+ * up, so the merges follow a nearly optimal binary merge tree.
+ */
+final class PowersortPolicy implements MergePolicy {
+
+	@Override
+	public int collapseIndex(TimSortContext runs) {
+		final int size = runs.runCount();
+		if (size > 2 && runs.runPower(size - 2) > runs.runPower(size - 1)) {
+			return size - 3;
+		}
+		return -1;
+	}
+
+	@Override
+	public int forceCollapseIndex(TimSortContext runs) {
+		return runs.runCount() - 2;
+	}
+
+	@Override
+	public String toString() {
+		return "Powersort";
+	}
+}
@@ -0,0 +1,1647 @@
+package sort;
+
+import static java.lang.Math.min;
+import static sort.ComplexTimSort.MIN_GALLOP;
+import static sort.ComplexTimSort.THRESHOLD;
+
+/**
+ * Primitive specializations of {@link ComplexTimSort}. Every overload follows
+ * the generic engine step for step, but reads the values straight out of the
+ * array and compares them with {@code <}, so nothing is ever boxed.
+ */
+final class PrimitiveTimSort {
+
+	private PrimitiveTimSort() {}
+
+	/**
+	 * Sorts the given range of a float array into ascending order. NaN values
+	 * are moved to the end, as they are not ordered by {@code <}, and -0.0f is
+	 * placed before 0.0f, matching {@link Float#compare}.
+	 * @param arr the array to be sorted
+	 * @param lo the index of the first element, inclusive
+	 * @param hi the index of the last element, exclusive
+	 * @param ctx the context holding the run stack and merge buffer
+	 */
+	static void sort(float[] arr, int lo, int hi, TimSortContext ctx) {
+		for (int i = hi - 1; i >= lo; i--) {
+			final float value = arr[i];
+			if (value != value) { // NaN
+				arr[i] = arr[--hi];
+				arr[hi] = value;
+			}
+		}
+		sortOrdered(arr, lo, hi, ctx);
+
+		int zero = lo;
+		int right = hi;
+		while (zero < right) {
+			final int mid = (zero + right) >>> 1;
+			if (arr[mid] < 0.0f) {
+				zero = mid + 1;
+			} else {
+				right = mid;
+			}
+		}
+		int negativeZeros = 0;
+		int end = zero;
+		for (; end < hi && arr[end] == 0.0f; end++) {
+			if (Float.floatToRawIntBits(arr[end]) < 0) {
+				negativeZeros++;
+			}
+		}
+		for (int i = zero; i < end; i++) {
+			arr[i] = i < zero + negativeZeros ? -0.0f : 0.0f;
+		}
+	}
+
+	/**
+	 * Sorts the given range of a double array into ascending order. NaN values
+	 * are moved to the end, as they are not ordered by {@code <}, and -0.0 is
+	 * placed before 0.0, matching {@link Double#compare}.
+	 * @param arr the array to be sorted
+	 * @param lo the index of the first element, inclusive
+	 * @param hi the index of the last element, exclusive
+	 * @param ctx the context holding the run stack and merge buffer
+	 */
+	static void sort(double[] arr, int lo, int hi, TimSortContext ctx) {
+		for (int i = hi - 1; i >= lo; i--) {
+			final double value = arr[i];
+			if (value != value) { // NaN
+				arr[i] = arr[--hi];
+				arr[hi] = value;
+			}
+		}
+		sortOrdered(arr, lo, hi, ctx);
+
+		int zero = lo;
+		int right = hi;
+		while (zero < right) {
+			final int mid = (zero + right) >>> 1;
+			if (arr[mid] < 0.0) {
+				zero = mid + 1;
+			} else {
+				right = mid;
+			}
+		}
+		int negativeZeros = 0;
+		int end = zero;
+		for (; end < hi && arr[end] == 0.0; end++) {
+			if (Double.doubleToRawLongBits(arr[end]) < 0) {
+				negativeZeros++;
+			}
+		}
+		for (int i = zero; i < end; i++) {
+			arr[i] = i < zero + negativeZeros ? -0.0 : 0.0;
+		}
+	}
+
+	/**
+	 * Sorts the given range of the array into ascending order.
+	 * @param arr the array to be sorted
+	 * @param lo the index of the first element, inclusive
+	 * @param hi the index of the last element, exclusive
+	 * @param ctx the context holding the run stack and merge buffer
+	 */
+	static void sort(int[] arr, int lo, int hi, TimSortContext ctx) {
+		int remaining = hi - lo;
+		if (remaining < 2) {
+			return;
+		}
+
+		if (remaining < THRESHOLD) {
+			final int startingRunLength = ascendThenCount(arr, lo, hi);
+			binarySort(arr, lo, hi, lo + startingRunLength);
+			return;
+		}
+
+		final int minRun = ObjectTimSort.runLength(remaining);
+		ctx.startRange(lo, hi);
+		while (remaining > 0) {
+			int runLength = ascendThenCount(arr, lo, hi);
+			if (runLength < minRun) {
+				final int force = min(remaining, minRun);
+				binarySort(arr, lo, lo + force, lo + runLength);
+				runLength = force;
+			}
+			ctx.pushRun(lo, runLength);
+			mergeCollapse(arr, ctx);
+			lo += runLength;
+			remaining -= runLength;
+		}
+
+		mergeForceCollapse(arr, ctx);
+	}
+
+	private static int ascendThenCount(int[] arr, int left, int right) {
+		int runRight = left + 1;
+		if (runRight == right) {
+			return 1;
+		}
+		if (arr[runRight] < arr[left]) {
+			while (runRight < right && arr[runRight] < arr[runRight - 1]) {
+				runRight++;
+			}
+			reverse(arr, left, runRight);
+		} else {
+			while (runRight < right && arr[runRight] >= arr[runRight - 1]) {
+				runRight++;
+			}
+		}
+		return runRight - left;
+	}
+
+	private static void reverse(int[] arr, int left, int right) {
+		right--;
+		while (left < right) {
+			final int temp = arr[left];
+			arr[left] = arr[right];
+			arr[right] = temp;
+			left++;
+			right--;
+		}
+	}
+
+	private static void binarySort(int[] arr, int lo, int hi, int start) {
+		if (start == lo) {
+			start++;
+		}
+		while (start < hi) {
+			final int pivot = arr[start];
+			int left = lo;
+			int right = start;
+			while (left < right) {
+				final int mid = (left + right) >>> 1;
+				if (pivot < arr[mid]) {
+					right = mid;
+				} else {
+					left = mid + 1;
+				}
+			}
+			System.arraycopy(arr, left, arr, left + 1, start - left);
+			arr[left] = pivot;
+			start++;
+		}
+	}
+
+	private static int gallopLeft(int[] arr, int base, int length, int hint,
+	                              int target)
+	{
+		int lastOffset = 0;
+		int offset = 1;
+		if (target > arr[base + hint]) {
+			final int maxOffset = length - hint;
+			while (offset < maxOffset && target > arr[base + hint + offset]) {
+				lastOffset = offset;
+				offset = (offset << 1) + 1; // offset * 2 + 1
+			}
+
+			if (offset > maxOffset) {
+				offset = maxOffset;
+			}
+
+			lastOffset += hint;
+			offset += hint;
+		} else {
+			final int maxOffset = hint + 1;
+			while (offset < maxOffset && target <= arr[base + hint - offset]) {
+				lastOffset = offset;
+				offset = (offset << 1) + 1; // offset * 2 + 1
+			}
+
+			if (offset > maxOffset) {
+				offset = maxOffset;
+			}
+
+			final int temp = lastOffset;
+			lastOffset = hint - offset;
+			offset = hint - temp;
+		}
+
+		lastOffset++;
+		while (lastOffset < offset) {
+			final int mid = (lastOffset + offset) >>> 1;
+			if (target > arr[base + mid]) {
+				lastOffset = mid + 1;
+			} else {
+				offset = mid;
+			}
+		}
+		return offset;
+	}
+
+	private static int gallopRight(int[] arr, int base, int length, int hint,
+	                               int target)
+	{
+		int lastOffset = 0;
+		int offset = 1;
+		if (target < arr[base + hint]) {
+			final int maxOffset = hint + 1;
+			while (offset < maxOffset && target < arr[base + hint - offset]) {
+				lastOffset = offset;
+				offset = (offset << 1) + 1; // offset * 2 + 1
+			}
+
+			if (offset > maxOffset) {
+				offset = maxOffset;
+			}
+
+			final int temp = lastOffset;
+			lastOffset = hint - offset;
+			offset = hint - temp;
+		} else {
+			final int maxOffset = length - hint;
+			while (offset < maxOffset && target >= arr[base + hint + offset]) {
+				lastOffset = offset;
+				offset = (offset << 1) + 1; // offset * 2 + 1
+			}
+
+			if (offset > maxOffset) {
+				offset = maxOffset;
+			}
+
+			lastOffset += hint;
+			offset += hint;
+		}
+
+		lastOffset++;
+		while (lastOffset < offset) {
+			final int mid = (lastOffset + offset) >>> 1;
+			if (target < arr[base + mid]) {
+				offset = mid;
+			} else {
+				lastOffset = mid + 1;
+			}
+		}
+		return offset;
+	}
+
+	private static void mergeLo(int[] arr, TimSortContext ctx, int l, int m,
+	                            int r)
+	{
+		final int length = m - l;
+		final int[] temp = ctx.intBuffer(length);
+		System.arraycopy(arr, l, temp, 0, length);
+		int minGallop = ctx.minGallop;
+		int i = l, j = m, k = 0;
+		boolean done = false;
+
+		while (!done) {
+			int count1 = 0;
+			int count2 = 0;
+			while ((count1 | count2) < minGallop) {
+				if (arr[j] < temp[k]) {
+					arr[i++] = arr[j++];
+					count1 = 0;
+					count2++;
+				} else {
+					arr[i++] = temp[k++];
+					count1++;
+					count2 = 0;
+				}
+
+				if (k == length || j == r) {
+					done = true;
+					break;
+				}
+			}
+
+			if (done) {
+				break;
+			}
+
+			while (count1 >= MIN_GALLOP || count2 >= MIN_GALLOP) {
+				count1 = gallopRight(temp, k, length - k, 0, arr[j]);
+				if (count1 != 0) {
+					System.arraycopy(temp, k, arr, i, count1);
+					i += count1;
+					k += count1;
+					if (k == length) {
+						done = true;
+						break;
+					}
+				}
+
+				arr[i++] = arr[j++];
+				if (j == r) {
+					done = true;
+					break;
+				}
+
+				count2 = gallopLeft(arr, j, r - j, 0, temp[k]);
+				if (count2 != 0) {
+					System.arraycopy(arr, j, arr, i, count2);
+					i += count2;
+					j += count2;
+					if (j == r) {
+						done = true;
+						break;
+					}
+				}
+
+				arr[i++] = temp[k++];
+				if (k == length) {
+					done = true;
+					break;
+				}
+
+				minGallop--;
+			}
+			if (minGallop < 0) {
+				minGallop = 0;
+			}
+			minGallop += 2;
+		}
+
+		if (k < length) {
+			System.arraycopy(temp, k, arr, i, length - k);
+		}
+		ctx.minGallop = minGallop;
+	}
+
+	private static void mergeHi(int[] arr, TimSortContext ctx, int l, int m,
+	                            int r)
+	{
+		final int[] temp = ctx.intBuffer(r - m);
+		System.arraycopy(arr, m, temp, 0, r - m);
+		int minGallop = ctx.minGallop;
+		int i = r - 1, j = m - 1, k = r - m - 1;
+		boolean done = false;
+
+		while (!done) {
+			int count1 = 0;
+			int count2 = 0;
+			while ((count1 | count2) < minGallop) {
+				if (temp[k] < arr[j]) {
+					arr[i--] = arr[j--];
+					count1++;
+					count2 = 0;
+				} else {
+					arr[i--] = temp[k--];
+					count1 = 0;
+					count2++;
+				}
+
+				if (k == -1 || j == l - 1) {
+					done = true;
+					break;
+				}
+			}
+
+			if (done) {
+				break;
+			}
+
+			while (count1 >= MIN_GALLOP || count2 >= MIN_GALLOP) {
+				count1 = j - l + 1 - gallopRight(arr, l, j - l + 1, j - l,
+				                                 temp[k]);
+				if (count1 != 0) {
+					final int gap = count1 - 1;
+					System.arraycopy(arr, j - gap, arr, i - gap, 1 + gap);
+					i -= count1;
+					j -= count1;
+					if (j == l - 1) {
+						done = true;
+						break;
+					}
+				}
+
+				arr[i--] = temp[k--];
+				if (k == -1) {
+					done = true;
+					break;
+				}
+
+				count2 = k + 1 - gallopLeft(temp, 0, k + 1, k, arr[j]);
+				if (count2 != 0) {
+					final int gap = count2 - 1;
+					System.arraycopy(temp, k - gap, arr, i - gap, 1 + gap);
+					i -= count2;
+					k -= count2;
+					if (k == -1) {
+						done = true;
+						break;
+					}
+				}
+
+				arr[i--] = arr[j--];
+				if (j == l - 1) {
+					done = true;
+					break;
+				}
+
+				minGallop--;
+			}
+			if (minGallop < 0) {
+				minGallop = 0;
+			}
+			minGallop += 2;
+		}
+
+		if (k >= 0) {
+			System.arraycopy(temp, 0, arr, l, k + 1);
+		}
+		ctx.minGallop = minGallop;
+	}
+
+	private static void mergeCollapse(int[] arr, TimSortContext ctx) {
+		int n;
+		while ((n = ctx.collapseIndex()) >= 0) {
+			mergeAt(arr, ctx, n);
+		}
+	}
+
+	private static void mergeAt(int[] arr, TimSortContext ctx, int index) {
+		int base1 = ctx.runBase[index], len1 = ctx.runLength[index];
+		final int base2 = ctx.runBase[index + 1];
+		int len2 = ctx.runLength[index + 1];
+		ctx.mergedAt(index);
+
+		final int offset = gallopRight(arr, base1, len1, 0, arr[base2]);
+		base1 += offset;
+		len1 -= offset;
+		if (len1 == 0) {
+			return;
+		}
+
+		len2 = gallopLeft(arr, base2, len2, len2 - 1, arr[base1 + len1 - 1]);
+		if (len2 == 0) {
+			return;
+		}
+		if (len1 <= len2) {
+			mergeLo(arr, ctx, base1, base2, base2 + len2);
+		} else {
+			mergeHi(arr, ctx, base1, base2, base2 + len2);
+		}
+	}
+
+	private static void mergeForceCollapse(int[] arr, TimSortContext ctx) {
+		int n;
+		while ((n = ctx.forceCollapseIndex()) >= 0) {
+			mergeAt(arr, ctx, n);
+		}
+	}
+
+	/**
+	 * Sorts the given range of the array into ascending order.
+	 * @param arr the array to be sorted
+	 * @param lo the index of the first element, inclusive
+	 * @param hi the index of the last element, exclusive
+	 * @param ctx the context holding the run stack and merge buffer
+	 */
+	static void sort(long[] arr, int lo, int hi, TimSortContext ctx) {
+		int remaining = hi - lo;
+		if (remaining < 2) {
+			return;
+		}
+
+		if (remaining < THRESHOLD) {
+			final int startingRunLength = ascendThenCount(arr, lo, hi);
+			binarySort(arr, lo, hi, lo + startingRunLength);
+			return;
+		}
+
+		final int minRun = ObjectTimSort.runLength(remaining);
+		ctx.startRange(lo, hi);
+		while (remaining > 0) {
+			int runLength = ascendThenCount(arr, lo, hi);
+			if (runLength < minRun) {
+				final int force = min(remaining, minRun);
+				binarySort(arr, lo, lo + force, lo + runLength);
+				runLength = force;
+			}
+			ctx.pushRun(lo, runLength);
+			mergeCollapse(arr, ctx);
+			lo += runLength;
+			remaining -= runLength;
+		}
+
+		mergeForceCollapse(arr, ctx);
+	}
+
+	private static int ascendThenCount(long[] arr, int left, int right) {
+		int runRight = left + 1;
+		if (runRight == right) {
+			return 1;
+		}
+		if (arr[runRight] < arr[left]) {
+			while (runRight < right && arr[runRight] < arr[runRight - 1]) {
+				runRight++;
+			}
+			reverse(arr, left, runRight);
+		} else {
+			while (runRight < right && arr[runRight] >= arr[runRight - 1]) {
+				runRight++;
+			}
+		}
+		return runRight - left;
+	}
+
+	private static void reverse(long[] arr, int left, int right) {
+		right--;
+		while (left < right) {
+			final long temp = arr[left];
+			arr[left] = arr[right];
+			arr[right] = temp;
+			left++;
+			right--;
+		}
+	}
+
+	private static void binarySort(long[] arr, int lo, int hi, int start) {
+		if (start == lo) {
+			start++;
+		}
+		while (start < hi) {
+			final long pivot = arr[start];
+			int left = lo;
+			int right = start;
+			while (left < right) {
+				final int mid = (left + right) >>> 1;
+				if (pivot < arr[mid]) {
+					right = mid;
+				} else {
+					left = mid + 1;
+				}
+			}
+			System.arraycopy(arr, left, arr, left + 1, start - left);
+			arr[left] = pivot;
+			start++;
+		}
+	}
+
+	private static int gallopLeft(long[] arr, int base, int length, int hint,
+	                              long target)
+	{
+		int lastOffset = 0;
+		int offset = 1;
+		if (target > arr[base + hint]) {
+			final int maxOffset = length - hint;
+			while (offset < maxOffset && target > arr[base + hint + offset]) {
+				lastOffset = offset;
+				offset = (offset << 1) + 1; // offset * 2 + 1
+			}
+
+			if (offset > maxOffset) {
+				offset = maxOffset;
+			}
+
+			lastOffset += hint;
+			offset += hint;
+		} else {
+			final int maxOffset = hint + 1;
+			while (offset < maxOffset && target <= arr[base + hint - offset]) {
+				lastOffset = offset;
+				offset = (offset << 1) + 1; // offset * 2 + 1
+			}
+
+			if (offset > maxOffset) {
+				offset = maxOffset;
+			}
+
+			final int temp = lastOffset;
+			lastOffset = hint - offset;
+			offset = hint - temp;
+		}
+
+		lastOffset++;
+		while (lastOffset < offset) {
+			final int mid = (lastOffset + offset) >>> 1;
+			if (target > arr[base + mid]) {
+				lastOffset = mid + 1;
+			} else {
+				offset = mid;
+			}
+		}
+		return offset;
+	}
+
+	private static int gallopRight(long[] arr, int base, int length, int hint,
+	                               long target)
+	{
+		int lastOffset = 0;
+		int offset = 1;
+		if (target < arr[base + hint]) {
+			final int maxOffset = hint + 1;
+			while (offset < maxOffset && target < arr[base + hint - offset]) {
+				lastOffset = offset;
+				offset = (offset << 1) + 1; // offset * 2 + 1
+			}
+
+			if (offset > maxOffset) {
+				offset = maxOffset;
+			}
+
+			final int temp = lastOffset;
+			lastOffset = hint - offset;
+			offset = hint - temp;
+		} else {
+			final int maxOffset = length - hint;
+			while (offset < maxOffset && target >= arr[base + hint + offset]) {
+				lastOffset = offset;
+				offset = (offset << 1) + 1; // offset * 2 + 1
+			}
+
+			if (offset > maxOffset) {
+				offset = maxOffset;
+			}
+
+			lastOffset += hint;
+			offset += hint;
+		}
+
+		lastOffset++;
+		while (lastOffset < offset) {
+			final int mid = (lastOffset + offset) >>> 1;
+			if (target < arr[base + mid]) {
+				offset = mid;
+			} else {
+				lastOffset = mid + 1;
+			}
+		}
+		return offset;
+	}
+
+	private static void mergeLo(long[] arr, TimSortContext ctx, int l, int m,
+	                            int r)
+	{
+		final int length = m - l;
+		final long[] temp = ctx.longBuffer(length);
+		System.arraycopy(arr, l, temp, 0, length);
+		int minGallop = ctx.minGallop;
+		int i = l, j = m, k = 0;
+		boolean done = false;
+
+		while (!done) {
+			int count1 = 0;
+			int count2 = 0;
+			while ((count1 | count2) < minGallop) {
+				if (arr[j] < temp[k]) {
+					arr[i++] = arr[j++];
+					count1 = 0;
+					count2++;
+				} else {
+					arr[i++] = temp[k++];
+					count1++;
+					count2 = 0;
+				}
+
+				if (k == length || j == r) {
+					done = true;
+					break;
+				}
+			}
+
+			if (done) {
+				break;
+			}
+
+			while (count1 >= MIN_GALLOP || count2 >= MIN_GALLOP) {
+				count1 = gallopRight(temp, k, length - k, 0, arr[j]);
+				if (count1 != 0) {
+					System.arraycopy(temp, k, arr, i, count1);
+					i += count1;
+					k += count1;
+					if (k == length) {
+						done = true;
+						break;
+					}
+				}
+
+				arr[i++] = arr[j++];
+				if (j == r) {
+					done = true;
+					break;
+				}
+
+				count2 = gallopLeft(arr, j, r - j, 0, temp[k]);
+				if (count2 != 0) {
+					System.arraycopy(arr, j, arr, i, count2);
+					i += count2;
+					j += count2;
+					if (j == r) {
+						done = true;
+						break;
+					}
+				}
+
+				arr[i++] = temp[k++];
+				if (k == length) {
+					done = true;
+					break;
+				}
+
+				minGallop--;
+			}
+			if (minGallop < 0) {
+				minGallop = 0;
+			}
+			minGallop += 2;
+		}
+
+		if (k < length) {
+			System.arraycopy(temp, k, arr, i, length - k);
+		}
+		ctx.minGallop = minGallop;
+	}
+
+	private static void mergeHi(long[] arr, TimSortContext ctx, int l, int m,
+	                            int r)
+	{
+		final long[] temp = ctx.longBuffer(r - m);
+		System.arraycopy(arr, m, temp, 0, r - m);
+		int minGallop = ctx.minGallop;
+		int i = r - 1, j = m - 1, k = r - m - 1;
+		boolean done = false;
+
+		while (!done) {
+			int count1 = 0;
+			int count2 = 0;
+			while ((count1 | count2) < minGallop) {
+				if (temp[k] < arr[j]) {
+					arr[i--] = arr[j--];
+					count1++;
+					count2 = 0;
+				} else {
+					arr[i--] = temp[k--];
+					count1 = 0;
+					count2++;
+				}
+
+				if (k == -1 || j == l - 1) {
+					done = true;
+					break;
+				}
+			}
+
+			if (done) {
+				break;
+			}
+
+			while (count1 >= MIN_GALLOP || count2 >= MIN_GALLOP) {
+				count1 = j - l + 1 - gallopRight(arr, l, j - l + 1, j - l,
+				                                 temp[k]);
+				if (count1 != 0) {
+					final int gap = count1 - 1;
+					System.arraycopy(arr, j - gap, arr, i - gap, 1 + gap);
+					i -= count1;
+					j -= count1;
+					if (j == l - 1) {
+						done = true;
+						break;
+					}
+				}
+
+				arr[i--] = temp[k--];
+				if (k == -1) {
+					done = true;
+					break;
+				}
+
+				count2 = k + 1 - gallopLeft(temp, 0, k + 1, k, arr[j]);
+				if (count2 != 0) {
+					final int gap = count2 - 1;
+					System.arraycopy(temp, k - gap, arr, i - gap, 1 + gap);
+					i -= count2;
+					k -= count2;
+					if (k == -1) {
+						done = true;
+						break;
+					}
+				}
+
+				arr[i--] = arr[j--];
+				if (j == l - 1) {
+					done = true;
+					break;
+				}
+
+				minGallop--;
+			}
+			if (minGallop < 0) {
+				minGallop = 0;
+			}
+			minGallop += 2;
+		}
+
+		if (k >= 0) {
+			System.arraycopy(temp, 0, arr, l, k + 1);
+		}
+		ctx.minGallop = minGallop;
+	}
+
+	private static void mergeCollapse(long[] arr, TimSortContext ctx) {
+		int n;
+		while ((n = ctx.collapseIndex()) >= 0) {
+			mergeAt(arr, ctx, n);
+		}
+	}
+
+	private static void mergeAt(long[] arr, TimSortContext ctx, int index) {
+		int base1 = ctx.runBase[index], len1 = ctx.runLength[index];
+		final int base2 = ctx.runBase[index + 1];
+		int len2 = ctx.runLength[index + 1];
+		ctx.mergedAt(index);
+
+		final int offset = gallopRight(arr, base1, len1, 0, arr[base2]);
+		base1 += offset;
+		len1 -= offset;
+		if (len1 == 0) {
+			return;
+		}
+
+		len2 = gallopLeft(arr, base2, len2, len2 - 1, arr[base1 + len1 - 1]);
+		if (len2 == 0) {
+			return;
+		}
+		if (len1 <= len2) {
+			mergeLo(arr, ctx, base1, base2, base2 + len2);
+		} else {
+			mergeHi(arr, ctx, base1, base2, base2 + len2);
+		}
+	}
+
+	private static void mergeForceCollapse(long[] arr, TimSortContext ctx) {
+		int n;
+		while ((n = ctx.forceCollapseIndex()) >= 0) {
+			mergeAt(arr, ctx, n);
+		}
+	}
+
+	/**
+	 * Sorts the given range of the array, which holds no NaN values, into
+	 * ascending order under {@code <}.
+	 * @param arr the array to be sorted
+	 * @param lo the index of the first element, inclusive
+	 * @param hi the index of the last element, exclusive
+	 * @param ctx the context holding the run stack and merge buffer
+	 */
+	private static void sortOrdered(float[] arr, int lo, int hi,
+	                                TimSortContext ctx)
+	{
+		int remaining = hi - lo;
+		if (remaining < 2) {
+			return;
+		}
+
+		if (remaining < THRESHOLD) {
+			final int startingRunLength = ascendThenCount(arr, lo, hi);
+			binarySort(arr, lo, hi, lo + startingRunLength);
+			return;
+		}
+
+		final int minRun = ObjectTimSort.runLength(remaining);
+		ctx.startRange(lo, hi);
+		while (remaining > 0) {
+			int runLength = ascendThenCount(arr, lo, hi);
+			if (runLength < minRun) {
+				final int force = min(remaining, minRun);
+				binarySort(arr, lo, lo + force, lo + runLength);
+				runLength = force;
+			}
+			ctx.pushRun(lo, runLength);
+			mergeCollapse(arr, ctx);
+			lo += runLength;
+			remaining -= runLength;
+		}
+
+		mergeForceCollapse(arr, ctx);
+	}
+
+	private static int ascendThenCount(float[] arr, int left, int right) {
+		int runRight = left + 1;
+		if (runRight == right) {
+			return 1;
+		}
+		if (arr[runRight] < arr[left]) {
+			while (runRight < right && arr[runRight] < arr[runRight - 1]) {
+				runRight++;
+			}
+			reverse(arr, left, runRight);
+		} else {
+			while (runRight < right && arr[runRight] >= arr[runRight - 1]) {
+				runRight++;
+			}
+		}
+		return runRight - left;
+	}
+
+	private static void reverse(float[] arr, int left, int right) {
+		right--;
+		while (left < right) {
+			final float temp = arr[left];
+			arr[left] = arr[right];
+			arr[right] = temp;
+			left++;
+			right--;
+		}
+	}
+
+	private static void binarySort(float[] arr, int lo, int hi, int start) {
+		if (start == lo) {
+			start++;
+		}
+		while (start < hi) {
+			final float pivot = arr[start];
+			int left = lo;
+			int right = start;
+			while (left < right) {
+				final int mid = (left + right) >>> 1;
+				if (pivot < arr[mid]) {
+					right = mid;
+				} else {
+					left = mid + 1;
+				}
+			}
+			System.arraycopy(arr, left, arr, left + 1, start - left);
+			arr[left] = pivot;
+			start++;
+		}
+	}
+
+	private static int gallopLeft(float[] arr, int base, int length, int hint,
+	                              float target)
+	{
+		int lastOffset = 0;
+		int offset = 1;
+		if (target > arr[base + hint]) {
+			final int maxOffset = length - hint;
+			while (offset < maxOffset && target > arr[base + hint + offset]) {
+				lastOffset = offset;
+				offset = (offset << 1) + 1; // offset * 2 + 1
+			}
+
+			if (offset > maxOffset) {
+				offset = maxOffset;
+			}
+
+			lastOffset += hint;
+			offset += hint;
+		} else {
+			final int maxOffset = hint + 1;
+			while (offset < maxOffset && target <= arr[base + hint - offset]) {
+				lastOffset = offset;
+				offset = (offset << 1) + 1; // offset * 2 + 1
+			}
+
+			if (offset > maxOffset) {
+				offset = maxOffset;
+			}
+
+			final int temp = lastOffset;
+			lastOffset = hint - offset;
+			offset = hint - temp;
+		}
+
+		lastOffset++;
+		while (lastOffset < offset) {
+			final int mid = (lastOffset + offset) >>> 1;
+			if (target > arr[base + mid]) {
+				lastOffset = mid + 1;
+			} else {
+				offset = mid;
+			}
+		}
+		return offset;
+	}
+
+	private static int gallopRight(float[] arr, int base, int length, int hint,
+	                               float target)
+	{
+		int lastOffset = 0;
+		int offset = 1;
+		if (target < arr[base + hint]) {
+			final int maxOffset = hint + 1;
+			while (offset < maxOffset && target < arr[base + hint - offset]) {
+				lastOffset = offset;
+				offset = (offset << 1) + 1; // offset * 2 + 1
+			}
+
+			if (offset > maxOffset) {
+				offset = maxOffset;
+			}
+
+			final int temp = lastOffset;
+			lastOffset = hint - offset;
+			offset = hint - temp;
+		} else {
+			final int maxOffset = length - hint;
+			while (offset < maxOffset && target >= arr[base + hint + offset]) {
+				lastOffset = offset;
+				offset = (offset << 1) + 1; // offset * 2 + 1
+			}
+
+			if (offset > maxOffset) {
+				offset = maxOffset;
+			}
+
+			lastOffset += hint;
+			offset += hint;
+		}
+
+		lastOffset++;
+		while (lastOffset < offset) {
+			final int mid = (lastOffset + offset) >>> 1;
+			if (target < arr[base + mid]) {
+				offset = mid;
+			} else {
+				lastOffset = mid + 1;
+			}
+		}
+		return offset;
+	}
+
+	private static void mergeLo(float[] arr, TimSortContext ctx, int l, int m,
+	                            int r)
+	{
+		final int length = m - l;
+		final float[] temp = ctx.floatBuffer(length);
+		System.arraycopy(arr, l, temp, 0, length);
+		int minGallop = ctx.minGallop;
+		int i = l, j = m, k = 0;
+		boolean done = false;
+
+		while (!done) {
+			int count1 = 0;
+			int count2 = 0;
+			while ((count1 | count2) < minGallop) {
+				if (arr[j] < temp[k]) {
+					arr[i++] = arr[j++];
+					count1 = 0;
+					count2++;
+				} else {
+					arr[i++] = temp[k++];
+					count1++;
+					count2 = 0;
+				}
+
+				if (k == length || j == r) {
+					done = true;
+					break;
+				}
+			}
+
+			if (done) {
+				break;
+			}
+
+			while (count1 >= MIN_GALLOP || count2 >= MIN_GALLOP) {
+				count1 = gallopRight(temp, k, length - k, 0, arr[j]);
+				if (count1 != 0) {
+					System.arraycopy(temp, k, arr, i, count1);
+					i += count1;
+					k += count1;
+					if (k == length) {
+						done = true;
+						break;
+					}
+				}
+
+				arr[i++] = arr[j++];
+				if (j == r) {
+					done = true;
+					break;
+				}
+
+				count2 = gallopLeft(arr, j, r - j, 0, temp[k]);
+				if (count2 != 0) {
+					System.arraycopy(arr, j, arr, i, count2);
+					i += count2;
+					j += count2;
+					if (j == r) {
+						done = true;
+						break;
+					}
+				}
+
+				arr[i++] = temp[k++];
+				if (k == length) {
+					done = true;
+					break;
+				}
+
+				minGallop--;
+			}
+			if (minGallop < 0) {
+				minGallop = 0;
+			}
+			minGallop += 2;
+		}
+
+		if (k < length) {
+			System.arraycopy(temp, k, arr, i, length - k);
+		}
+		ctx.minGallop = minGallop;
+	}
+
+	private static void mergeHi(float[] arr, TimSortContext ctx, int l, int m,
+	                            int r)
+	{
+		final float[] temp = ctx.floatBuffer(r - m);
+		System.arraycopy(arr, m, temp, 0, r - m);
+		int minGallop = ctx.minGallop;
+		int i = r - 1, j = m - 1, k = r - m - 1;
+		boolean done = false;
+
+		while (!done) {
+			int count1 = 0;
+			int count2 = 0;
+			while ((count1 | count2) < minGallop) {
+				if (temp[k] < arr[j]) {
+					arr[i--] = arr[j--];
+					count1++;
+					count2 = 0;
+				} else {
+					arr[i--] = temp[k--];
+					count1 = 0;
+					count2++;
+				}
+
+				if (k == -1 || j == l - 1) {
+					done = true;
+					break;
+				}
+			}
+
+			if (done) {
+				break;
+			}
+
+			while (count1 >= MIN_GALLOP || count2 >= MIN_GALLOP) {
+				count1 = j - l + 1 - gallopRight(arr, l, j - l + 1, j - l,
+				                                 temp[k]);
+				if (count1 != 0) {
+					final int gap = count1 - 1;
+					System.arraycopy(arr, j - gap, arr, i - gap, 1 + gap);
+					i -= count1;
+					j -= count1;
+					if (j == l - 1) {
+						done = true;
+						break;
+					}
+				}
+
+				arr[i--] = temp[k--];
+				if (k == -1) {
+					done = true;
+					break;
+				}
+
+				count2 = k + 1 - gallopLeft(temp, 0, k + 1, k, arr[j]);
+				if (count2 != 0) {
+					final int gap = count2 - 1;
+					System.arraycopy(temp, k - gap, arr, i - gap, 1 + gap);
+					i -= count2;
+					k -= count2;
+					if (k == -1) {
+						done = true;
+						break;
+					}
+				}
+
+				arr[i--] = arr[j--];
+				if (j == l - 1) {
+					done = true;
+					break;
+				}
+
+				minGallop--;
+			}
+			if (minGallop < 0) {
+				minGallop = 0;
+			}
+			minGallop += 2;
+		}
+
+		if (k >= 0) {
+			System.arraycopy(temp, 0, arr, l, k + 1);
+		}
+		ctx.minGallop = minGallop;
+	}
+
+	private static void mergeCollapse(float[] arr, TimSortContext ctx) {
+		int n;
+		while ((n = ctx.collapseIndex()) >= 0) {
+			mergeAt(arr, ctx, n);
+		}
+	}
+
+	private static void mergeAt(float[] arr, TimSortContext ctx, int index) {
+		int base1 = ctx.runBase[index], len1 = ctx.runLength[index];
+		final int base2 = ctx.runBase[index + 1];
+		int len2 = ctx.runLength[index + 1];
+		ctx.mergedAt(index);
+
+		final int offset = gallopRight(arr, base1, len1, 0, arr[base2]);
+		base1 += offset;
+		len1 -= offset;
+		if (len1 == 0) {
+			return;
+		}
+
+		len2 = gallopLeft(arr, base2, len2, len2 - 1, arr[base1 + len1 - 1]);
+		if (len2 == 0) {
+			return;
+		}
+		if (len1 <= len2) {
+			mergeLo(arr, ctx, base1, base2, base2 + len2);
+		} else {
+			mergeHi(arr, ctx, base1, base2, base2 + len2);
+		}
+	}
+
+	private static void mergeForceCollapse(float[] arr, TimSortContext ctx) {
+		int n;
+		while ((n = ctx.forceCollapseIndex()) >= 0) {
+			mergeAt(arr, ctx, n);
+		}
+	}
+
+	/**
+	 * Sorts the given range of the array, which holds no NaN values, into
+	 * ascending order under {@code <}.
+	 * @param arr the array to be sorted
+	 * @param lo the index of the first element, inclusive
+	 * @param hi the index of the last element, exclusive
+	 * @param ctx the context holding the run stack and merge buffer
+	 */
+	private static void sortOrdered(double[] arr, int lo, int hi,
+	                                TimSortContext ctx)
+	{
+		int remaining = hi - lo;
+		if (remaining < 2) {
+			return;
+		}
+
+		if (remaining < THRESHOLD) {
+			final int startingRunLength = ascendThenCount(arr, lo, hi);
+			binarySort(arr, lo, hi, lo + startingRunLength);
+			return;
+		}
+
+		final int minRun = ObjectTimSort.runLength(remaining);
+		ctx.startRange(lo, hi);
+		while (remaining > 0) {
+			int runLength = ascendThenCount(arr, lo, hi);
+			if (runLength < minRun) {
+				final int force = min(remaining, minRun);
+				binarySort(arr, lo, lo + force, lo + runLength);
+				runLength = force;
+			}
+			ctx.pushRun(lo, runLength);
+			mergeCollapse(arr, ctx);
+			lo += runLength;
+			remaining -= runLength;
+		}
+
+		mergeForceCollapse(arr, ctx);
+	}
+
+	private static int ascendThenCount(double[] arr, int left, int right) {
+		int runRight = left + 1;
+		if (runRight == right) {
+			return 1;
+		}
+		if (arr[runRight] < arr[left]) {
+			while (runRight < right && arr[runRight] < arr[runRight - 1]) {
+				runRight++;
+			}
+			reverse(arr, left, runRight);
+		} else {
+			while (runRight < right && arr[runRight] >= arr[runRight - 1]) {
+				runRight++;
+			}
+		}
+		return runRight - left;
+	}
+
+	private static void reverse(double[] arr, int left, int right) {
+		right--;
+		while (left < right) {
+			final double temp = arr[left];
+			arr[left] = arr[right];
+			arr[right] = temp;
+			left++;
+			right--;
+		}
+	}
+
+	private static void binarySort(double[] arr, int lo, int hi, int start) {
+		if (start == lo) {
+			start++;
+		}
+		while (start < hi) {
+			final double pivot = arr[start];
+			int left = lo;
+			int right = start;
+			while (left < right) {
+				final int mid = (left + right) >>> 1;
+				if (pivot < arr[mid]) {
+					right = mid;
+				} else {
+					left = mid + 1;
+				}
+			}
+			System.arraycopy(arr, left, arr, left + 1, start - left);
+			arr[left] = pivot;
+			start++;
+		}
+	}
+
+	private static int gallopLeft(double[] arr, int base, int length, int hint,
+	                              double target)
+	{
+		int lastOffset = 0;
+		int offset = 1;
+		if (target > arr[base + hint]) {
+			final int maxOffset = length - hint;
+			while (offset < maxOffset && target > arr[base + hint + offset]) {
+				lastOffset = offset;
+				offset = (offset << 1) + 1; // offset * 2 + 1
+			}
+
+			if (offset > maxOffset) {
+				offset = maxOffset;
+			}
+
+			lastOffset += hint;
+			offset += hint;
+		} else {
+			final int maxOffset = hint + 1;
+			while (offset < maxOffset && target <= arr[base + hint - offset]) {
+				lastOffset = offset;
+				offset = (offset << 1) + 1; // offset * 2 + 1
+			}
+
+			if (offset > maxOffset) {
+				offset = maxOffset;
+			}
+
+			final int temp = lastOffset;
+			lastOffset = hint - offset;
+			offset = hint - temp;
+		}
+
+		lastOffset++;
+		while (lastOffset < offset) {
+			final int mid = (lastOffset + offset) >>> 1;
+			if (target > arr[base + mid]) {
+				lastOffset = mid + 1;
+			} else {
+				offset = mid;
+			}
+		}
+		return offset;
+	}
+
+	private static int gallopRight(double[] arr, int base, int length, int hint,
+	                               double target)
+	{
+		int lastOffset = 0;
+		int offset = 1;
+		if (target < arr[base + hint]) {
+			final int maxOffset = hint + 1;
+			while (offset < maxOffset && target < arr[base + hint - offset]) {
+				lastOffset = offset;
+				offset = (offset << 1) + 1; // offset * 2 + 1
+			}
+
+			if (offset > maxOffset) {
+				offset = maxOffset;
+			}
+
+			final int temp = lastOffset;
+			lastOffset = hint - offset;
+			offset = hint - temp;
+		} else {
+			final int maxOffset = length - hint;
+			while (offset < maxOffset && target >= arr[base + hint + offset]) {
+				lastOffset = offset;
+				offset = (offset << 1) + 1; // offset * 2 + 1
+			}
+
+			if (offset > maxOffset) {
+				offset = maxOffset;
+			}
+
+			lastOffset += hint;
+			offset += hint;
+		}
+
+		lastOffset++;
+		while (lastOffset < offset) {
+			final int mid = (lastOffset + offset) >>> 1;
+			if (target < arr[base + mid]) {
+				offset = mid;
+			} else {
+				lastOffset = mid + 1;
+			}
+		}
+		return offset;
+	}
+
+	private static void mergeLo(double[] arr, TimSortContext ctx, int l, int m,
+	                            int r)
+	{
+		final int length = m - l;
+		final double[] temp = ctx.doubleBuffer(length);
+		System.arraycopy(arr, l, temp, 0, length);
+		int minGallop = ctx.minGallop;
+		int i = l, j = m, k = 0;
+		boolean done = false;
+
+		while (!done) {
+			int count1 = 0;
+			int count2 = 0;
+			while ((count1 | count2) < minGallop) {
+				if (arr[j] < temp[k]) {
+					arr[i++] = arr[j++];
+					count1 = 0;
+					count2++;
+				} else {
+					arr[i++] = temp[k++];
+					count1++;
+					count2 = 0;
+				}
+
+				if (k == length || j == r) {
+					done = true;
+					break;
+				}
+			}
+
+			if (done) {
+				break;
+			}
+
+			while (count1 >= MIN_GALLOP || count2 >= MIN_GALLOP) {
+				count1 = gallopRight(temp, k, length - k, 0, arr[j]);
+				if (count1 != 0) {
+					System.arraycopy(temp, k, arr, i, count1);
+					i += count1;
+					k += count1;
+					if (k == length) {
+						done = true;
+						break;
+					}
+				}
+
+				arr[i++] = arr[j++];
+				if (j == r) {
+					done = true;
+					break;
+				}
+
+				count2 = gallopLeft(arr, j, r - j, 0, temp[k]);
+				if (count2 != 0) {
+					System.arraycopy(arr, j, arr, i, count2);
+					i += count2;
+					j += count2;
+					if (j == r) {
+						done = true;
+						break;
+					}
+				}
+
+				arr[i++] = temp[k++];
+				if (k == length) {
+					done = true;
+					break;
+				}
+
+				minGallop--;
+			}
+			if (minGallop < 0) {
+				minGallop = 0;
+			}
+			minGallop += 2;
+		}
+
+		if (k < length) {
+			System.arraycopy(temp, k, arr, i, length - k);
+		}
+		ctx.minGallop = minGallop;
+	}
+
+	private static void mergeHi(double[] arr, TimSortContext ctx, int l, int m,
+	                            int r)
+	{
+		final double[] temp = ctx.doubleBuffer(r - m);
+		System.arraycopy(arr, m, temp, 0, r - m);
+		int minGallop = ctx.minGallop;
+		int i = r - 1, j = m - 1, k = r - m - 1;
+		boolean done = false;
+
+		while (!done) {
+			int count1 = 0;
+			int count2 = 0;
+			while ((count1 | count2) < minGallop) {
+				if (temp[k] < arr[j]) {
+					arr[i--] = arr[j--];
+					count1++;
+					count2 = 0;
+				} else {
+					arr[i--] = temp[k--];
+					count1 = 0;
+					count2++;
+				}
+
+				if (k == -1 || j == l - 1) {
+					done = true;
+					break;
+				}
+			}
+
+			if (done) {
+				break;
+			}
+
+			while (count1 >= MIN_GALLOP || count2 >= MIN_GALLOP) {
+				count1 = j - l + 1 - gallopRight(arr, l, j - l + 1, j - l,
+				                                 temp[k]);
+				if (count1 != 0) {
+					final int gap = count1 - 1;
+					System.arraycopy(arr, j - gap, arr, i - gap, 1 + gap);
+					i -= count1;
+					j -= count1;
+					if (j == l - 1) {
+						done = true;
+						break;
+					}
+				}
+
+				arr[i--] = temp[k--];
+				if (k == -1) {
+					done = true;
+					break;
+				}
+
+				count2 = k + 1 - gallopLeft(temp, 0, k + 1, k, arr[j]);
+				if (count2 != 0) {
+					final int gap = count2 - 1;
+					System.arraycopy(temp, k - gap, arr, i - gap, 1 + gap);
+					i -= count2;
+					k -= count2;
+					if (k == -1) {
+						done = true;
+						break;
+					}
+				}
+
+				arr[i--] = arr[j--];
+				if (j == l - 1) {
+					done = true;
+					break;
+				}
+
+				minGallop--;
+			}
+			if (minGallop < 0) {
+				minGallop = 0;
+			}
+			minGallop += 2;
+		}
+
+		if (k >= 0) {
+			System.arraycopy(temp, 0, arr, l, k + 1);
+		}
+		ctx.minGallop = minGallop;
+	}
+
+	private static void mergeCollapse(double[] arr, TimSortContext ctx) {
+		int n;
+		while ((n = ctx.collapseIndex()) >= 0) {
+			mergeAt(arr, ctx, n);
+		}
+	}
+
+	private static void mergeAt(double[] arr, TimSortContext ctx, int index) {
+		int base1 = ctx.runBase[index], len1 = ctx.runLength[index];
+		final int base2 = ctx.runBase[index + 1];
+		int len2 = ctx.runLength[index + 1];
+		ctx.mergedAt(index);
+
+		final int offset = gallopRight(arr, base1, len1, 0, arr[base2]);
+		base1 += offset;
+		len1 -= offset;
+		if (len1 == 0) {
+			return;
+		}
+
+		len2 = gallopLeft(arr, base2, len2, len2 - 1, arr[base1 + len1 - 1]);
+		if (len2 == 0) {
+			return;
+		}
+		if (len1 <= len2) {
+			mergeLo(arr, ctx, base1, base2, base2 + len2);
+		} else {
+			mergeHi(arr, ctx, base1, base2, base2 + len2);
+		}
+	}
+
+	private static void mergeForceCollapse(double[] arr, TimSortContext ctx) {
+		int n;
+		while ((n = ctx.forceCollapseIndex()) >= 0) {
+			mergeAt(arr, ctx, n);
+		}
+	}
+}
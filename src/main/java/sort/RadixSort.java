@@ -0,0 +1,347 @@
+package sort;
+
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * Least significant digit radix sorts for primitive arrays and for objects
+ * with an int or long key. Keys are sorted one byte at a time, from the
+ * lowest byte up, by scattering them between the array and a buffer taken
+ * from the thread's {@link TimSortContext}. The counts of every byte are
+ * gathered in a single pass up front, so a byte that is the same in every key
+ * is skipped without touching the array again. Small arrays and arrays a
+ * quick probe finds mostly sorted, ascending or descending, go to
+ * {@link ComplexTimSort} instead, where runs make sorting close to linear.
+ * <p>
+ * Like every LSD radix sort, these sorts are stable.
+ */
+public interface RadixSort {
+	int RADIX_THRESHOLD = 1 << 11;
+	int PROBE_WINDOWS = 32;
+	int PROBE_LENGTH = 32;
+
+	/**
+	 * Sorts an array of ints into ascending numerical order.
+	 * @param arr the array to be sorted
+	 */
+	static void sort(int[] arr) {
+		final int n = arr.length;
+		if (n < RADIX_THRESHOLD || hasRuns(arr)) {
+			ComplexTimSort.sort(arr);
+			return;
+		}
+		final TimSortContext ctx = TimSortContext.acquire();
+		try {
+			radixSort(arr, null, ctx.intBuffer(n), null, n);
+		} finally {
+			ctx.exit();
+		}
+	}
+
+	/**
+	 * Sorts an array of longs into ascending numerical order.
+	 * @param arr the array to be sorted
+	 */
+	static void sort(long[] arr) {
+		final int n = arr.length;
+		if (n < RADIX_THRESHOLD || hasRuns(arr)) {
+			ComplexTimSort.sort(arr);
+			return;
+		}
+		final TimSortContext ctx = TimSortContext.acquire();
+		try {
+			radixSort(arr, null, ctx.longBuffer(n), null, n);
+		} finally {
+			ctx.exit();
+		}
+	}
+
+	/**
+	 * Sorts an array of floats into ascending numerical order. The order
+	 * matches {@link Float#compare}: -0.0f comes before 0.0f and NaN values
+	 * are placed at the end, as the canonical NaN.
+	 * @param arr the array to be sorted
+	 */
+	static void sort(float[] arr) {
+		final int n = arr.length;
+		if (n < RADIX_THRESHOLD) {
+			ComplexTimSort.sort(arr);
+			return;
+		}
+		final int[] keys = new int[n];
+		for (int i = 0; i < n; i++) {
+			keys[i] = sortableBits(Float.floatToIntBits(arr[i]));
+		}
+		if (hasRuns(keys)) {
+			ComplexTimSort.sort(arr);
+			return;
+		}
+		final TimSortContext ctx = TimSortContext.acquire();
+		try {
+			radixSort(keys, null, ctx.intBuffer(n), null, n);
+		} finally {
+			ctx.exit();
+		}
+		for (int i = 0; i < n; i++) {
+			arr[i] = Float.intBitsToFloat(sortableBits(keys[i]));
+		}
+	}
+
+	/**
+	 * Sorts an array of doubles into ascending numerical order. The order
+	 * matches {@link Double#compare}: -0.0 comes before 0.0 and NaN values
+	 * are placed at the end, as the canonical NaN.
+	 * @param arr the array to be sorted
+	 */
+	static void sort(double[] arr) {
+		final int n = arr.length;
+		if (n < RADIX_THRESHOLD) {
+			ComplexTimSort.sort(arr);
+			return;
+		}
+		final long[] keys = new long[n];
+		for (int i = 0; i < n; i++) {
+			keys[i] = KeyedTimSort.sortableBits(arr[i]);
+		}
+		if (hasRuns(keys)) {
+			ComplexTimSort.sort(arr);
+			return;
+		}
+		final TimSortContext ctx = TimSortContext.acquire();
+		try {
+			radixSort(keys, null, ctx.longBuffer(n), null, n);
+		} finally {
+			ctx.exit();
+		}
+		for (int i = 0; i < n; i++) {
+			final long key = keys[i];
+			arr[i] = Double.longBitsToDouble(key ^ ((key >> 63)
+			                                        & Long.MAX_VALUE));
+		}
+	}
+
+	/**
+	 * Sorts an array by an int key, extracting each key once. Elements with
+	 * equal keys keep their order.
+	 * @param <T> the type of the array
+	 * @param arr the array to be sorted
+	 * @param key the function extracting the key of an element
+	 */
+	static <T> void sortByIntKey(T[] arr, ToIntFunction<T> key) {
+		final int n = arr.length;
+		final int[] keys = new int[n];
+		for (int i = 0; i < n; i++) {
+			keys[i] = key.applyAsInt(arr[i]);
+		}
+		final TimSortContext ctx = TimSortContext.acquire();
+		try {
+			if (n < RADIX_THRESHOLD || hasRuns(keys)) {
+				KeyedTimSort.sort(keys, arr, 0, n, ctx);
+			} else {
+				radixSort(keys, arr, ctx.intBuffer(n), ctx.buffer(n), n);
+			}
+		} finally {
+			ctx.exit();
+		}
+	}
+
+	/**
+	 * Sorts an array by a long key, extracting each key once. Elements with
+	 * equal keys keep their order.
+	 * @param <T> the type of the array
+	 * @param arr the array to be sorted
+	 * @param key the function extracting the key of an element
+	 */
+	static <T> void sortByLongKey(T[] arr, ToLongFunction<T> key) {
+		final int n = arr.length;
+		final long[] keys = new long[n];
+		for (int i = 0; i < n; i++) {
+			keys[i] = key.applyAsLong(arr[i]);
+		}
+		final TimSortContext ctx = TimSortContext.acquire();
+		try {
+			if (n < RADIX_THRESHOLD || hasRuns(keys)) {
+				KeyedTimSort.sort(keys, arr, 0, n, ctx);
+			} else {
+				radixSort(keys, arr, ctx.longBuffer(n), ctx.buffer(n), n);
+			}
+		} finally {
+			ctx.exit();
+		}
+	}
+
+	/**
+	 * Maps the bits of a float to an int that orders the same way, or maps
+	 * such an int back: negative values have their magnitude bits flipped.
+	 */
+	private static int sortableBits(int bits) {
+		return bits ^ ((bits >> 31) & Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Looks at a few short windows spread over the array and counts how often
+	 * an element is smaller than the one before it. Random data does that
+	 * about half the time; an array made of long ascending or descending runs
+	 * almost never or almost always does.
+	 */
+	private static boolean hasRuns(int[] arr) {
+		final int step = arr.length / PROBE_WINDOWS;
+		int descents = 0;
+		for (int w = 0; w < PROBE_WINDOWS; w++) {
+			final int base = w * step;
+			for (int i = base + 1; i < base + PROBE_LENGTH; i++) {
+				if (arr[i] < arr[i - 1]) {
+					descents++;
+				}
+			}
+		}
+		return isRunny(descents);
+	}
+
+	private static boolean hasRuns(long[] arr) {
+		final int step = arr.length / PROBE_WINDOWS;
+		int descents = 0;
+		for (int w = 0; w < PROBE_WINDOWS; w++) {
+			final int base = w * step;
+			for (int i = base + 1; i < base + PROBE_LENGTH; i++) {
+				if (arr[i] < arr[i - 1]) {
+					descents++;
+				}
+			}
+		}
+		return isRunny(descents);
+	}
+
+	private static boolean isRunny(int descents) {
+		final int probed = PROBE_WINDOWS * (PROBE_LENGTH - 1);
+		return descents < probed >>> 3 || descents > probed - (probed >>> 3);
+	}
+
+	/**
+	 * Sorts keys[0, n) in signed order, moving values[0, n) along with them
+	 * if values is not null. The work arrays must hold at least n elements.
+	 */
+	private static void radixSort(int[] keys, Object[] values, int[] workKeys,
+	                              Object[] workValues, int n)
+	{
+		final int[] counts = new int[Integer.BYTES << 8];
+		for (int i = 0; i < n; i++) {
+			final int key = keys[i] ^ Integer.MIN_VALUE;
+			counts[key & 0xff]++;
+			counts[0x100 + ((key >>> 8) & 0xff)]++;
+			counts[0x200 + ((key >>> 16) & 0xff)]++;
+			counts[0x300 + (key >>> 24)]++;
+		}
+
+		int[] src = keys, dst = workKeys;
+		Object[] srcValues = values, dstValues = workValues;
+		for (int shift = 0; shift < Integer.SIZE; shift += 8) {
+			final int offset = shift << 5;
+			if (counts[offset + digit(src[0], shift)] == n) {
+				continue;
+			}
+			int sum = 0;
+			for (int d = offset; d < offset + 0x100; d++) {
+				final int count = counts[d];
+				counts[d] = sum;
+				sum += count;
+			}
+			if (values == null) {
+				for (int i = 0; i < n; i++) {
+					final int key = src[i];
+					dst[counts[offset + digit(key, shift)]++] = key;
+				}
+			} else {
+				for (int i = 0; i < n; i++) {
+					final int key = src[i];
+					final int index = counts[offset + digit(key, shift)]++;
+					dst[index] = key;
+					dstValues[index] = srcValues[i];
+				}
+				final Object[] swap = srcValues;
+				srcValues = dstValues;
+				dstValues = swap;
+			}
+			final int[] swap = src;
+			src = dst;
+			dst = swap;
+		}
+
+		if (src != keys) {
+			System.arraycopy(src, 0, keys, 0, n);
+			if (values != null) {
+				System.arraycopy(srcValues, 0, values, 0, n);
+			}
+		}
+	}
+
+	private static int digit(int key, int shift) {
+		return ((key ^ Integer.MIN_VALUE) >>> shift) & 0xff;
+	}
+
+	/**
+	 * Sorts keys[0, n) in signed order, moving values[0, n) along with them
+	 * if values is not null. The work arrays must hold at least n elements.
+	 */
+	private static void radixSort(long[] keys, Object[] values,
+	                              long[] workKeys, Object[] workValues, int n)
+	{
+		final int[] counts = new int[Long.BYTES << 8];
+		for (int i = 0; i < n; i++) {
+			final long key = keys[i] ^ Long.MIN_VALUE;
+			counts[(int) (key & 0xff)]++;
+			counts[0x100 + (int) ((key >>> 8) & 0xff)]++;
+			counts[0x200 + (int) ((key >>> 16) & 0xff)]++;
+			counts[0x300 + (int) ((key >>> 24) & 0xff)]++;
+			counts[0x400 + (int) ((key >>> 32) & 0xff)]++;
+			counts[0x500 + (int) ((key >>> 40) & 0xff)]++;
+			counts[0x600 + (int) ((key >>> 48) & 0xff)]++;
+			counts[0x700 + (int) (key >>> 56)]++;
+		}
+
+		long[] src = keys, dst = workKeys;
+		Object[] srcValues = values, dstValues = workValues;
+		for (int shift = 0; shift < Long.SIZE; shift += 8) {
+			final int offset = shift << 5;
+			if (counts[offset + digit(src[0], shift)] == n) {
+				continue;
+			}
+			int sum = 0;
+			for (int d = offset; d < offset + 0x100; d++) {
+				final int count = counts[d];
+				counts[d] = sum;
+				sum += count;
+			}
+			if (values == null) {
+				for (int i = 0; i < n; i++) {
+					final long key = src[i];
+					dst[counts[offset + digit(key, shift)]++] = key;
+				}
+			} else {
+				for (int i = 0; i < n; i++) {
+					final long key = src[i];
+					final int index = counts[offset + digit(key, shift)]++;
+					dst[index] = key;
+					dstValues[index] = srcValues[i];
+				}
+				final Object[] swap = srcValues;
+				srcValues = dstValues;
+				dstValues = swap;
+			}
+			final long[] swap = src;
+			src = dst;
+			dst = swap;
+		}
+
+		if (src != keys) {
+			System.arraycopy(src, 0, keys, 0, n);
+			if (values != null) {
+				System.arraycopy(srcValues, 0, values, 0, n);
+			}
+		}
+	}
+
+	private static int digit(long key, int shift) {
+		return (int) ((key ^ Long.MIN_VALUE) >>> shift) & 0xff;
+	}
+}
@@ -0,0 +1,66 @@
+package sort;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Converts between records and their bytes in a file, so that
+ * {@link ExternalSort} can sort any file whose records it can decode.
+ * @param <T> the type of the records
+ */
+public interface RecordCodec<T> {
+
+	/**
+	 * Decodes the record starting at the position of the buffer and advances
+	 * the position past it.
+	 * @param buf the bytes to decode from
+	 * @param endOfInput whether the buffer holds everything left in the file
+	 * @return the decoded record, or null if the buffer only holds part of a
+	 * record, in which case the position must be left unchanged
+	 * @throws IllegalStateException if the input ends inside a record that
+	 * cannot be completed
+	 */
+	T decode(ByteBuffer buf, boolean endOfInput);
+
+	/**
+	 * Encodes a record at the position of the buffer and advances the
+	 * position past it.
+	 * @param record the record to encode
+	 * @param buf the buffer to encode into
+	 * @return false if the record did not fit, in which case the position
+	 * must be left unchanged
+	 */
+	boolean encode(T record, ByteBuffer buf);
+
+	/**
+	 * Returns a codec for binary records that are all the given number of
+	 * bytes long.
+	 * @param width the length of each record in bytes
+	 * @return the codec
+	 */
+	static RecordCodec<byte[]> fixedWidth(int width) {
+		return new FixedWidthCodec(width);
+	}
+
+	/**
+	 * Returns a codec for newline delimited UTF-8 text, where every record is
+	 * a line without its terminating newline.
+	 * @return the codec
+	 */
+	static RecordCodec<String> lines() {
+		return lines(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Returns a codec for newline delimited text, where every record is a line
+	 * without its terminating newline. The charset must encode '\n' as the
+	 * single byte 0x0A and never use that byte otherwise, as UTF-8, ASCII and
+	 * the ISO-8859 charsets do.
+	 * @param charset the charset of the text
+	 * @return the codec
+	 */
+	static RecordCodec<String> lines(Charset charset) {
+		return new LineCodec(charset);
+	}
+}
@@ -0,0 +1,514 @@
+package sort;
+
+import java.nio.ByteBuffer;
+
+import static java.lang.Math.min;
+import static sort.ComplexTimSort.MIN_GALLOP;
+import static sort.ComplexTimSort.THRESHOLD;
+
+/**
+ * The engine behind {@link OffHeapSort}. It follows {@link KeyedTimSort} step
+ * for step, but the elements are records in a buffer: keys are read out of
+ * the records as sortable longs and records are moved with bulk byte copies.
+ * The merge buffer is a direct buffer from the context, whose first slot
+ * also serves as scratch space for swapping and inserting single records.
+ */
+final class RecordTimSort {
+	private final ByteBuffer buf;
+	private final int base;
+	private final int width;
+	private final int keyOffset;
+	private final OffHeapSort.KeyType keyType;
+	private final TimSortContext ctx;
+	private ByteBuffer temp;
+
+	private RecordTimSort(ByteBuffer buf, int base, int width, int keyOffset,
+	                      OffHeapSort.KeyType keyType, TimSortContext ctx)
+	{
+		this.buf = buf;
+		this.base = base;
+		this.width = width;
+		this.keyOffset = keyOffset;
+		this.keyType = keyType;
+		this.ctx = ctx;
+	}
+
+	/**
+	 * Sorts records by their keys. The context must already have been
+	 * entered.
+	 * @param buf the buffer holding the records
+	 * @param base the offset of the first record in bytes
+	 * @param count the number of records
+	 * @param width the width of a record in bytes
+	 * @param keyOffset the offset of the key within a record in bytes
+	 * @param keyType the type of the key
+	 * @param ctx the context holding the run stack and merge buffer
+	 */
+	static void sort(ByteBuffer buf, int base, int count, int width,
+	                 int keyOffset, OffHeapSort.KeyType keyType,
+	                 TimSortContext ctx)
+	{
+		if (count < 2) {
+			return;
+		}
+		new RecordTimSort(buf, base, width, keyOffset, keyType, ctx)
+		.sort(count);
+	}
+
+	private void sort(int count) {
+		reserve(1);
+		if (count < THRESHOLD) {
+			binarySort(0, count, ascendThenCount(0, count));
+			return;
+		}
+
+		final int minRun = ObjectTimSort.runLength(count);
+		ctx.startRange(0, count);
+		int lo = 0;
+		int remaining = count;
+		while (remaining > 0) {
+			int runLength = ascendThenCount(lo, count);
+			if (runLength < minRun) {
+				final int force = min(remaining, minRun);
+				binarySort(lo, lo + force, lo + runLength);
+				runLength = force;
+			}
+			ctx.pushRun(lo, runLength);
+			mergeCollapse();
+			lo += runLength;
+			remaining -= runLength;
+		}
+
+		mergeForceCollapse();
+	}
+
+	/**
+	 * Makes sure the merge buffer holds at least the given number of records.
+	 */
+	private void reserve(int records) {
+		if (temp == null || temp.capacity() < records * width) {
+			temp = ctx.directBuffer(records * width).order(buf.order());
+		}
+	}
+
+	/** @return the key of a record as a long with the same order */
+	private long keyAt(ByteBuffer records, int offset) {
+		offset += keyOffset;
+		return switch (keyType) {
+			case INT -> records.getInt(offset);
+			case LONG -> records.getLong(offset);
+			case FLOAT -> {
+				final int bits = Float.floatToIntBits(records.getFloat(offset));
+				yield bits ^ ((bits >> 31) & Integer.MAX_VALUE);
+			}
+			case DOUBLE -> KeyedTimSort.sortableBits(records.getDouble(offset));
+		};
+	}
+
+	private long key(int index) {
+		return keyAt(buf, base + index * width);
+	}
+
+	private long tempKey(int index) {
+		return keyAt(temp, index * width);
+	}
+
+	/**
+	 * Copies records within the buffer. The ranges may overlap.
+	 */
+	private void move(int from, int to, int count) {
+		buf.put(base + to * width, buf, base + from * width, count * width);
+	}
+
+	private void save(int from, int to, int count) {
+		temp.put(to * width, buf, base + from * width, count * width);
+	}
+
+	private void restore(int from, int to, int count) {
+		buf.put(base + to * width, temp, from * width, count * width);
+	}
+
+	private int ascendThenCount(int left, int right) {
+		int runRight = left + 1;
+		if (runRight == right) {
+			return 1;
+		}
+		long previous = key(runRight);
+		if (previous < key(left)) {
+			while (++runRight < right) {
+				final long next = key(runRight);
+				if (next >= previous) {
+					break;
+				}
+				previous = next;
+			}
+			reverse(left, runRight);
+		} else {
+			while (++runRight < right) {
+				final long next = key(runRight);
+				if (next < previous) {
+					break;
+				}
+				previous = next;
+			}
+		}
+		return runRight - left;
+	}
+
+	private void reverse(int left, int right) {
+		right--;
+		while (left < right) {
+			save(left, 0, 1);
+			move(right, left, 1);
+			restore(0, right, 1);
+			left++;
+			right--;
+		}
+	}
+
+	private void binarySort(int lo, int hi, int start) {
+		if (start == lo) {
+			start++;
+		}
+		while (start < hi) {
+			final long pivot = key(start);
+			int left = lo;
+			int right = start;
+			while (left < right) {
+				final int mid = (left + right) >>> 1;
+				if (pivot < key(mid)) {
+					right = mid;
+				} else {
+					left = mid + 1;
+				}
+			}
+			if (left < start) {
+				save(start, 0, 1);
+				move(left, left + 1, start - left);
+				restore(0, left, 1);
+			}
+			start++;
+		}
+	}
+
+	private int gallopLeft(ByteBuffer records, int offset, int first,
+	                       int length, int hint, long target)
+	{
+		int lastOffset = 0;
+		int gallop = 1;
+		if (target > keyAt(records, offset + (first + hint) * width)) {
+			final int maxOffset = length - hint;
+			while (gallop < maxOffset
+			       && target > keyAt(records,
+			                         offset + (first + hint + gallop) * width))
+			{
+				lastOffset = gallop;
+				gallop = (gallop << 1) + 1; // gallop * 2 + 1
+			}
+
+			if (gallop > maxOffset) {
+				gallop = maxOffset;
+			}
+
+			lastOffset += hint;
+			gallop += hint;
+		} else {
+			final int maxOffset = hint + 1;
+			while (gallop < maxOffset
+			       && target <= keyAt(records,
+			                          offset + (first + hint - gallop) * width))
+			{
+				lastOffset = gallop;
+				gallop = (gallop << 1) + 1; // gallop * 2 + 1
+			}
+
+			if (gallop > maxOffset) {
+				gallop = maxOffset;
+			}
+
+			final int swap = lastOffset;
+			lastOffset = hint - gallop;
+			gallop = hint - swap;
+		}
+
+		lastOffset++;
+		while (lastOffset < gallop) {
+			final int mid = (lastOffset + gallop) >>> 1;
+			if (target > keyAt(records, offset + (first + mid) * width)) {
+				lastOffset = mid + 1;
+			} else {
+				gallop = mid;
+			}
+		}
+		return gallop;
+	}
+
+	private int gallopRight(ByteBuffer records, int offset, int first,
+	                        int length, int hint, long target)
+	{
+		int lastOffset = 0;
+		int gallop = 1;
+		if (target < keyAt(records, offset + (first + hint) * width)) {
+			final int maxOffset = hint + 1;
+			while (gallop < maxOffset
+			       && target < keyAt(records,
+			                         offset + (first + hint - gallop) * width))
+			{
+				lastOffset = gallop;
+				gallop = (gallop << 1) + 1; // gallop * 2 + 1
+			}
+
+			if (gallop > maxOffset) {
+				gallop = maxOffset;
+			}
+
+			final int swap = lastOffset;
+			lastOffset = hint - gallop;
+			gallop = hint - swap;
+		} else {
+			final int maxOffset = length - hint;
+			while (gallop < maxOffset
+			       && target >= keyAt(records,
+			                          offset + (first + hint + gallop) * width))
+			{
+				lastOffset = gallop;
+				gallop = (gallop << 1) + 1; // gallop * 2 + 1
+			}
+
+			if (gallop > maxOffset) {
+				gallop = maxOffset;
+			}
+
+			lastOffset += hint;
+			gallop += hint;
+		}
+
+		lastOffset++;
+		while (lastOffset < gallop) {
+			final int mid = (lastOffset + gallop) >>> 1;
+			if (target < keyAt(records, offset + (first + mid) * width)) {
+				gallop = mid;
+			} else {
+				lastOffset = mid + 1;
+			}
+		}
+		return gallop;
+	}
+
+	private void mergeLo(int l, int m, int r) {
+		final int length = m - l;
+		reserve(length);
+		save(l, 0, length);
+		int minGallop = ctx.minGallop;
+		int i = l, j = m, k = 0;
+		boolean done = false;
+
+		while (!done) {
+			int count1 = 0;
+			int count2 = 0;
+			long right = key(j);
+			long left = tempKey(k);
+			while ((count1 | count2) < minGallop) {
+				if (right < left) {
+					move(j++, i++, 1);
+					count1 = 0;
+					count2++;
+					if (j == r) {
+						done = true;
+						break;
+					}
+					right = key(j);
+				} else {
+					restore(k++, i++, 1);
+					count1++;
+					count2 = 0;
+					if (k == length) {
+						done = true;
+						break;
+					}
+					left = tempKey(k);
+				}
+			}
+
+			if (done) {
+				break;
+			}
+
+			while (count1 >= MIN_GALLOP || count2 >= MIN_GALLOP) {
+				count1 = gallopRight(temp, 0, k, length - k, 0, key(j));
+				if (count1 != 0) {
+					restore(k, i, count1);
+					i += count1;
+					k += count1;
+					if (k == length) {
+						done = true;
+						break;
+					}
+				}
+
+				move(j++, i++, 1);
+				if (j == r) {
+					done = true;
+					break;
+				}
+
+				count2 = gallopLeft(buf, base, j, r - j, 0, tempKey(k));
+				if (count2 != 0) {
+					move(j, i, count2);
+					i += count2;
+					j += count2;
+					if (j == r) {
+						done = true;
+						break;
+					}
+				}
+
+				restore(k++, i++, 1);
+				if (k == length) {
+					done = true;
+					break;
+				}
+
+				minGallop--;
+			}
+			if (minGallop < 0) {
+				minGallop = 0;
+			}
+			minGallop += 2;
+		}
+
+		if (k < length) {
+			restore(k, i, length - k);
+		}
+		ctx.minGallop = minGallop;
+	}
+
+	private void mergeHi(int l, int m, int r) {
+		reserve(r - m);
+		save(m, 0, r - m);
+		int minGallop = ctx.minGallop;
+		int i = r - 1, j = m - 1, k = r - m - 1;
+		boolean done = false;
+
+		while (!done) {
+			int count1 = 0;
+			int count2 = 0;
+			long left = key(j);
+			long right = tempKey(k);
+			while ((count1 | count2) < minGallop) {
+				if (right < left) {
+					move(j--, i--, 1);
+					count1++;
+					count2 = 0;
+					if (j == l - 1) {
+						done = true;
+						break;
+					}
+					left = key(j);
+				} else {
+					restore(k--, i--, 1);
+					count1 = 0;
+					count2++;
+					if (k == -1) {
+						done = true;
+						break;
+					}
+					right = tempKey(k);
+				}
+			}
+
+			if (done) {
+				break;
+			}
+
+			while (count1 >= MIN_GALLOP || count2 >= MIN_GALLOP) {
+				count1 = j - l + 1 - gallopRight(buf, base, l, j - l + 1, j - l,
+				                                 tempKey(k));
+				if (count1 != 0) {
+					final int gap = count1 - 1;
+					move(j - gap, i - gap, 1 + gap);
+					i -= count1;
+					j -= count1;
+					if (j == l - 1) {
+						done = true;
+						break;
+					}
+				}
+
+				restore(k--, i--, 1);
+				if (k == -1) {
+					done = true;
+					break;
+				}
+
+				count2 = k + 1 - gallopLeft(temp, 0, 0, k + 1, k, key(j));
+				if (count2 != 0) {
+					final int gap = count2 - 1;
+					restore(k - gap, i - gap, 1 + gap);
+					i -= count2;
+					k -= count2;
+					if (k == -1) {
+						done = true;
+						break;
+					}
+				}
+
+				move(j--, i--, 1);
+				if (j == l - 1) {
+					done = true;
+					break;
+				}
+
+				minGallop--;
+			}
+			if (minGallop < 0) {
+				minGallop = 0;
+			}
+			minGallop += 2;
+		}
+
+		if (k >= 0) {
+			restore(0, l, k + 1);
+		}
+		ctx.minGallop = minGallop;
+	}
+
+	private void mergeCollapse() {
+		int n;
+		while ((n = ctx.collapseIndex()) >= 0) {
+			mergeAt(n);
+		}
+	}
+
+	private void mergeAt(int index) {
+		int base1 = ctx.runBase[index], len1 = ctx.runLength[index];
+		final int base2 = ctx.runBase[index + 1];
+		int len2 = ctx.runLength[index + 1];
+		ctx.mergedAt(index);
+
+		final int offset = gallopRight(buf, base, base1, len1, 0, key(base2));
+		base1 += offset;
+		len1 -= offset;
+		if (len1 == 0) {
+			return;
+		}
+
+		len2 = gallopLeft(buf, base, base2, len2, len2 - 1,
+		                  key(base1 + len1 - 1));
+		if (len2 == 0) {
+			return;
+		}
+		if (len1 <= len2) {
+			mergeLo(base1, base2, base2 + len2);
+		} else {
+			mergeHi(base1, base2, base2 + len2);
+		}
+	}
+
+	private void mergeForceCollapse() {
+		int n;
+		while ((n = ctx.forceCollapseIndex()) >= 0) {
+			mergeAt(n);
+		}
+	}
+}
@@ -0,0 +1,538 @@
+package sort;
+
+import java.util.Comparator;
+
+import static java.lang.Math.min;
+import static sort.ComplexTimSort.MIN_GALLOP;
+
+/**
+ * A TimSort that runs a slice at a time, for threads such as event loops that
+ * must not block for long. Every piece of state a plain sort keeps on the
+ * stack, the position of the run being scanned, the run stack and the indices
+ * and gallop mode of the merge in progress, lives in this object, so
+ * {@link #step(long)} can stop after a bounded amount of work and pick up
+ * exactly where it left off on the next call.
+ * <p>
+ * Work is counted as one unit per comparison and one per element moved. A
+ * step stops once its budget is spent, overshooting it by at most the cost of
+ * two binary searches or of one insertion into a run shorter than
+ * {@link ComplexTimSort#THRESHOLD}. The runs, merges and gallops are the
+ * same as those of {@link ComplexTimSort#sort}, so the sort is stable and the
+ * merge buffer never holds more than half the range.
+ * <p>
+ * The range must not be touched by anything else until the sort is done. If
+ * the comparator throws, the range is left in an unspecified order and the
+ * sort cannot be resumed. A sort is not thread safe, but it may be stepped
+ * from a different thread each time as long as the steps do not overlap.
+ * @param <T> the type of the array
+ */
+public final class ResumableSort<T> {
+
+	private enum Phase {
+		/** At the start of the next run, or at the end of the range. */
+		FIND_RUN,
+		/** Scanning to the end of the run that starts at lo. */
+		SCAN,
+		/** Reversing the descending run that starts at lo. */
+		REVERSE,
+		/** Extending the run that starts at lo to minRun by insertion. */
+		EXTEND,
+		/** Asking the merge policy which runs to merge next. */
+		COLLAPSE,
+		/** Moving a block of elements, then carrying on with next. */
+		COPY,
+		/** Merging one element at a time. */
+		MERGE,
+		/** Merging in gallop mode. */
+		GALLOP,
+		DONE
+	}
+
+	private final T[] arr;
+	private final Comparator<T> comp;
+	private final TimSortContext ctx = new TimSortContext();
+	private final int hi;
+	private final int minRun;
+	private Phase phase;
+	private long work;
+
+	// run detection
+	private int lo;
+	private int runEnd;
+	private boolean descending;
+	private int reverseLeft;
+	private int reverseRight;
+	private boolean forcing;
+
+	// the merge in progress, as in ObjectTimSort.mergeLo and mergeHi
+	private boolean low;
+	private T[] temp;
+	private int tempLength;
+	private int l, r, i, j, k;
+	private int count1;
+	private int count2;
+	private int minGallop;
+	private int gallopStep;
+
+	// the block move in progress
+	private Object[] copySource;
+	private int copySourcePos;
+	private Object[] copyDest;
+	private int copyDestPos;
+	private int copyLength;
+	private Phase next;
+
+	ResumableSort(T[] arr, int lo, int hi, Comparator<T> comp) {
+		this.arr = arr;
+		this.comp = comp;
+		this.lo = lo;
+		this.hi = hi;
+		this.minRun = ObjectTimSort.runLength(hi - lo);
+		ctx.enter();
+		ctx.startRange(lo, hi);
+		phase = Phase.FIND_RUN;
+		if (hi - lo < 2) {
+			release();
+		}
+	}
+
+	/** @return whether the range is sorted */
+	public boolean isDone() {
+		return phase == Phase.DONE;
+	}
+
+	/**
+	 * Carries on sorting until about the given amount of work has been done
+	 * or the range is sorted.
+	 * @param workBudget the number of comparisons and element moves to spend
+	 * @return whether the range is sorted
+	 * @throws IllegalArgumentException if workBudget is not positive
+	 */
+	public boolean step(long workBudget) {
+		if (workBudget <= 0) {
+			throw new IllegalArgumentException(
+			"workBudget(" + workBudget + ") must be positive");
+		}
+		work = workBudget;
+		while (work > 0 && phase != Phase.DONE) {
+			switch (phase) {
+			case FIND_RUN:
+				findRun();
+				break;
+			case SCAN:
+				scan();
+				break;
+			case REVERSE:
+				reverse();
+				break;
+			case EXTEND:
+				extend();
+				break;
+			case COLLAPSE:
+				collapse();
+				break;
+			case COPY:
+				copy();
+				break;
+			case MERGE:
+				if (low) {
+					mergeLo();
+				} else {
+					mergeHi();
+				}
+				break;
+			case GALLOP:
+				if (low) {
+					gallopLo();
+				} else {
+					gallopHi();
+				}
+				break;
+			default:
+				throw new AssertionError(phase);
+			}
+		}
+		return phase == Phase.DONE;
+	}
+
+	/** Sorts whatever is left of the range in one go. */
+	public void finish() {
+		while (!step(Long.MAX_VALUE)) {
+		}
+	}
+
+	private void findRun() {
+		if (lo == hi) {
+			forcing = true;
+			phase = Phase.COLLAPSE;
+			return;
+		}
+		runEnd = lo + 1;
+		if (runEnd == hi) {
+			phase = Phase.EXTEND;
+			return;
+		}
+		work--;
+		descending = comp.compare(arr[runEnd], arr[lo]) < 0;
+		runEnd++;
+		phase = Phase.SCAN;
+	}
+
+	private void scan() {
+		boolean ended = runEnd == hi;
+		while (!ended && work > 0) {
+			work--;
+			final int c = comp.compare(arr[runEnd], arr[runEnd - 1]);
+			if (descending ? c >= 0 : c < 0) {
+				ended = true;
+			} else {
+				ended = ++runEnd == hi;
+			}
+		}
+		if (!ended) {
+			return;
+		}
+		if (descending) {
+			reverseLeft = lo;
+			reverseRight = runEnd - 1;
+			phase = Phase.REVERSE;
+		} else {
+			phase = Phase.EXTEND;
+		}
+	}
+
+	private void reverse() {
+		while (reverseLeft < reverseRight && work > 0) {
+			final T swap = arr[reverseLeft];
+			arr[reverseLeft++] = arr[reverseRight];
+			arr[reverseRight--] = swap;
+			work -= 2;
+		}
+		if (reverseLeft >= reverseRight) {
+			phase = Phase.EXTEND;
+		}
+	}
+
+	private void extend() {
+		final int forceEnd = min(hi, lo + minRun);
+		while (runEnd < forceEnd && work > 0) {
+			final T pivot = arr[runEnd];
+			final int index =
+			lo + ObjectTimSort.searchRight(arr, comp, lo, runEnd - lo, pivot);
+			System.arraycopy(arr, index, arr, index + 1, runEnd - index);
+			arr[index] = pivot;
+			work -= searchCost(runEnd - lo) + runEnd - index + 1;
+			runEnd++;
+		}
+		if (runEnd >= forceEnd) {
+			ctx.pushRun(lo, runEnd - lo);
+			lo = runEnd;
+			phase = Phase.COLLAPSE;
+		}
+	}
+
+	private void collapse() {
+		final int index =
+		forcing ? ctx.forceCollapseIndex() : ctx.collapseIndex();
+		if (index >= 0) {
+			startMerge(index);
+		} else if (forcing) {
+			release();
+		} else {
+			phase = Phase.FIND_RUN;
+		}
+	}
+
+	/**
+	 * Does what ObjectTimSort.mergeAt does before it merges: trims the
+	 * elements already in place off both runs and copies the smaller of what
+	 * is left into the buffer.
+	 */
+	private void startMerge(int index) {
+		int base1 = ctx.runBase[index], len1 = ctx.runLength[index];
+		final int base2 = ctx.runBase[index + 1];
+		int len2 = ctx.runLength[index + 1];
+		ctx.mergedAt(index);
+
+		work -= searchCost(len1);
+		final int offset =
+		ObjectTimSort.searchRight(arr, comp, base1, len1, arr[base2]);
+		base1 += offset;
+		len1 -= offset;
+		if (len1 == 0) {
+			return;
+		}
+
+		work -= searchCost(len2);
+		len2 = ObjectTimSort.searchLeft(arr, comp, base2, len2,
+		                                arr[base1 + len1 - 1]);
+		if (len2 == 0) {
+			return;
+		}
+
+		low = len1 <= len2;
+		l = base1;
+		r = base2 + len2;
+		tempLength = low ? len1 : len2;
+		temp = buffer(tempLength);
+		minGallop = ctx.minGallop;
+		count1 = 0;
+		count2 = 0;
+		if (low) {
+			i = l;
+			j = base2;
+			k = 0;
+			startCopy(arr, l, temp, 0, len1, Phase.MERGE);
+		} else {
+			i = r - 1;
+			j = base2 - 1;
+			k = len2 - 1;
+			startCopy(arr, base2, temp, 0, len2, Phase.MERGE);
+		}
+	}
+
+	private void mergeLo() {
+		while (work > 0) {
+			work -= 2;
+			if (comp.compare(arr[j], temp[k]) < 0) {
+				arr[i++] = arr[j++];
+				count1 = 0;
+				count2++;
+			} else {
+				arr[i++] = temp[k++];
+				count1++;
+				count2 = 0;
+			}
+			if (k == tempLength || j == r) {
+				finishMerge();
+				return;
+			}
+			if ((count1 | count2) >= minGallop) {
+				startGallop();
+				return;
+			}
+		}
+	}
+
+	private void mergeHi() {
+		while (work > 0) {
+			work -= 2;
+			if (comp.compare(temp[k], arr[j]) < 0) {
+				arr[i--] = arr[j--];
+				count1 = 0;
+				count2++;
+			} else {
+				arr[i--] = temp[k--];
+				count1++;
+				count2 = 0;
+			}
+			if (k == -1 || j == l - 1) {
+				finishMerge();
+				return;
+			}
+			if ((count1 | count2) >= minGallop) {
+				startGallop();
+				return;
+			}
+		}
+	}
+
+	private void startGallop() {
+		if (count1 >= MIN_GALLOP || count2 >= MIN_GALLOP) {
+			gallopStep = 0;
+			phase = Phase.GALLOP;
+		} else {
+			stopGallop();
+		}
+	}
+
+	private void stopGallop() {
+		if (minGallop < 0) {
+			minGallop = 0;
+		}
+		minGallop += 2;
+		count1 = 0;
+		count2 = 0;
+		phase = Phase.MERGE;
+	}
+
+	/**
+	 * Takes one of the four steps of a round of galloping in mergeLo. The
+	 * block moves the gallops find are left to {@link Phase#COPY}, which
+	 * comes back here for the next step.
+	 */
+	private void gallopLo() {
+		switch (gallopStep++) {
+		case 0:
+			work -= searchCost(tempLength - k);
+			count1 = ObjectTimSort.gallopRight(temp, comp, k, tempLength - k,
+			                                   0, arr[j]);
+			if (count1 != 0) {
+				startCopy(temp, k, arr, i, count1, Phase.GALLOP);
+				i += count1;
+				k += count1;
+			}
+			break;
+		case 1:
+			if (k == tempLength) {
+				finishMerge();
+				return;
+			}
+			work--;
+			arr[i++] = arr[j++];
+			if (j == r) {
+				finishMerge();
+			}
+			break;
+		case 2:
+			work -= searchCost(r - j);
+			count2 = ObjectTimSort.gallopLeft(arr, comp, j, r - j, 0, temp[k]);
+			if (count2 != 0) {
+				startCopy(arr, j, arr, i, count2, Phase.GALLOP);
+				i += count2;
+				j += count2;
+			}
+			break;
+		default:
+			if (j == r) {
+				finishMerge();
+				return;
+			}
+			work--;
+			arr[i++] = temp[k++];
+			if (k == tempLength) {
+				finishMerge();
+				return;
+			}
+			endRound();
+		}
+	}
+
+	/** The mirror image of {@link #gallopLo()}, for mergeHi. */
+	private void gallopHi() {
+		switch (gallopStep++) {
+		case 0:
+			work -= searchCost(j - l + 1);
+			count1 = j - l + 1 - ObjectTimSort.gallopRight(arr, comp, l,
+			                                               j - l + 1, j - l,
+			                                               temp[k]);
+			if (count1 != 0) {
+				startCopy(arr, j - count1 + 1, arr, i - count1 + 1, count1,
+				          Phase.GALLOP);
+				i -= count1;
+				j -= count1;
+			}
+			break;
+		case 1:
+			if (j == l - 1) {
+				finishMerge();
+				return;
+			}
+			work--;
+			arr[i--] = temp[k--];
+			if (k == -1) {
+				finishMerge();
+			}
+			break;
+		case 2:
+			work -= searchCost(k + 1);
+			count2 = k + 1 - ObjectTimSort.gallopLeft(temp, comp, 0, k + 1, k,
+			                                          arr[j]);
+			if (count2 != 0) {
+				startCopy(temp, k - count2 + 1, arr, i - count2 + 1, count2,
+				          Phase.GALLOP);
+				i -= count2;
+				k -= count2;
+			}
+			break;
+		default:
+			if (k == -1) {
+				finishMerge();
+				return;
+			}
+			work--;
+			arr[i--] = arr[j--];
+			if (j == l - 1) {
+				finishMerge();
+				return;
+			}
+			endRound();
+		}
+	}
+
+	private void endRound() {
+		minGallop--;
+		if (count1 >= MIN_GALLOP || count2 >= MIN_GALLOP) {
+			gallopStep = 0;
+		} else {
+			stopGallop();
+		}
+	}
+
+	/** Moves what is left in the buffer back into the array. */
+	private void finishMerge() {
+		ctx.minGallop = minGallop;
+		if (low && k < tempLength) {
+			startCopy(temp, k, arr, i, tempLength - k, Phase.COLLAPSE);
+		} else if (!low && k >= 0) {
+			startCopy(temp, 0, arr, l, k + 1, Phase.COLLAPSE);
+		} else {
+			phase = Phase.COLLAPSE;
+		}
+	}
+
+	private void startCopy(Object[] source, int sourcePos, Object[] dest,
+	                       int destPos, int length, Phase then)
+	{
+		copySource = source;
+		copySourcePos = sourcePos;
+		copyDest = dest;
+		copyDestPos = destPos;
+		copyLength = length;
+		next = then;
+		phase = Phase.COPY;
+	}
+
+	/**
+	 * Moves as much of the current block as the budget allows. Blocks move
+	 * towards the start of the array in mergeLo and towards the end in
+	 * mergeHi, so copying from the front or the back respectively never
+	 * overwrites elements still to be moved.
+	 */
+	private void copy() {
+		final int length = (int) min(copyLength, work);
+		if (low) {
+			System.arraycopy(copySource, copySourcePos, copyDest, copyDestPos,
+			                 length);
+			copySourcePos += length;
+			copyDestPos += length;
+		} else {
+			final int offset = copyLength - length;
+			System.arraycopy(copySource, copySourcePos + offset, copyDest,
+			                 copyDestPos + offset, length);
+		}
+		copyLength -= length;
+		work -= length;
+		if (copyLength == 0) {
+			phase = next;
+		}
+	}
+
+	private void release() {
+		temp = null;
+		copySource = null;
+		copyDest = null;
+		ctx.exit();
+		phase = Phase.DONE;
+	}
+
+	@SuppressWarnings("unchecked")
+	private T[] buffer(int length) {
+		return (T[]) ctx.buffer(length);
+	}
+
+	/** @return the most comparisons a binary search or gallop can make */
+	private static int searchCost(int length) {
+		return 2 * (32 - Integer.numberOfLeadingZeros(length));
+	}
+}
@@ -2,18 +2,22 @@ package sort;
 
 import java.util.Arrays;
 import java.util.Comparator;
-import java.util.function.IntConsumer;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.IntStream;
 
 import static java.lang.Math.min;
 public interface SimpleTimSort {
 	int THRESHOLD = 32;
+	int MIN_GRAIN = 1 << 13;
 
 	static <T extends Comparable<T>> void sort(T[] array) {
 		sort(array, Comparator.naturalOrder());
 	}
 
 	static <T> void sort(T[] array, Comparator<T> comp) {
+		if (array.length < 2) {
+			return;
+		}
 		final int runLength = runLength(array);
 		for (int start = 0; start <= array.length; start += runLength) {
 			final int end = min(array.length - 1, start + runLength - 1);
@@ -79,7 +83,7 @@ public interface SimpleTimSort {
 		while (leftIndex < left.length && rightIndex < right.length) {
 			final T leftValue = left[leftIndex];
 			final T rightValue = right[rightIndex];
-			if (comp.compare(leftValue, rightValue) < 0) {
+			if (comp.compare(leftValue, rightValue) <= 0) {
 				array[start + leftIndex + rightIndex] = leftValue;
 				leftIndex++;
 			} else {
@@ -96,31 +100,103 @@ public interface SimpleTimSort {
 	}
 
 	static <T extends Comparable<T>> void parallelSort(T[] array) {
-		sort(array, Comparator.nullsFirst(Comparator.naturalOrder()));
+		parallelSort(array, Comparator.nullsFirst(Comparator.naturalOrder()));
 	}
 
 	static <T> void parallelSort(T[] array, Comparator<T> comp) {
 		final int length = array.length;
+		if (length < 2) {
+			return;
+		}
+		final int grain =
+		Math.max(MIN_GRAIN, length / (ForkJoinPool.getCommonPoolParallelism()
+		                              << 2));
+		if (length <= grain) {
+			sort(array, comp);
+			return;
+		}
+
 		final int runLength = runLength(array);
-		IntStream.rangeClosed(0, length / runLength)
+		IntStream.range(0, (length - 1) / runLength + 1)
 		         .parallel()
 		         .map(i -> i * runLength)
 		         .forEach(i -> binarySort(array, comp, i,
 		                                  min(length - 1, i + runLength - 1)));
-		for (int size = runLength; size < length; size <<= 1) {
-			final int mergeSize = size;
-			IntConsumer merge = left -> {
-				final int mid = left + mergeSize - 1;
-				final int right = min(length - 1, left + 2 * mergeSize - 1);
-				if (mid < right) {
-					merge(array, comp, left, mid, right);
+
+		// Every level merges from one buffer into the other, the output being
+		// cut into slices of grain elements: a slice may hold many small
+		// merges or a piece of a large one.
+		@SuppressWarnings("unchecked")
+		T[] src = array, dst = (T[]) new Object[length];
+		final int slices = (length - 1) / grain + 1;
+		for (long size = runLength; size < length; size <<= 1) {
+			final T[] from = src, to = dst;
+			final long width = size << 1;
+			final int mergeSize = (int) size;
+			IntStream.range(0, slices).parallel().forEach(slice -> {
+				final int first = slice * grain;
+				final int last = (int) min(length, (long) first + grain);
+				for (long left = first - first % width; left < last;
+				     left += width)
+				{
+					final int start = (int) left;
+					final int mid = start + min(mergeSize, length - start);
+					final int end = (int) min(length, left + width);
+					mergeSlice(from, to, comp, start, mid, end,
+					           Math.max(first, start), min(last, end));
 				}
-			};
-			IntStream.rangeClosed(0, length / (mergeSize << 1))
-			         .parallel()
-			         .map(i -> i * mergeSize << 1)
-			         .forEach(merge);
+			});
+			src = to;
+			dst = from;
+		}
+		if (src != array) {
+			System.arraycopy(src, 0, array, 0, length);
+		}
+	}
+
+	/**
+	 * Writes dst[from, to), the part of the stable merge of src[start, mid)
+	 * and src[mid, end) that lands there.
+	 */
+	private static <T> void mergeSlice(T[] src, T[] dst, Comparator<T> comp,
+	                                   int start, int mid, int end, int from,
+	                                   int to)
+	{
+		int i = coRank(src, comp, start, mid, end, from - start);
+		int j = mid + from - i;
+		final int iEnd = coRank(src, comp, start, mid, end, to - start);
+		final int jEnd = mid + to - iEnd;
+		int k = from;
+		while (i < iEnd && j < jEnd) {
+			if (comp.compare(src[j], src[i]) < 0) {
+				dst[k++] = src[j++];
+			} else {
+				dst[k++] = src[i++];
+			}
 		}
+		System.arraycopy(src, i, dst, k, iEnd - i);
+		System.arraycopy(src, j, dst, k + iEnd - i, jEnd - j);
+	}
+
+	/**
+	 * Finds how far into src[start, mid) the first count elements of the
+	 * merge of src[start, mid) and src[mid, end) reach.
+	 */
+	private static <T> int coRank(T[] src, Comparator<T> comp, int start,
+	                              int mid, int end, int count)
+	{
+		int left = Math.max(start, start + count - (end - mid));
+		int right = min(mid, start + count);
+		while (left < right) {
+			final int i = (left + right) >>> 1;
+			final int j = mid + count - (i - start);
+			if (comp.compare(src[j - 1], src[i]) < 0) {
+				right = i;
+			} else {
+				left = i + 1;
+			}
+		}
+		return left;
 	}
 
 	static <T extends Comparable<T>> T[] sorted(T[] array) {
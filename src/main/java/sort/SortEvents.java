@@ -0,0 +1,325 @@
+package sort;
+
+import java.util.Comparator;
+import java.util.Set;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.SettingControl;
+import jdk.jfr.SettingDefinition;
+import jdk.jfr.Threshold;
+
+/**
+ * Java Flight Recorder events for the object sorts of {@link ComplexTimSort}
+ * and the buffers of {@link TimSortContext}. Every hook first asks the
+ * event type whether a recording has it enabled, and creates nothing when
+ * none has, so sorting without a recording still allocates nothing and the
+ * hooks stay in place in production. The events that time a sort or a merge
+ * come back as null then, and the sorts check for that.
+ * <p>
+ * Every event can be switched on or off and given a duration threshold in a
+ * recording's settings like any JDK event. The sort events also take a
+ * {@code minLength} setting that drops sorts of fewer elements, so a
+ * recording can be limited to the sorts that are large or slow, for example
+ * {@code sort.SortCompleted#minLength=100000} or
+ * {@code sort.SortCompleted#threshold=20 ms}.
+ */
+final class SortEvents {
+	private static final EventType SORT_STARTED =
+	EventType.getEventType(SortStarted.class);
+	private static final EventType SORT_COMPLETED =
+	EventType.getEventType(SortCompleted.class);
+	private static final EventType RUN_DETECTED =
+	EventType.getEventType(RunDetected.class);
+	private static final EventType MERGE_EXECUTED =
+	EventType.getEventType(MergeExecuted.class);
+	private static final EventType BUFFER_GROWN =
+	EventType.getEventType(BufferGrown.class);
+
+	private SortEvents() {}
+
+	/**
+	 * A sort of at least {@code minLength} elements is starting. Off by
+	 * default, as {@link SortCompleted} carries the same fields; it is there
+	 * for sorts that never finish.
+	 */
+	@Name("sort.SortStarted")
+	@Label("Sort Started")
+	@Category("TimSort")
+	@Description("A TimSort of an object array is starting")
+	@Enabled(false)
+	static final class SortStarted extends Event {
+		@Label("Length")
+		int length;
+
+		@Label("Comparator")
+		String comparator;
+
+		@Label("Merge Policy")
+		String policy;
+
+		@Name("minLength")
+		@Label("Minimum Length")
+		@SettingDefinition
+		protected boolean minLength(MinLength setting) {
+			return length >= setting.value;
+		}
+	}
+
+	/**
+	 * A sort has finished. Only sorts that took at least 1 ms are recorded
+	 * unless the threshold is changed.
+	 */
+	@Name("sort.SortCompleted")
+	@Label("Sort Completed")
+	@Category("TimSort")
+	@Description("A TimSort of an object array has finished")
+	@Threshold("1 ms")
+	static final class SortCompleted extends Event {
+		@Label("Length")
+		int length;
+
+		@Label("Comparator")
+		String comparator;
+
+		@Label("Merge Policy")
+		String policy;
+
+		@Label("Final minGallop")
+		int minGallop;
+
+		@Label("Merge Buffer Length")
+		@Description("The length of the context's object buffer afterwards")
+		int bufferLength;
+
+		@Name("minLength")
+		@Label("Minimum Length")
+		@SettingDefinition
+		protected boolean minLength(MinLength setting) {
+			return length >= setting.value;
+		}
+	}
+
+	/**
+	 * A natural run has been found and, if it was short, extended by binary
+	 * insertion. Off by default, as there is one per run.
+	 */
+	@Name("sort.RunDetected")
+	@Label("Run Detected")
+	@Category("TimSort")
+	@Enabled(false)
+	static final class RunDetected extends Event {
+		@Label("Base")
+		int base;
+
+		@Label("Natural Length")
+		int naturalLength;
+
+		@Label("Length")
+		@Description("The length after extending the run to minRun")
+		int length;
+	}
+
+	/**
+	 * Two adjacent runs have been merged. Off by default, as there is one per
+	 * run.
+	 */
+	@Name("sort.MergeExecuted")
+	@Label("Merge Executed")
+	@Category("TimSort")
+	@Enabled(false)
+	static final class MergeExecuted extends Event {
+		@Label("Base")
+		int base;
+
+		@Label("Left Length")
+		int leftLength;
+
+		@Label("Right Length")
+		int rightLength;
+
+		@Label("Trimmed")
+		@Description("Elements already in place, skipped by the initial "
+		             + "gallops")
+		int trimmed;
+
+		@Label("Direction")
+		@Description("lo when the left run was copied out, hi when the right "
+		             + "one was, rotation when neither fit in a capped "
+		             + "buffer, none when the runs were already in order")
+		String direction;
+
+		@Label("Galloped Elements")
+		int gallopedElements;
+
+		@Label("Gallop Entries")
+		int gallopEntries;
+	}
+
+	/**
+	 * A context has replaced one of its buffers with a larger one. The stack
+	 * trace shows which sort needed the room.
+	 */
+	@Name("sort.BufferGrown")
+	@Label("Buffer Grown")
+	@Category("TimSort")
+	static final class BufferGrown extends Event {
+		@Label("Buffer Type")
+		String type;
+
+		@Label("Previous Length")
+		int previousLength;
+
+		@Label("Length")
+		@Description("Elements, or bytes for the direct buffer")
+		int length;
+	}
+
+	/**
+	 * The {@code minLength} setting of the sort events. When several
+	 * recordings set it, the smallest value wins, so every recording gets at
+	 * least the events it asked for.
+	 */
+	static final class MinLength extends SettingControl {
+		private volatile int value;
+
+		@Override
+		public String combine(Set<String> values) {
+			int min = Integer.MAX_VALUE;
+			for (String value : values) {
+				min = Math.min(min, parse(value));
+			}
+			return values.isEmpty() ? "0" : Integer.toString(min);
+		}
+
+		@Override
+		public void setValue(String value) {
+			this.value = parse(value);
+		}
+
+		@Override
+		public String getValue() {
+			return Integer.toString(value);
+		}
+
+		private static int parse(String value) {
+			try {
+				return Math.max(0, Integer.parseInt(value.trim()));
+			} catch (NumberFormatException e) {
+				return 0;
+			}
+		}
+	}
+
+	/**
+	 * Emits {@link SortStarted} and starts timing {@link SortCompleted}.
+	 * @return the event to pass to {@link #sortCompleted}, or null if no
+	 * recording has it enabled
+	 */
+	static SortCompleted sortStarted(int length, Comparator<?> comp,
+	                                 TimSortContext ctx)
+	{
+		if (SORT_STARTED.isEnabled()) {
+			final SortStarted started = new SortStarted();
+			started.length = length;
+			if (started.shouldCommit()) {
+				started.comparator = comp.getClass().getName();
+				started.policy = ctx.policy.toString();
+				started.commit();
+			}
+		}
+		if (!SORT_COMPLETED.isEnabled()) {
+			return null;
+		}
+		final SortCompleted completed = new SortCompleted();
+		completed.length = length;
+		completed.begin();
+		return completed;
+	}
+
+	static void sortCompleted(SortCompleted event, Comparator<?> comp,
+	                          TimSortContext ctx)
+	{
+		if (event == null) {
+			return;
+		}
+		event.end();
+		if (event.shouldCommit()) {
+			event.comparator = comp.getClass().getName();
+			event.policy = ctx.policy.toString();
+			event.minGallop = ctx.minGallop;
+			event.bufferLength = ctx.bufferLength();
+			event.commit();
+		}
+	}
+
+	static void runDetected(int base, int naturalLength, int length) {
+		if (!RUN_DETECTED.isEnabled()) {
+			return;
+		}
+		final RunDetected event = new RunDetected();
+		if (event.shouldCommit()) {
+			event.base = base;
+			event.naturalLength = naturalLength;
+			event.length = length;
+			event.commit();
+		}
+	}
+
+	/**
+	 * Starts timing a {@link MergeExecuted}.
+	 * @return the event to pass to the merge and to {@link #mergeExecuted},
+	 * or null if no recording has it enabled
+	 */
+	static MergeExecuted mergeStarted(int base, int leftLength,
+	                                  int rightLength)
+	{
+		if (!MERGE_EXECUTED.isEnabled()) {
+			return null;
+		}
+		final MergeExecuted event = new MergeExecuted();
+		event.base = base;
+		event.leftLength = leftLength;
+		event.rightLength = rightLength;
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * @param merged the number of elements left to merge after the initial
+	 * gallops
+	 * @param direction lo, hi or rotation, or null if nothing had to be
+	 * merged
+	 */
+	static void mergeExecuted(MergeExecuted event, int merged,
+	                          String direction)
+	{
+		if (event == null) {
+			return;
+		}
+		event.end();
+		if (event.shouldCommit()) {
+			event.trimmed = event.leftLength + event.rightLength - merged;
+			event.direction = direction == null ? "none" : direction;
+			event.commit();
+		}
+	}
+
+	static void bufferGrown(String type, int previousLength, int length) {
+		if (!BUFFER_GROWN.isEnabled()) {
+			return;
+		}
+		final BufferGrown event = new BufferGrown();
+		if (event.shouldCommit()) {
+			event.type = type;
+			event.previousLength = previousLength;
+			event.length = length;
+			event.commit();
+		}
+	}
+}
@@ -0,0 +1,102 @@
+package sort;
+
+/**
+ * What {@link SortPlanner} found out about an array and which engine it chose
+ * to sort it with. Plans are immutable, and {@link #toString()} is meant for
+ * logs.
+ * <p>
+ * The figures come from a sample of adjacent pairs, not from the whole array,
+ * so they are estimates: a descent is a pair whose second element comes
+ * before its first, and an equal pair is one whose elements compare equal.
+ */
+public final class SortPlan {
+
+	/**
+	 * The engines a plan can choose from.
+	 */
+	public enum Engine {
+		/** {@link ComplexTimSort} on the calling thread. */
+		TIMSORT,
+		/** {@link ComplexTimSort#parallelSort} on the common fork-join pool. */
+		PARALLEL_TIMSORT,
+		/** {@link RadixSort}. */
+		RADIX
+	}
+
+	private final Engine engine;
+	private final int length;
+	private final int probedPairs;
+	private final int descents;
+	private final int equalPairs;
+
+	SortPlan(Engine engine, int length, int probedPairs, int descents,
+	         int equalPairs)
+	{
+		this.engine = engine;
+		this.length = length;
+		this.probedPairs = probedPairs;
+		this.descents = descents;
+		this.equalPairs = equalPairs;
+	}
+
+	/** @return the engine chosen */
+	public Engine engine() {
+		return engine;
+	}
+
+	/** @return the length of the array */
+	public int length() {
+		return length;
+	}
+
+	/** @return the number of adjacent pairs that were compared */
+	public int probedPairs() {
+		return probedPairs;
+	}
+
+	/** @return the number of probed pairs that were out of order */
+	public int descents() {
+		return descents;
+	}
+
+	/** @return the number of probed pairs that compared equal */
+	public int equalPairs() {
+		return equalPairs;
+	}
+
+	/**
+	 * Returns the share of adjacent pairs that are out of order, as an
+	 * estimate of how far the array is from sorted: about 0 for an ascending
+	 * array, 0.5 for a random one and 1 for a descending one.
+	 * @return the share of probed pairs that were descents
+	 */
+	public double descentRatio() {
+		return probedPairs == 0 ? 0 : (double) descents / probedPairs;
+	}
+
+	/** @return the share of probed pairs that compared equal */
+	public double duplicateRatio() {
+		return probedPairs == 0 ? 0 : (double) equalPairs / probedPairs;
+	}
+
+	/**
+	 * Estimates how many ascending runs the array holds, taking every descent
+	 * as the start of a new run. A descending array counts as many runs here,
+	 * though TimSort reverses it as one.
+	 * @return the estimated number of ascending runs
+	 */
+	public long estimatedRuns() {
+		return length == 0 ? 0 : 1 + Math.round(descentRatio() * (length - 1));
+	}
+
+	@Override
+	public String toString() {
+		return "SortPlan{engine=" + engine
+		       + ", length=" + length
+		       + ", probedPairs=" + probedPairs
+		       + ", descentRatio=" + descentRatio()
+		       + ", duplicateRatio=" + duplicateRatio()
+		       + ", estimatedRuns=" + estimatedRuns()
+		       + '}';
+	}
+}
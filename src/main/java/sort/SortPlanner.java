@@ -0,0 +1,221 @@
+package sort;
+
+import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
+
+import static sort.RadixSort.PROBE_LENGTH;
+import static sort.RadixSort.PROBE_WINDOWS;
+import static sort.RadixSort.RADIX_THRESHOLD;
+
+/**
+ * A front door that looks at an array before sorting it and picks an engine.
+ * The probe compares about a thousand adjacent pairs, in short windows
+ * spread over the array, and counts descents and equal pairs. That is enough
+ * to tell an array of long runs, ascending or descending, from a shuffled
+ * one.
+ * <ul>
+ * <li>Small arrays, and arrays made mostly of runs, go to
+ * {@link ComplexTimSort} on the calling thread, where finding and merging the
+ * runs takes close to linear time. Splitting such arrays across threads would
+ * cut runs apart and cost more than it saves.</li>
+ * <li>Large shuffled arrays of objects go to
+ * {@link ComplexTimSort#parallelSort} when the common pool has more than one
+ * thread.</li>
+ * <li>Large shuffled arrays of ints and longs go to {@link RadixSort}.</li>
+ * </ul>
+ * Every sort returns the {@link SortPlan} it followed, so callers can log
+ * what was found and what was chosen. {@link OtherSorts} is never chosen, as
+ * TimSort beats its merge sort on every input and its quicksort goes
+ * quadratic on sorted ones.
+ */
+public interface SortPlanner {
+	int PARALLEL_THRESHOLD = 1 << 16;
+
+	/**
+	 * Probes an array of comparable objects, without sorting it.
+	 * @param <T> the type of the array
+	 * @param arr the array to probe
+	 * @return the plan that {@link #sort(Comparable[])} would follow
+	 */
+	static <T extends Comparable<T>> SortPlan plan(T[] arr) {
+		return plan(arr, Comparator.nullsFirst(Comparator.naturalOrder()));
+	}
+
+	/**
+	 * Probes an array under a given comparator, without sorting it.
+	 * @param <T> the type of the array
+	 * @param arr the array to probe
+	 * @param comp the comparator the array would be sorted with
+	 * @return the plan that {@link #sort(Object[], Comparator)} would follow
+	 */
+	static <T> SortPlan plan(T[] arr, Comparator<T> comp) {
+		final int n = arr.length;
+		final int windows = windows(n);
+		final int step = n / windows;
+		final int span = span(n);
+		int probed = 0, descents = 0, equal = 0;
+		for (int w = 0; w < windows; w++) {
+			final int base = w * step;
+			for (int i = base + 1; i < base + span; i++) {
+				final int compare = comp.compare(arr[i], arr[i - 1]);
+				probed++;
+				if (compare < 0) {
+					descents++;
+				} else if (compare == 0) {
+					equal++;
+				}
+			}
+		}
+
+		final SortPlan.Engine engine;
+		if (n < PARALLEL_THRESHOLD || hasRuns(probed, descents)
+		    || ForkJoinPool.getCommonPoolParallelism() < 2)
+		{
+			engine = SortPlan.Engine.TIMSORT;
+		} else {
+			engine = SortPlan.Engine.PARALLEL_TIMSORT;
+		}
+		return new SortPlan(engine, n, probed, descents, equal);
+	}
+
+	/**
+	 * Probes an array of ints, without sorting it.
+	 * @param arr the array to probe
+	 * @return the plan that {@link #sort(int[])} would follow
+	 */
+	static SortPlan plan(int[] arr) {
+		final int n = arr.length;
+		final int windows = windows(n);
+		final int step = n / windows;
+		final int span = span(n);
+		int probed = 0, descents = 0, equal = 0;
+		for (int w = 0; w < windows; w++) {
+			final int base = w * step;
+			for (int i = base + 1; i < base + span; i++) {
+				probed++;
+				if (arr[i] < arr[i - 1]) {
+					descents++;
+				} else if (arr[i] == arr[i - 1]) {
+					equal++;
+				}
+			}
+		}
+		return new SortPlan(primitiveEngine(n, probed, descents), n, probed,
+		                    descents, equal);
+	}
+
+	/**
+	 * Probes an array of longs, without sorting it.
+	 * @param arr the array to probe
+	 * @return the plan that {@link #sort(long[])} would follow
+	 */
+	static SortPlan plan(long[] arr) {
+		final int n = arr.length;
+		final int windows = windows(n);
+		final int step = n / windows;
+		final int span = span(n);
+		int probed = 0, descents = 0, equal = 0;
+		for (int w = 0; w < windows; w++) {
+			final int base = w * step;
+			for (int i = base + 1; i < base + span; i++) {
+				probed++;
+				if (arr[i] < arr[i - 1]) {
+					descents++;
+				} else if (arr[i] == arr[i - 1]) {
+					equal++;
+				}
+			}
+		}
+		return new SortPlan(primitiveEngine(n, probed, descents), n, probed,
+		                    descents, equal);
+	}
+
+	/**
+	 * Sorts an array of comparable objects with the engine its probe points
+	 * to. Nulls come first.
+	 * @param <T> the type of the array
+	 * @param arr the array to be sorted
+	 * @return the plan that was followed
+	 */
+	static <T extends Comparable<T>> SortPlan sort(T[] arr) {
+		return sort(arr, Comparator.nullsFirst(Comparator.naturalOrder()));
+	}
+
+	/**
+	 * Sorts an array using a given comparator with the engine its probe
+	 * points to. Whichever engine runs, the sort is stable.
+	 * @param <T> the type of the array
+	 * @param arr the array to be sorted
+	 * @param comp the comparator used to sort the array
+	 * @return the plan that was followed
+	 */
+	static <T> SortPlan sort(T[] arr, Comparator<T> comp) {
+		final SortPlan plan = plan(arr, comp);
+		if (plan.engine() == SortPlan.Engine.PARALLEL_TIMSORT) {
+			ComplexTimSort.parallelSort(arr, comp);
+		} else {
+			ComplexTimSort.sort(arr, comp);
+		}
+		return plan;
+	}
+
+	/**
+	 * Sorts an array of ints with the engine its probe points to.
+	 * @param arr the array to be sorted
+	 * @return the plan that was followed
+	 */
+	static SortPlan sort(int[] arr) {
+		final SortPlan plan = plan(arr);
+		if (plan.engine() == SortPlan.Engine.RADIX) {
+			RadixSort.sort(arr);
+		} else {
+			ComplexTimSort.sort(arr);
+		}
+		return plan;
+	}
+
+	/**
+	 * Sorts an array of longs with the engine its probe points to.
+	 * @param arr the array to be sorted
+	 * @return the plan that was followed
+	 */
+	static SortPlan sort(long[] arr) {
+		final SortPlan plan = plan(arr);
+		if (plan.engine() == SortPlan.Engine.RADIX) {
+			RadixSort.sort(arr);
+		} else {
+			ComplexTimSort.sort(arr);
+		}
+		return plan;
+	}
+
+	/**
+	 * Probes the whole of a short array as one window, and a long one in
+	 * {@link RadixSort#PROBE_WINDOWS} windows, the same ones
+	 * {@link RadixSort} looks at.
+	 */
+	private static int windows(int n) {
+		return n > PROBE_WINDOWS * PROBE_LENGTH ? PROBE_WINDOWS : 1;
+	}
+
+	private static int span(int n) {
+		return n > PROBE_WINDOWS * PROBE_LENGTH ? PROBE_LENGTH : n;
+	}
+
+	/**
+	 * @return whether the probed pairs were nearly all ascending or nearly
+	 * all descending, as in an array made of long runs
+	 */
+	private static boolean hasRuns(int probed, int descents) {
+		return descents < probed >>> 3 || descents > probed - (probed >>> 3);
+	}
+
+	private static SortPlan.Engine primitiveEngine(int n, int probed,
+	                                               int descents)
+	{
+		if (n < RADIX_THRESHOLD || hasRuns(probed, descents)) {
+			return SortPlan.Engine.TIMSORT;
+		}
+		return SortPlan.Engine.RADIX;
+	}
+}
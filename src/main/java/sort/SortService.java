@@ -0,0 +1,349 @@
+package sort;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sorts arrays handed over by any number of threads on a fixed set of worker
+ * threads, for services that sort many small arrays concurrently. Every
+ * worker sorts through its own thread's {@link TimSortContext}, so the run
+ * stack and merge buffers are allocated once per worker and then reused by
+ * every job it runs, rather than once per call on every request thread.
+ * <p>
+ * Jobs wait in a bounded queue. A worker that wakes up takes every job
+ * waiting, up to {@link #MAX_BATCH}, and runs them back to back, so a burst of
+ * tiny jobs costs one hand-off rather than one per job. The time each job
+ * spends queued and sorting is recorded, and {@link #latencies()} reports
+ * percentiles of both.
+ * <p>
+ * Arrays are sorted in place, and the future of a job completes with the
+ * array it was given, on the worker thread, so dependent stages that do real
+ * work should be run asynchronously.
+ */
+public final class SortService implements AutoCloseable {
+	/** The most jobs a worker takes from the queue at once. */
+	public static final int MAX_BATCH = 64;
+
+	private static final Job<Object> STOP = new Job<>(null, null);
+
+	private final BlockingQueue<Job<?>> queue;
+	private final Thread[] workers;
+	private final LatencyHistogram queueLatency = new LatencyHistogram();
+	private final LatencyHistogram sortLatency = new LatencyHistogram();
+	private final AtomicLong batches = new AtomicLong();
+	private volatile boolean closed;
+
+	/**
+	 * Sorts an array in place with a context that belongs to the worker.
+	 * @param <A> the type of the array
+	 */
+	@FunctionalInterface
+	private interface Sorter<A> {
+		void sort(A array, TimSortContext ctx);
+	}
+
+	private static final class Job<A> {
+		final A array;
+		final Sorter<A> sorter;
+		final CompletableFuture<A> future = new CompletableFuture<>();
+		final long submitted = System.nanoTime();
+
+		Job(A array, Sorter<A> sorter) {
+			this.array = array;
+			this.sorter = sorter;
+		}
+	}
+
+	/**
+	 * Creates a service with one worker per available processor.
+	 * @param queueCapacity the most jobs that may wait at once
+	 */
+	public SortService(int queueCapacity) {
+		this(Runtime.getRuntime().availableProcessors(), queueCapacity);
+	}
+
+	/**
+	 * Creates a service and starts its workers.
+	 * @param workers the number of worker threads
+	 * @param queueCapacity the most jobs that may wait at once
+	 * @throws IllegalArgumentException if either is not positive
+	 */
+	public SortService(int workers, int queueCapacity) {
+		if (workers <= 0 || queueCapacity <= 0) {
+			throw new IllegalArgumentException(
+			"workers (" + workers + ") and queueCapacity (" + queueCapacity
+			+ ") must be positive");
+		}
+		this.queue = new ArrayBlockingQueue<>(queueCapacity);
+		this.workers = new Thread[workers];
+		for (int i = 0; i < workers; i++) {
+			final Thread worker = new Thread(this::work, "sort-service-" + i);
+			worker.setDaemon(true);
+			this.workers[i] = worker;
+			worker.start();
+		}
+	}
+
+	/**
+	 * Sorts an array of comparable objects, nulls first.
+	 * @param <T> the type of the array
+	 * @param arr the array to be sorted
+	 * @return a future completed with the sorted array
+	 * @throws RejectedExecutionException if the queue is full or the service
+	 * is closed
+	 */
+	public <T extends Comparable<T>> CompletableFuture<T[]> submit(T[] arr) {
+		return submit(arr, Comparator.nullsFirst(Comparator.naturalOrder()));
+	}
+
+	/**
+	 * Sorts an array using a given comparator.
+	 * @param <T> the type of the array
+	 * @param arr the array to be sorted
+	 * @param comp the comparator used to sort the array
+	 * @return a future completed with the sorted array, or exceptionally with
+	 * whatever the comparator threw
+	 * @throws RejectedExecutionException if the queue is full or the service
+	 * is closed
+	 */
+	public <T> CompletableFuture<T[]> submit(T[] arr, Comparator<T> comp) {
+		return enqueue(new Job<>(arr, (array, ctx) ->
+		ObjectTimSort.sort(array, 0, array.length, comp, ctx)));
+	}
+
+	/**
+	 * Sorts an array of ints into ascending order.
+	 * @param arr the array to be sorted
+	 * @return a future completed with the sorted array
+	 * @throws RejectedExecutionException if the queue is full or the service
+	 * is closed
+	 */
+	public CompletableFuture<int[]> submit(int[] arr) {
+		return enqueue(new Job<>(arr, (array, ctx) ->
+		PrimitiveTimSort.sort(array, 0, array.length, ctx)));
+	}
+
+	/**
+	 * Sorts an array of longs into ascending order.
+	 * @param arr the array to be sorted
+	 * @return a future completed with the sorted array
+	 * @throws RejectedExecutionException if the queue is full or the service
+	 * is closed
+	 */
+	public CompletableFuture<long[]> submit(long[] arr) {
+		return enqueue(new Job<>(arr, (array, ctx) ->
+		PrimitiveTimSort.sort(array, 0, array.length, ctx)));
+	}
+
+	/**
+	 * Sorts an array of doubles into the order of {@link Double#compare}.
+	 * @param arr the array to be sorted
+	 * @return a future completed with the sorted array
+	 * @throws RejectedExecutionException if the queue is full or the service
+	 * is closed
+	 */
+	public CompletableFuture<double[]> submit(double[] arr) {
+		return enqueue(new Job<>(arr, (array, ctx) ->
+		PrimitiveTimSort.sort(array, 0, array.length, ctx)));
+	}
+
+	private <A> CompletableFuture<A> enqueue(Job<A> job) {
+		if (closed) {
+			throw new RejectedExecutionException("sort service is closed");
+		}
+		if (!queue.offer(job)) {
+			throw new RejectedExecutionException("sort queue is full");
+		}
+		// close may have drained the queue between the check and the offer;
+		// if the job is still there, take it back, and if not, a worker or
+		// close has it and completes it
+		if (closed && queue.remove(job)) {
+			throw new RejectedExecutionException("sort service is closed");
+		}
+		return job.future;
+	}
+
+	/** @return percentiles of the time jobs spent queued and sorting */
+	public Latencies latencies() {
+		return new Latencies(queueLatency.snapshot(), sortLatency.snapshot(),
+		                     batches.get());
+	}
+
+	/**
+	 * Stops accepting jobs, lets the workers finish the jobs already queued
+	 * and waits for them to stop. Like {@link
+	 * java.util.concurrent.ExecutorService#close()}, an interrupt does not
+	 * cut the wait short: the interrupt status is set again once the workers
+	 * have stopped. Closing a service that is already closed has no effect.
+	 */
+	@Override
+	public synchronized void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		boolean interrupted = false;
+		for (int i = 0; i < workers.length; ) {
+			try {
+				queue.put(STOP);
+				i++;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		for (int i = 0; i < workers.length; ) {
+			try {
+				workers[i].join();
+				i++;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		// a job that got past the closed check after the last STOP went in
+		final List<Job<?>> stranded = new ArrayList<>();
+		queue.drainTo(stranded);
+		for (Job<?> job : stranded) {
+			reject(job);
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void work() {
+		final List<Job<?>> batch = new ArrayList<>(MAX_BATCH);
+		while (true) {
+			try {
+				batch.add(queue.take());
+			} catch (InterruptedException e) {
+				return;
+			}
+			queue.drainTo(batch, MAX_BATCH - 1);
+			batches.incrementAndGet();
+			for (Job<?> job : batch) {
+				if (job == STOP) {
+					handBack(batch.subList(batch.indexOf(STOP) + 1,
+					                       batch.size()));
+					return;
+				}
+				run(job);
+			}
+			batch.clear();
+		}
+	}
+
+	/**
+	 * Deals with what a worker took after its STOP. The other STOPs go back
+	 * in the queue for the workers still running; the jobs were queued after
+	 * the service closed, so they are rejected.
+	 */
+	private void handBack(List<Job<?>> rest) {
+		boolean interrupted = false;
+		for (Job<?> job : rest) {
+			if (job != STOP) {
+				reject(job);
+				continue;
+			}
+			while (true) {
+				try {
+					queue.put(STOP);
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static void reject(Job<?> job) {
+		job.future.completeExceptionally(
+		new RejectedExecutionException("sort service is closed"));
+	}
+
+	private <A> void run(Job<A> job) {
+		final long started = System.nanoTime();
+		queueLatency.record(started - job.submitted);
+		final TimSortContext ctx = TimSortContext.acquire();
+		try {
+			job.sorter.sort(job.array, ctx);
+		} catch (RuntimeException | Error e) {
+			sortLatency.record(System.nanoTime() - started);
+			job.future.completeExceptionally(e);
+			return;
+		} finally {
+			ctx.exit();
+		}
+		sortLatency.record(System.nanoTime() - started);
+		job.future.complete(job.array);
+	}
+
+	/**
+	 * A snapshot of the latencies a {@link SortService} has recorded since it
+	 * was created. Percentiles are rounded up by at most 12.5%.
+	 */
+	public static final class Latencies {
+		private final long[] queued;
+		private final long[] sorting;
+		private final long batches;
+
+		private Latencies(long[] queued, long[] sorting, long batches) {
+			this.queued = queued;
+			this.sorting = sorting;
+			this.batches = batches;
+		}
+
+		/** @return the number of jobs that have finished */
+		public long jobs() {
+			long jobs = 0;
+			for (long count : sorting) {
+				jobs += count;
+			}
+			return jobs;
+		}
+
+		/** @return the number of batches the workers have taken */
+		public long batches() {
+			return batches;
+		}
+
+		/**
+		 * @param percentile the share of jobs, from 0 to 100
+		 * @return the time in nanoseconds that share of jobs waited at most
+		 * before a worker took them
+		 */
+		public long queueNanos(double percentile) {
+			return LatencyHistogram.percentile(queued, percentile);
+		}
+
+		/**
+		 * @param percentile the share of jobs, from 0 to 100
+		 * @return the time in nanoseconds that share of jobs took at most to
+		 * sort
+		 */
+		public long sortNanos(double percentile) {
+			return LatencyHistogram.percentile(sorting, percentile);
+		}
+
+		@Override
+		public String toString() {
+			return "Latencies{jobs=" + jobs()
+			       + ", batches=" + batches
+			       + ", queueNanos(p50/p90/p99/max)=" + queueNanos(50)
+			       + "/" + queueNanos(90) + "/" + queueNanos(99)
+			       + "/" + queueNanos(100)
+			       + ", sortNanos(p50/p90/p99/max)=" + sortNanos(50)
+			       + "/" + sortNanos(90) + "/" + sortNanos(99)
+			       + "/" + sortNanos(100)
+			       + '}';
+		}
+	}
+}
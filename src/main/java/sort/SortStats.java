@@ -0,0 +1,209 @@
+package sort;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Counters filled in by {@link ComplexTimSort} when a sink is attached, either
+ * per call through {@link ComplexTimSort#sort(Object[], Comparator, SortStats)}
+ * or for every sort on a context through
+ * {@link TimSortContext#setStats(SortStats)}. Counters accumulate across sorts
+ * until {@link #reset()} is called. A sink is not thread safe, so each thread
+ * should fill in its own.
+ * <p>
+ * Time in galloping and one-at-a-time merging is measured in the number of
+ * elements each mode placed, not in nanoseconds, as timing every step would
+ * cost far more than the step itself.
+ */
+public final class SortStats {
+	private static final int HISTOGRAM_BUCKETS = 32;
+
+	private long sorts;
+	private long elements;
+	private long comparisons;
+	private long runs;
+	private long runElements;
+	private int longestRun;
+	private final long[] runLengths = new long[HISTOGRAM_BUCKETS];
+	private long extendedRuns;
+	private long insertedElements;
+	private long merges;
+	private long mergedElements;
+	private int largestMerge;
+	private long gallopEntries;
+	private long gallopedElements;
+	private long linearElements;
+	private int minGallop = ComplexTimSort.MIN_GALLOP;
+
+	<T> Comparator<T> counting(Comparator<T> comp) {
+		return (a, b) -> {
+			comparisons++;
+			return comp.compare(a, b);
+		};
+	}
+
+	void sortStarted(int length) {
+		sorts++;
+		elements += length;
+	}
+
+	void sortFinished(int finalMinGallop) {
+		minGallop = finalMinGallop;
+	}
+
+	void runFound(int length) {
+		runs++;
+		runElements += length;
+		if (length > longestRun) {
+			longestRun = length;
+		}
+		runLengths[31 - Integer.numberOfLeadingZeros(length)]++;
+	}
+
+	void runExtended(int inserted) {
+		if (inserted > 0) {
+			extendedRuns++;
+			insertedElements += inserted;
+		}
+	}
+
+	void mergeStarted(int length) {
+		merges++;
+		mergedElements += length;
+		if (length > largestMerge) {
+			largestMerge = length;
+		}
+	}
+
+	void mergeFinished(int length, int galloped, int entries) {
+		gallopEntries += entries;
+		gallopedElements += galloped;
+		linearElements += length - galloped;
+	}
+
+	/**
+	 * Clears every counter.
+	 */
+	public void reset() {
+		sorts = 0;
+		elements = 0;
+		comparisons = 0;
+		runs = 0;
+		runElements = 0;
+		longestRun = 0;
+		Arrays.fill(runLengths, 0);
+		extendedRuns = 0;
+		insertedElements = 0;
+		merges = 0;
+		mergedElements = 0;
+		largestMerge = 0;
+		gallopEntries = 0;
+		gallopedElements = 0;
+		linearElements = 0;
+		minGallop = ComplexTimSort.MIN_GALLOP;
+	}
+
+	/** @return the number of sorts recorded */
+	public long sorts() {
+		return sorts;
+	}
+
+	/** @return the total number of elements sorted */
+	public long elements() {
+		return elements;
+	}
+
+	/** @return the number of times the comparator was called */
+	public long comparisons() {
+		return comparisons;
+	}
+
+	/** @return the number of natural runs found, before any extension */
+	public long runs() {
+		return runs;
+	}
+
+	/** @return the mean length of the natural runs found */
+	public double meanRunLength() {
+		return runs == 0 ? 0 : (double) runElements / runs;
+	}
+
+	/** @return the length of the longest natural run found */
+	public int longestRun() {
+		return longestRun;
+	}
+
+	/**
+	 * Returns how many natural runs had a length in [2^bucket, 2^(bucket+1)).
+	 * @param bucket the base 2 logarithm of the run length, rounded down
+	 * @return the number of runs in the bucket
+	 */
+	public long runsOfLength(int bucket) {
+		return runLengths[bucket];
+	}
+
+	/** @return the number of natural runs binarySort extended to minRun */
+	public long extendedRuns() {
+		return extendedRuns;
+	}
+
+	/** @return the number of elements binarySort inserted into runs */
+	public long insertedElements() {
+		return insertedElements;
+	}
+
+	/** @return the number of merges */
+	public long merges() {
+		return merges;
+	}
+
+	/** @return the total length of all merged run pairs */
+	public long mergedElements() {
+		return mergedElements;
+	}
+
+	/** @return the length of the largest merged run pair */
+	public int largestMerge() {
+		return largestMerge;
+	}
+
+	/** @return the number of times a merge switched into galloping mode */
+	public long gallopEntries() {
+		return gallopEntries;
+	}
+
+	/** @return the number of elements placed while galloping */
+	public long gallopedElements() {
+		return gallopedElements;
+	}
+
+	/** @return the number of elements placed one at a time */
+	public long linearElements() {
+		return linearElements;
+	}
+
+	/** @return the minGallop the most recent sort finished with */
+	public int minGallop() {
+		return minGallop;
+	}
+
+	@Override
+	public String toString() {
+		return "SortStats{sorts=" + sorts
+		       + ", elements=" + elements
+		       + ", comparisons=" + comparisons
+		       + ", runs=" + runs
+		       + ", meanRunLength=" + meanRunLength()
+		       + ", longestRun=" + longestRun
+		       + ", extendedRuns=" + extendedRuns
+		       + ", insertedElements=" + insertedElements
+		       + ", merges=" + merges
+		       + ", mergedElements=" + mergedElements
+		       + ", largestMerge=" + largestMerge
+		       + ", gallopEntries=" + gallopEntries
+		       + ", gallopedElements=" + gallopedElements
+		       + ", linearElements=" + linearElements
+		       + ", minGallop=" + minGallop
+		       + '}';
+	}
+}
@@ -0,0 +1,115 @@
+package sort;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+/**
+ * Collects batches of elements into one sorted sequence without sorting the
+ * whole collection again on every batch. The accumulator keeps a TimSort run
+ * stack alive between appends: each batch is split into runs that are pushed
+ * onto the stack, and only the merges the stack invariants call for are done
+ * right away. The cost of an append therefore depends on the size of the
+ * batch, and batches that are already sorted, or that continue where the last
+ * one left off, are cheapest of all. The remaining runs are merged when the
+ * result is asked for.
+ * <p>
+ * Elements that compare equal keep the order they were appended in. An
+ * accumulator is not thread safe.
+ * @param <T> the type of the elements
+ */
+public final class SortedAccumulator<T> {
+	private static final int INITIAL_CAPACITY = 16;
+	private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+
+	private final Comparator<T> comp;
+	private final TimSortContext ctx = new TimSortContext();
+	private Object[] elements = new Object[INITIAL_CAPACITY];
+	private int size;
+
+	/**
+	 * Creates an empty accumulator.
+	 * @param comp the comparator used to order the elements
+	 */
+	public SortedAccumulator(Comparator<T> comp) {
+		this.comp = comp;
+		ctx.enter();
+	}
+
+	/** @return the number of elements appended since the last drain */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Appends a batch of elements, in any order.
+	 * @param batch the elements to add
+	 */
+	public void append(T[] batch) {
+		append(batch, batch.length);
+	}
+
+	/**
+	 * Appends a batch of elements, in any order.
+	 * @param batch the elements to add
+	 */
+	@SuppressWarnings("unchecked")
+	public void append(Collection<T> batch) {
+		final Object[] array = batch.toArray();
+		append((T[]) array, array.length);
+	}
+
+	@SuppressWarnings("unchecked")
+	private void append(T[] batch, int length) {
+		if (length == 0) {
+			return;
+		}
+		if (elements.length - size < length) {
+			elements = Arrays.copyOf(elements, grow((long) size + length));
+		}
+		System.arraycopy(batch, 0, elements, size, length);
+		ObjectTimSort.pushRuns((T[]) elements, size, size + length,
+		                       ObjectTimSort.runLength(length), comp, ctx);
+		size += length;
+	}
+
+	private int grow(long required) {
+		if (required > MAX_CAPACITY) {
+			throw new OutOfMemoryError("accumulator is too large: " + required);
+		}
+		final long grown = elements.length + (elements.length >> 1);
+		return (int) min(MAX_CAPACITY, max(grown, required));
+	}
+
+	/**
+	 * Merges everything appended so far and returns a copy of it. The
+	 * accumulator keeps its elements, and later appends are merged into the
+	 * already sorted sequence.
+	 * @return the elements in sorted order
+	 */
+	@SuppressWarnings("unchecked")
+	public List<T> snapshot() {
+		ObjectTimSort.collapse((T[]) elements, comp, ctx);
+		return Arrays.asList((T[]) Arrays.copyOf(elements, size));
+	}
+
+	/**
+	 * Merges everything appended so far and hands it over, leaving the
+	 * accumulator empty. The storage is handed over as is rather than copied.
+	 * @return the elements in sorted order
+	 */
+	@SuppressWarnings("unchecked")
+	public List<T> drain() {
+		ObjectTimSort.collapse((T[]) elements, comp, ctx);
+		final List<T> result = Arrays.asList((T[]) elements).subList(0, size);
+		elements = new Object[INITIAL_CAPACITY];
+		size = 0;
+		ctx.exit();
+		ctx.enter();
+		return result;
+	}
+}
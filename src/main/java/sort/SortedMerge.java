@@ -0,0 +1,70 @@
+package sort;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Merges sources that are each already sorted into a single sorted sequence
+ * with a loser tree, so every element costs about log k comparisons for k
+ * sources, and a source that keeps winning costs one comparison per element.
+ * Elements that compare equal come out in the order of their sources, and
+ * within a source in their original order.
+ */
+public interface SortedMerge {
+
+	/**
+	 * Merges sorted iterators lazily. Each source is only read as far as the
+	 * output has been consumed, and only one element per source is held at a
+	 * time.
+	 * @param <T> the type of the elements
+	 * @param sources the sorted sources to merge
+	 * @param comp the comparator the sources are sorted by
+	 * @return an iterator over the merged elements
+	 */
+	static <T> Iterator<T> merge(List<Iterator<T>> sources,
+	                             Comparator<T> comp)
+	{
+		return new LoserTree.IteratorMerge<>(sources, comp);
+	}
+
+	/**
+	 * Merges sorted iterators lazily into a sequential stream.
+	 * @param <T> the type of the elements
+	 * @param sources the sorted sources to merge
+	 * @param comp the comparator the sources are sorted by
+	 * @return a stream of the merged elements
+	 * @see #merge(List, Comparator)
+	 */
+	static <T> Stream<T> mergeStream(List<Iterator<T>> sources,
+	                                 Comparator<T> comp)
+	{
+		return StreamSupport.stream(
+		Spliterators.spliteratorUnknownSize(merge(sources, comp),
+		                                    Spliterator.ORDERED),
+		false);
+	}
+
+	/**
+	 * Merges sorted arrays into a new array of the same type as the first.
+	 * When one array wins several times in a row, the stretch of it that
+	 * comes before the next best head is found by galloping and copied in
+	 * bulk.
+	 * @param <T> the type of the elements
+	 * @param sources the sorted arrays to merge
+	 * @param comp the comparator the arrays are sorted by
+	 * @return the merged array
+	 * @throws IllegalArgumentException if there are no sources, or they hold
+	 * too many elements for one array
+	 */
+	static <T> T[] mergeArrays(List<T[]> sources, Comparator<T> comp) {
+		if (sources.isEmpty()) {
+			throw new IllegalArgumentException("no arrays to merge");
+		}
+		return new LoserTree.ArrayMerge<>(sources, comp).merge();
+	}
+}
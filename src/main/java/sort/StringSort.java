@@ -0,0 +1,301 @@
+package sort;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.function.Function;
+
+import static java.lang.Math.min;
+
+/**
+ * Sorts strings a character at a time instead of comparing whole strings, so
+ * a prefix shared by many strings is looked at once per level rather than
+ * once per comparison. Strings are ordered as by {@link String#compareTo},
+ * with nulls first.
+ * <p>
+ * {@link #sort(String[])} is a three-way radix quicksort (multikey
+ * quicksort): it partitions on the character at the current depth and only
+ * moves one character deeper within the partition of equal characters.
+ * {@link #stableSort(Object[], Function)} is an MSD radix sort that
+ * distributes elements into buckets by character, keeping their order, and
+ * hands small buckets to {@link ComplexTimSort} with a comparator that skips
+ * the prefix the bucket is known to share.
+ */
+public interface StringSort {
+	int INSERTION_THRESHOLD = 12;
+	int MSD_THRESHOLD = 64;
+
+	/**
+	 * Sorts an array of strings.
+	 * @param arr the array to be sorted
+	 */
+	static void sort(String[] arr) {
+		int lo = 0;
+		for (int i = 0; i < arr.length; i++) {
+			if (arr[i] == null) {
+				arr[i] = arr[lo];
+				arr[lo++] = null;
+			}
+		}
+		multikeySort(arr, lo, arr.length, 0);
+	}
+
+	/**
+	 * Sorts an array by a string key. Elements with equal keys keep their
+	 * order. The key function is called for every element at every level of
+	 * the radix sort, so it should be cheap, such as a field read.
+	 * @param <T> the type of the array
+	 * @param arr the array to be sorted
+	 * @param key the function extracting the key of an element
+	 */
+	static <T> void stableSort(T[] arr, Function<T, String> key) {
+		final int n = arr.length;
+		if (n < 2) {
+			return;
+		}
+		@SuppressWarnings("unchecked")
+		final T[] aux = (T[]) new Object[n];
+		int nulls = 0;
+		int others = 0;
+		for (T element : arr) {
+			if (key.apply(element) == null) {
+				arr[nulls++] = element;
+			} else {
+				aux[others++] = element;
+			}
+		}
+		System.arraycopy(aux, 0, arr, nulls, others);
+
+		final TimSortContext ctx = TimSortContext.acquire();
+		try {
+			msdSort(arr, aux, key, nulls, n, 0, ctx);
+		} finally {
+			ctx.exit();
+		}
+	}
+
+	/**
+	 * Sorts arr[lo, hi), whose strings all share their first d characters.
+	 */
+	private static void multikeySort(String[] arr, int lo, int hi, int d) {
+		while (hi - lo > INSERTION_THRESHOLD) {
+			final int pivot = median(charAt(arr[lo], d),
+			                         charAt(arr[(lo + hi) >>> 1], d),
+			                         charAt(arr[hi - 1], d));
+			int lt = lo, gt = hi, i = lo;
+			while (i < gt) {
+				final int c = charAt(arr[i], d);
+				if (c < pivot) {
+					swap(arr, lt++, i++);
+				} else if (c > pivot) {
+					swap(arr, i, --gt);
+				} else {
+					i++;
+				}
+			}
+
+			// recurse into the two smaller partitions and loop on the
+			// largest, which keeps the recursion O(log n) deep
+			final int less = lt - lo;
+			final int equal = pivot < 0 ? 0 : gt - lt;
+			final int greater = hi - gt;
+			if (less >= equal && less >= greater) {
+				if (pivot >= 0) {
+					multikeySort(arr, lt, gt, d + 1);
+				}
+				multikeySort(arr, gt, hi, d);
+				hi = lt;
+			} else if (greater >= equal) {
+				multikeySort(arr, lo, lt, d);
+				if (pivot >= 0) {
+					multikeySort(arr, lt, gt, d + 1);
+				}
+				lo = gt;
+			} else if (less + greater > 0) {
+				multikeySort(arr, lo, lt, d);
+				multikeySort(arr, gt, hi, d);
+				lo = lt;
+				hi = gt;
+				d++;
+			} else {
+				// every string has the pivot here, so they may well share more
+				d = commonPrefix(arr, lo, hi, d + 1);
+			}
+		}
+
+		for (int i = lo + 1; i < hi; i++) {
+			final String target = arr[i];
+			int j = i;
+			while (j > lo && compareFrom(target, arr[j - 1], d) < 0) {
+				arr[j] = arr[j - 1];
+				j--;
+			}
+			arr[j] = target;
+		}
+	}
+
+	/**
+	 * Sorts arr[lo, hi), whose keys all share their first d characters, using
+	 * aux[0, hi - lo) as scratch space. Buckets still to be sorted wait on an
+	 * explicit stack rather than the call stack, so keys that nest, such as
+	 * "a", "aa", "aaa", cannot overflow it, and every pass shares one array
+	 * of counts.
+	 */
+	private static <T> void msdSort(T[] arr, T[] aux, Function<T, String> key,
+	                                int lo, int hi, int d, TimSortContext ctx)
+	{
+		// one bucket for keys that end at depth d, one for every Latin-1
+		// character, and one for every other character, left to TimSort
+		final int buckets = 0x102;
+		final int[] count = new int[buckets + 1];
+		// pending buckets, as triples of lo, hi and d
+		int[] stack = new int[3 * 16];
+		int top = 0;
+		while (true) {
+			if (hi - lo < MSD_THRESHOLD) {
+				sortFrom(arr, key, lo, hi, d, ctx);
+			} else {
+				for (int i = lo; i < hi; i++) {
+					count[bucket(key.apply(arr[i]), d) + 1]++;
+				}
+				final int first = bucket(key.apply(arr[lo]), d);
+				if (count[first + 1] == hi - lo) {
+					// every key has the same character here: nothing to move
+					count[first + 1] = 0;
+					if (first == buckets - 1) {
+						sortFrom(arr, key, lo, hi, d, ctx);
+					} else if (first != 0) {
+						d = commonPrefix(arr, key, lo, hi, d + 1);
+						continue;
+					}
+				} else {
+					for (int b = 0; b < buckets; b++) {
+						count[b + 1] += count[b];
+					}
+					for (int i = lo; i < hi; i++) {
+						final T element = arr[i];
+						aux[count[bucket(key.apply(element), d)]++] = element;
+					}
+					System.arraycopy(aux, 0, arr, lo, hi - lo);
+
+					// bucket b now spans [lo + count[b - 1], lo + count[b])
+					for (int b = 1; b < buckets; b++) {
+						final int start = lo + count[b - 1];
+						final int end = lo + count[b];
+						if (end - start < 2) {
+							continue;
+						}
+						if (b == buckets - 1) {
+							sortFrom(arr, key, start, end, d, ctx);
+							continue;
+						}
+						if (top == stack.length) {
+							stack = Arrays.copyOf(stack, top << 1);
+						}
+						stack[top++] = start;
+						stack[top++] = end;
+						stack[top++] = d + 1;
+					}
+					Arrays.fill(count, 0);
+				}
+			}
+
+			if (top == 0) {
+				return;
+			}
+			d = stack[--top];
+			hi = stack[--top];
+			lo = stack[--top];
+		}
+	}
+
+	/**
+	 * Sorts arr[lo, hi) with TimSort, comparing keys from index d on.
+	 */
+	private static <T> void sortFrom(T[] arr, Function<T, String> key,
+	                                 int lo, int hi, int d,
+	                                 TimSortContext ctx)
+	{
+		if (hi - lo < 2) {
+			return;
+		}
+		final Comparator<T> comp =
+		(a, b) -> compareFrom(key.apply(a), key.apply(b), d);
+		ctx.reset();
+		ObjectTimSort.sort(arr, lo, hi, comp, ctx);
+	}
+
+	private static int bucket(String key, int d) {
+		return d < key.length() ? min(key.charAt(d), 0x100) + 1 : 0;
+	}
+
+	/**
+	 * @return the length of the prefix shared by the strings of arr[lo, hi),
+	 * which are known to share their first d characters
+	 */
+	private static int commonPrefix(String[] arr, int lo, int hi, int d) {
+		final String first = arr[lo];
+		int length = first.length();
+		for (int i = lo + 1; i < hi && length > d; i++) {
+			length = mismatch(first, arr[i], d, length);
+		}
+		return length;
+	}
+
+	/**
+	 * @return the length of the prefix shared by the keys of arr[lo, hi),
+	 * which are known to share their first d characters
+	 */
+	private static <T> int commonPrefix(T[] arr, Function<T, String> key,
+	                                    int lo, int hi, int d)
+	{
+		final String first = key.apply(arr[lo]);
+		int length = first.length();
+		for (int i = lo + 1; i < hi && length > d; i++) {
+			length = mismatch(first, key.apply(arr[i]), d, length);
+		}
+		return length;
+	}
+
+	/**
+	 * @return the first index from d on, and below limit, at which the strings
+	 * differ or one of them ends, or limit if there is none
+	 */
+	private static int mismatch(String a, String b, int d, int limit) {
+		final int length = min(limit, b.length());
+		int i = d;
+		while (i < length && a.charAt(i) == b.charAt(i)) {
+			i++;
+		}
+		return i;
+	}
+
+	/** @return the character at index d, or -1 past the end of the string */
+	private static int charAt(String s, int d) {
+		return d < s.length() ? s.charAt(d) : -1;
+	}
+
+	/**
+	 * Compares two strings that are known to agree on their first d
+	 * characters.
+	 */
+	private static int compareFrom(String a, String b, int d) {
+		final int i = mismatch(a, b, d, a.length());
+		if (i < a.length() && i < b.length()) {
+			return a.charAt(i) - b.charAt(i);
+		}
+		return a.length() - b.length();
+	}
+
+	private static int median(int a, int b, int c) {
+		if (a < b) {
+			return b < c ? b : Math.max(a, c);
+		}
+		return a < c ? a : Math.max(b, c);
+	}
+
+	private static void swap(String[] arr, int i, int j) {
+		final String temp = arr[i];
+		arr[i] = arr[j];
+		arr[j] = temp;
+	}
+}
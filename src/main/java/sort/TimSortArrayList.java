@@ -0,0 +1,194 @@
+package sort;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+/**
+ * A resizable array list whose {@link #sort(Comparator)} runs
+ * {@link ComplexTimSort} directly on the backing array. The backing array of
+ * {@link java.util.ArrayList} is private, so sorting one with this library
+ * always costs a copy out and a copy back; sorting this list costs neither.
+ * Sorting a list that is already sorted, or that is made of a few sorted
+ * stretches, takes close to linear time, which is what
+ * {@link TimSortCollectors} relies on to merge partial results.
+ * <p>
+ * Like {@code ArrayList}, the list permits nulls, is not thread safe and has
+ * fail-fast iterators.
+ * @param <T> the type of the elements
+ */
+public final class TimSortArrayList<T> extends AbstractList<T>
+implements RandomAccess
+{
+	private static final int INITIAL_CAPACITY = 16;
+	private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+
+	private Object[] elements;
+	private int size;
+
+	/**
+	 * Creates an empty list.
+	 */
+	public TimSortArrayList() {
+		this(INITIAL_CAPACITY);
+	}
+
+	/**
+	 * Creates an empty list with room for a given number of elements.
+	 * @param capacity the initial capacity
+	 * @throws IllegalArgumentException if the capacity is negative
+	 */
+	public TimSortArrayList(int capacity) {
+		if (capacity < 0) {
+			throw new IllegalArgumentException(
+			"capacity must not be negative: " + capacity);
+		}
+		elements = new Object[capacity];
+	}
+
+	/**
+	 * Creates a list holding the elements of a collection, in the order its
+	 * iterator returns them.
+	 * @param elements the elements to copy
+	 */
+	public TimSortArrayList(Collection<T> elements) {
+		this.elements = elements.toArray(new Object[0]);
+		this.size = this.elements.length;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public T get(int index) {
+		Objects.checkIndex(index, size);
+		return (T) elements[index];
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public T set(int index, T element) {
+		Objects.checkIndex(index, size);
+		final T previous = (T) elements[index];
+		elements[index] = element;
+		return previous;
+	}
+
+	@Override
+	public boolean add(T element) {
+		modCount++;
+		if (size == elements.length) {
+			elements = Arrays.copyOf(elements, grow(size + 1L));
+		}
+		elements[size++] = element;
+		return true;
+	}
+
+	@Override
+	public void add(int index, T element) {
+		Objects.checkIndex(index, size + 1);
+		modCount++;
+		if (size == elements.length) {
+			elements = Arrays.copyOf(elements, grow(size + 1L));
+		}
+		System.arraycopy(elements, index, elements, index + 1, size - index);
+		elements[index] = element;
+		size++;
+	}
+
+	@Override
+	public boolean addAll(Collection<? extends T> batch) {
+		final Object[] array = batch.toArray();
+		modCount++;
+		if (array.length == 0) {
+			return false;
+		}
+		if (elements.length - size < array.length) {
+			elements =
+			Arrays.copyOf(elements, grow((long) size + array.length));
+		}
+		System.arraycopy(array, 0, elements, size, array.length);
+		size += array.length;
+		return true;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public T remove(int index) {
+		Objects.checkIndex(index, size);
+		modCount++;
+		final T previous = (T) elements[index];
+		System.arraycopy(elements, index + 1, elements, index,
+		                 size - index - 1);
+		elements[--size] = null;
+		return previous;
+	}
+
+	@Override
+	protected void removeRange(int fromIndex, int toIndex) {
+		modCount++;
+		System.arraycopy(elements, toIndex, elements, fromIndex,
+		                 size - toIndex);
+		final int newSize = size - (toIndex - fromIndex);
+		Arrays.fill(elements, newSize, size, null);
+		size = newSize;
+	}
+
+	@Override
+	public Object[] toArray() {
+		return Arrays.copyOf(elements, size);
+	}
+
+	/**
+	 * Sorts the list in place with {@link ComplexTimSort}. The sort is stable,
+	 * and a null comparator sorts comparable elements into their natural
+	 * order, nulls first.
+	 * @param comp the comparator used to sort the list, or null
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public void sort(Comparator<? super T> comp) {
+		final int expectedModCount = modCount;
+		final Comparator<Object> order =
+		comp == null ? naturalOrder() : (Comparator<Object>) comp;
+		ComplexTimSort.sort(elements, 0, size, order);
+		if (modCount != expectedModCount) {
+			throw new ConcurrentModificationException();
+		}
+		modCount++;
+	}
+
+	/**
+	 * Shrinks the backing array to the size of the list.
+	 */
+	public void trimToSize() {
+		modCount++;
+		if (size < elements.length) {
+			elements = Arrays.copyOf(elements, size);
+		}
+	}
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private static Comparator<Object> naturalOrder() {
+		return Comparator.nullsFirst((Comparator) Comparator.naturalOrder());
+	}
+
+	private int grow(long required) {
+		if (required > MAX_CAPACITY) {
+			throw new OutOfMemoryError("list is too large: " + required);
+		}
+		final long grown = elements.length + (elements.length >> 1);
+		return (int) min(MAX_CAPACITY,
+		                 max(max(grown, required), INITIAL_CAPACITY));
+	}
+}
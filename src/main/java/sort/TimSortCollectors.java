@@ -0,0 +1,80 @@
+package sort;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.stream.Collector;
+
+/**
+ * Ways into {@link ComplexTimSort} for code that works with streams and lists
+ * rather than arrays.
+ * <p>
+ * The collectors gather elements into a {@link TimSortArrayList} per part of
+ * the stream. When a parallel stream combines two parts, the right part is
+ * appended to the left one and the list is sorted: TimSort sorts whatever has
+ * not been sorted yet and merges it with what has, so the leaves of a
+ * parallel stream are sorted on the threads that combine them and every
+ * later combine is a single galloping merge of two runs. Elements that
+ * compare equal keep their encounter order.
+ */
+public interface TimSortCollectors {
+
+	/**
+	 * Returns a collector that gathers comparable elements into a list in
+	 * their natural order, nulls first.
+	 * @param <T> the type of the elements
+	 * @return a collector producing a sorted {@link TimSortArrayList}
+	 */
+	static <T extends Comparable<T>> Collector<T, ?, List<T>> toSortedList() {
+		final Comparator<T> comp =
+		Comparator.nullsFirst(Comparator.naturalOrder());
+		return toSortedList(comp);
+	}
+
+	/**
+	 * Returns a collector that gathers elements into a list sorted by a given
+	 * comparator.
+	 * @param <T> the type of the elements
+	 * @param comp the comparator used to sort the elements
+	 * @return a collector producing a sorted {@link TimSortArrayList}
+	 */
+	static <T> Collector<T, ?, List<T>> toSortedList(Comparator<T> comp) {
+		return Collector.<T, TimSortArrayList<T>, List<T>>of(
+		TimSortArrayList::new,
+		TimSortArrayList::add,
+		(left, right) -> {
+			left.addAll(right);
+			left.sort(comp);
+			return left;
+		},
+		list -> {
+			list.sort(comp);
+			return list;
+		});
+	}
+
+	/**
+	 * Sorts a list in place with {@link ComplexTimSort}. A
+	 * {@link TimSortArrayList} is sorted directly in its backing array. Any
+	 * other list is copied into an array, sorted there and written back
+	 * through its list iterator, the same as {@link List#sort} does.
+	 * @param <T> the type of the elements
+	 * @param list the list to be sorted
+	 * @param comp the comparator used to sort the list
+	 * @throws UnsupportedOperationException if the list cannot be modified
+	 */
+	@SuppressWarnings("unchecked")
+	static <T> void sort(List<T> list, Comparator<T> comp) {
+		if (list instanceof TimSortArrayList) {
+			list.sort(comp);
+			return;
+		}
+		final Object[] arr = list.toArray();
+		ComplexTimSort.sort((T[]) arr, comp);
+		final ListIterator<T> it = list.listIterator();
+		for (Object element : arr) {
+			it.next();
+			it.set((T) element);
+		}
+	}
+}
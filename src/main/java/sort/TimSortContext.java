@@ -0,0 +1,369 @@
+package sort;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static sort.ComplexTimSort.MIN_GALLOP;
+
+/**
+ * The scratch state of a TimSort: the stack of pending runs, the current
+ * minGallop and the merge buffers. A context keeps its stack and buffers
+ * between sorts and only grows them when a larger sort needs it, so once it
+ * has warmed up, sorting through it allocates nothing.
+ * <p>
+ * A context may be held for as long as the caller likes, but it must only be
+ * used by one sort at a time. {@link #local()} hands out a context per thread,
+ * which is also what the sorts without a context argument use.
+ */
+public final class TimSortContext {
+	private static final int INITIAL_STACK_SIZE = 40;
+	private static final int MAX_LOCAL_BUFFER = 1 << 16;
+	private static final ThreadLocal<TimSortContext> LOCAL =
+	ThreadLocal.withInitial(() -> new TimSortContext(true));
+
+	int[] runBase = new int[INITIAL_STACK_SIZE];
+	int[] runLength = new int[INITIAL_STACK_SIZE];
+	int[] runPower = new int[INITIAL_STACK_SIZE];
+	int stackSize;
+	int minGallop = MIN_GALLOP;
+	SortStats stats;
+	MergePolicy policy = MergePolicy.TIMSORT;
+	int maxBufferLength = Integer.MAX_VALUE;
+
+	private int rangeBase;
+	private int rangeLength;
+
+	private final boolean local;
+	private boolean busy;
+	private Object[] buffer = new Object[0];
+	private int bufferUsed;
+	private int[] intBuffer = new int[0];
+	private long[] longBuffer = new long[0];
+	private float[] floatBuffer = new float[0];
+	private double[] doubleBuffer = new double[0];
+	private ByteBuffer directBuffer;
+
+	/**
+	 * Creates an empty context that can be reused for any number of sorts.
+	 */
+	public TimSortContext() {
+		this(false);
+	}
+
+	private TimSortContext(boolean local) {
+		this.local = local;
+	}
+
+	/**
+	 * Returns the context of the current thread. Its buffers are trimmed after
+	 * sorts that needed more than a modest amount of scratch space, so it does
+	 * not pin the memory of the largest sort the thread has ever run.
+	 * @return the context of the current thread
+	 */
+	public static TimSortContext local() {
+		return LOCAL.get();
+	}
+
+	/**
+	 * Attaches a sink that every object sort run through this context fills
+	 * in, or detaches the current one.
+	 * @param stats the sink to fill in, or null to stop recording
+	 */
+	public void setStats(SortStats stats) {
+		this.stats = stats;
+	}
+
+	/**
+	 * Sets the policy that decides which runs are merged and when, by default
+	 * {@link MergePolicy#TIMSORT}.
+	 * @param policy the merge policy for sorts run through this context
+	 */
+	public void setMergePolicy(MergePolicy policy) {
+		this.policy = policy;
+	}
+
+	/**
+	 * Caps the merge buffer of the object sorts run through this context. A
+	 * merge whose shorter run does not fit is split by rotating elements in
+	 * place until the pieces do, which keeps the sort stable at the cost of
+	 * extra element moves. Without a cap, the buffer grows to half the
+	 * length of the largest sort. A buffer already larger than the cap is
+	 * dropped. The primitive sorts ignore the cap.
+	 * @param maxBufferLength the most elements the object buffer may hold,
+	 * or {@link Integer#MAX_VALUE} for no cap
+	 * @throws IllegalArgumentException if maxBufferLength is negative
+	 */
+	public void setMaxBufferLength(int maxBufferLength) {
+		if (maxBufferLength < 0) {
+			throw new IllegalArgumentException(
+			"maxBufferLength(" + maxBufferLength + ") must not be negative");
+		}
+		this.maxBufferLength = maxBufferLength;
+		if (!busy && buffer.length > maxBufferLength) {
+			buffer = new Object[0];
+		}
+	}
+
+	/** @return the number of runs on the stack */
+	public int runCount() {
+		return stackSize;
+	}
+
+	/**
+	 * @param index the index of a run on the stack, 0 being the bottom
+	 * @return the index of the first element of the run
+	 */
+	public int runBase(int index) {
+		return runBase[index];
+	}
+
+	/**
+	 * @param index the index of a run on the stack, 0 being the bottom
+	 * @return the length of the run
+	 */
+	public int runLength(int index) {
+		return runLength[index];
+	}
+
+	/**
+	 * Returns the Powersort node power of the boundary between a run and the
+	 * run below it: one more than the number of leading bits that the
+	 * midpoints of the two runs, as fractions of the range being sorted, have
+	 * in common. The bottom run has a power of 0.
+	 * @param index the index of a run on the stack, 0 being the bottom
+	 * @return the power of the boundary below the run
+	 */
+	public int runPower(int index) {
+		return runPower[index];
+	}
+
+	/**
+	 * Claims a context for a sort that was not given one, falling back to a
+	 * fresh context when the thread's own is already in use by an enclosing
+	 * sort (a comparator that sorts, for example).
+	 * @return a context that has been entered
+	 */
+	static TimSortContext acquire() {
+		TimSortContext ctx = LOCAL.get();
+		if (ctx.busy) {
+			ctx = new TimSortContext();
+		}
+		ctx.enter();
+		return ctx;
+	}
+
+	/**
+	 * Marks the context as in use and resets the run stack and minGallop.
+	 * @throws IllegalStateException if the context is already in use
+	 */
+	void enter() {
+		if (busy) {
+			throw new IllegalStateException("TimSortContext is already in use");
+		}
+		busy = true;
+		reset();
+	}
+
+	/**
+	 * Empties the run stack and resets minGallop, for running several sorts
+	 * one after another under a single {@link #enter()}.
+	 */
+	void reset() {
+		stackSize = 0;
+		minGallop = MIN_GALLOP;
+	}
+
+	/**
+	 * Releases the context, dropping the references the object buffer still
+	 * holds so that sorted elements can be collected.
+	 */
+	void exit() {
+		Arrays.fill(buffer, 0, bufferUsed, null);
+		bufferUsed = 0;
+		if (local) {
+			trim();
+		}
+		busy = false;
+	}
+
+	private void trim() {
+		if (buffer.length > MAX_LOCAL_BUFFER) {
+			buffer = new Object[0];
+		}
+		if (intBuffer.length > MAX_LOCAL_BUFFER) {
+			intBuffer = new int[0];
+		}
+		if (longBuffer.length > MAX_LOCAL_BUFFER) {
+			longBuffer = new long[0];
+		}
+		if (floatBuffer.length > MAX_LOCAL_BUFFER) {
+			floatBuffer = new float[0];
+		}
+		if (doubleBuffer.length > MAX_LOCAL_BUFFER) {
+			doubleBuffer = new double[0];
+		}
+		if (directBuffer != null
+		    && directBuffer.capacity() > MAX_LOCAL_BUFFER * Long.BYTES)
+		{
+			directBuffer = null;
+		}
+	}
+
+	/**
+	 * Records the range the runs that follow are taken from, which the node
+	 * powers are measured against.
+	 * @param lo the index of the first element, inclusive
+	 * @param hi the index of the last element, exclusive
+	 */
+	void startRange(int lo, int hi) {
+		rangeBase = lo;
+		rangeLength = hi - lo;
+	}
+
+	/**
+	 * Pushes a run onto the stack, growing the stack if it is full.
+	 * @param base the index of the first element of the run
+	 * @param length the length of the run
+	 */
+	void pushRun(int base, int length) {
+		if (stackSize == runBase.length) {
+			runBase = Arrays.copyOf(runBase, stackSize << 1);
+			runLength = Arrays.copyOf(runLength, stackSize << 1);
+			runPower = Arrays.copyOf(runPower, stackSize << 1);
+		}
+		runBase[stackSize] = base;
+		runLength[stackSize] = length;
+		runPower[stackSize] = stackSize == 0
+		                      ? 0
+		                      : nodePower(runBase[stackSize - 1], base,
+		                                  base + length);
+		stackSize++;
+	}
+
+	/**
+	 * Computes the power of the boundary between the adjacent runs
+	 * [start1, start2) and [start2, end2) by comparing their midpoints as
+	 * 31 bit binary fractions of the range.
+	 */
+	private int nodePower(int start1, int start2, int end2) {
+		final long twoLength = (long) rangeLength << 1;
+		if (twoLength == 0) {
+			return 0;
+		}
+		final long mid1 = (long) start1 + start2 - 2L * rangeBase;
+		final long mid2 = (long) start2 + end2 - 2L * rangeBase;
+		final int a = (int) ((mid1 << 31) / twoLength);
+		final int b = (int) ((mid2 << 31) / twoLength);
+		return Integer.numberOfLeadingZeros(a ^ b);
+	}
+
+	/**
+	 * Replaces the runs at index and index + 1 with the single run that
+	 * merging them produces. Only the top two or the two below the top run can
+	 * be merged.
+	 * @param index the index of the lower of the two runs
+	 */
+	void mergedAt(int index) {
+		runLength[index] += runLength[index + 1];
+		if (index == stackSize - 3) {
+			runBase[index + 1] = runBase[index + 2];
+			runLength[index + 1] = runLength[index + 2];
+			runPower[index + 1] = runPower[index + 2];
+		}
+		stackSize--;
+	}
+
+	/**
+	 * Asks the merge policy for the next pair of runs to merge.
+	 * @return the index of the lower run of the pair, or -1 if nothing needs
+	 * merging yet
+	 */
+	int collapseIndex() {
+		return policy.collapseIndex(this);
+	}
+
+	/**
+	 * Asks the merge policy for the next pair of runs to merge once every run
+	 * has been found.
+	 * @return the index of the lower run of the pair, or -1 if only one run
+	 * remains
+	 */
+	int forceCollapseIndex() {
+		return stackSize < 2 ? -1 : policy.forceCollapseIndex(this);
+	}
+
+	Object[] buffer(int length) {
+		if (buffer.length < length) {
+			final int previous = buffer.length;
+			// growth stays under the cap, unless the caller asked for more
+			final int capacity = newCapacity(buffer.length, length);
+			buffer = new Object[Math.max(length,
+			                             Math.min(capacity, maxBufferLength))];
+			SortEvents.bufferGrown("Object", previous, buffer.length);
+		}
+		if (bufferUsed < length) {
+			bufferUsed = length;
+		}
+		return buffer;
+	}
+
+	int[] intBuffer(int length) {
+		if (intBuffer.length < length) {
+			final int previous = intBuffer.length;
+			intBuffer = new int[newCapacity(intBuffer.length, length)];
+			SortEvents.bufferGrown("int", previous, intBuffer.length);
+		}
+		return intBuffer;
+	}
+
+	long[] longBuffer(int length) {
+		if (longBuffer.length < length) {
+			final int previous = longBuffer.length;
+			longBuffer = new long[newCapacity(longBuffer.length, length)];
+			SortEvents.bufferGrown("long", previous, longBuffer.length);
+		}
+		return longBuffer;
+	}
+
+	float[] floatBuffer(int length) {
+		if (floatBuffer.length < length) {
+			final int previous = floatBuffer.length;
+			floatBuffer = new float[newCapacity(floatBuffer.length, length)];
+			SortEvents.bufferGrown("float", previous, floatBuffer.length);
+		}
+		return floatBuffer;
+	}
+
+	double[] doubleBuffer(int length) {
+		if (doubleBuffer.length < length) {
+			final int previous = doubleBuffer.length;
+			doubleBuffer = new double[newCapacity(doubleBuffer.length, length)];
+			SortEvents.bufferGrown("double", previous, doubleBuffer.length);
+		}
+		return doubleBuffer;
+	}
+
+	/**
+	 * Returns an off-heap buffer of at least the given number of bytes, for
+	 * sorts that move raw records rather than array elements.
+	 */
+	ByteBuffer directBuffer(int bytes) {
+		final int capacity = directBuffer == null ? 0 : directBuffer.capacity();
+		if (capacity < bytes) {
+			directBuffer =
+			ByteBuffer.allocateDirect(newCapacity(capacity, bytes));
+			SortEvents.bufferGrown("direct", capacity, directBuffer.capacity());
+		}
+		return directBuffer;
+	}
+
+	/** @return the length of the object buffer */
+	int bufferLength() {
+		return buffer.length;
+	}
+
+	private static int newCapacity(int current, int required) {
+		final int grown = current + (current >> 1);
+		return grown - required > 0 ? grown : required;
+	}
+}
@@ -0,0 +1,44 @@
+package sort;
+
+/**
+ * The merge rule of the original TimSort, with the extra check on the fourth
+ * run from the top that keeps the invariants holding for the whole stack.
+ */
+final class TimSortPolicy implements MergePolicy {
+
+	@Override
+	public int collapseIndex(TimSortContext runs) {
+		final int size = runs.runCount();
+		if (size < 2) {
+			return -1;
+		}
+		int n = size - 2;
+		if ((n > 0 && runs.runLength(n - 1)
+		    <= runs.runLength(n) + runs.runLength(n + 1))
+		    ||
+		    (n > 1 && runs.runLength(n - 2)
+		     <= runs.runLength(n - 1) + runs.runLength(n)))
+		{
+			if (runs.runLength(n - 1) < runs.runLength(n + 1)) {
+				n--;
+			}
+		} else if (runs.runLength(n) > runs.runLength(n + 1)) {
+			return -1;
+		}
+		return n;
+	}
+
+	@Override
+	public int forceCollapseIndex(TimSortContext runs) {
+		int n = runs.runCount() - 2;
+		if (n > 0 && runs.runLength(n - 1) < runs.runLength(n + 1)) {
+			n--;
+		}
+		return n;
+	}
+
+	@Override
+	public String toString() {
+		return "TimSort";
+	}
+}